@@ -0,0 +1,132 @@
+package com.mhm.bank.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the fast claim reader with the full Nimbus parse, and {@link TokenProvider#validateToken} on a valid and
+ * on an expired token with the full parse-and-verify path it used before the fast reader. The JWKS is served from a
+ * local file so no Keycloak is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenValidationBenchmark {
+    private static final String ISSUER = "http://keycloak.bench/realms/bank";
+    private static final String CLIENT_ID = "auth-client-api-rest";
+
+    private TokenRequestHedger tokenRequestHedger;
+    private TokenProvider tokenProvider;
+    private JWSVerifier verifier;
+    private String validToken;
+    private String expiredToken;
+    private Path jwksFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("bench-key").generate();
+        jwksFile = Files.createTempFile("jwks", ".json");
+        Files.writeString(jwksFile, new JWKSet(signingKey.toPublicJWK()).toString());
+        verifier = new RSASSAVerifier(signingKey.toRSAPublicKey());
+        validToken = sign(signingKey, 3600);
+        expiredToken = sign(signingKey, -60);
+
+        KeycloakEndpointPool endpointPool =
+                new KeycloakEndpointPool("http://keycloak.bench", 3, 10000, 300000, 3000, new SimpleMeterRegistry());
+        tokenRequestHedger = new TokenRequestHedger(false, endpointPool, 0.95, 20, 0.05, 10, 2, new SimpleMeterRegistry());
+        tokenProvider = new TokenProvider(new RestTemplateBuilder(), endpointPool, tokenRequestHedger,
+                new JwksCache(jwksFile.toUri().toString(), 3600, 10000, 2000, 5000),
+                new DependencyTimer(ObservationRegistry.NOOP), 2000, 5000);
+        Field issuer = TokenProvider.class.getDeclaredField("issuer");
+        issuer.setAccessible(true);
+        issuer.set(tokenProvider, ISSUER);
+        Field clientId = TokenProvider.class.getDeclaredField("clientId");
+        clientId.setAccessible(true);
+        clientId.set(tokenProvider, CLIENT_ID);
+        if (!tokenProvider.validateToken(validToken)) {
+            throw new IllegalStateException("Benchmark token does not validate");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tokenRequestHedger.shutdown();
+        Files.deleteIfExists(jwksFile);
+    }
+
+    private static String sign(RSAKey key, long expiresInSeconds) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("5f1c1bd4-5d0e-4b8a-9f8a-3d3c1b2a7e10")
+                .claim("typ", "Bearer")
+                .claim("azp", CLIENT_ID)
+                .claim("preferred_username", "testuser")
+                .claim("realm_access", Map.of("roles", List.of("default-roles-bank", "offline_access", "user")))
+                .expirationTime(new Date(System.currentTimeMillis() + expiresInSeconds * 1000))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    @Benchmark
+    public FastJwtReader.Claims fastRead() {
+        return FastJwtReader.read(validToken);
+    }
+
+    @Benchmark
+    public JWTClaimsSet fullParse() throws Exception {
+        return SignedJWT.parse(validToken).getJWTClaimsSet();
+    }
+
+    @Benchmark
+    public boolean validateValidToken() {
+        return tokenProvider.validateToken(validToken);
+    }
+
+    @Benchmark
+    public boolean validateExpiredToken() {
+        return tokenProvider.validateToken(expiredToken);
+    }
+
+    /** What validating an expired token cost before the fast reader, not counting the JWKS download it also did. */
+    @Benchmark
+    public boolean fullParseAndVerifyExpiredToken() throws Exception {
+        SignedJWT signedJWT = SignedJWT.parse(expiredToken);
+        if (!signedJWT.verify(verifier)) {
+            return false;
+        }
+        JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+        return ISSUER.equals(claims.getIssuer()) && claims.getExpirationTime().after(new Date());
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.mhm.bank.controller;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.mhm.bank.controller.dto.LoginRequest;
+import com.mhm.bank.controller.dto.TokensUser;
+import com.mhm.bank.controller.dto.UserKCDto;
+import com.mhm.bank.service.AuthService;
+import com.mhm.bank.service.LoginAttemptGuard;
+import com.mhm.bank.service.audit.AuthAuditLog;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import com.mhm.bank.service.session.RefreshTokenVault;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.logging.logback.StructuredLogEncoder;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the login endpoint, from the controller down to a Keycloak stand-in, with logging off, written
+ * synchronously by the request threads, and handed to a bounded async queue as {@code logback-spring.xml} does.
+ * Events are encoded as JSON into a temporary file at the production level (INFO), so the guarded debug
+ * statements cost a level check and the login success line is written on every request. With {@code async} the
+ * writer falls behind the request threads, so the numbers include the drop policy at work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class LoginLoggingBenchmark {
+
+    @Param({"off", "sync", "async"})
+    private String logging;
+
+    private final LoginRequest loginRequest = new LoginRequest("testuser", "Password1!");
+    private final HttpServletRequest request = stub(HttpServletRequest.class);
+    private final HttpServletResponse response = stub(HttpServletResponse.class);
+    private AuthController authController;
+    private Path logFile;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUp() throws Exception {
+        logFile = Files.createTempFile("login-logging", ".log");
+        configureLogging();
+
+        IKeycloakService keycloakService = new KeycloakStandIn();
+        LoginAttemptGuard loginAttemptGuard = new LoginAttemptGuard(false, 1024, 30, 60, 5, 900, 1000,
+                new SimpleMeterRegistry());
+        AuthAuditLog auditLog = new AuthAuditLog(false, null, 0, 0, 0, 0, 1.0, 0, new SimpleMeterRegistry());
+        AuthService authService = new AuthService(null, keycloakService, null, null, loginAttemptGuard, null, auditLog);
+        RefreshTokenVault refreshTokenVault = new RefreshTokenVault(false, "", 1800, 30, 1, null, keycloakService,
+                auditLog, new SimpleMeterRegistry());
+        authController = new AuthController(authService, keycloakService, null, null,
+                new TokenCookieWriter(true, 1800, "Lax"), refreshTokenVault);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() throws IOException {
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    public ResponseEntity<Void> login() throws Exception {
+        return authController.loginUser(loginRequest, request, response);
+    }
+
+    private void configureLogging() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        ch.qos.logback.classic.Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        if ("off".equals(logging)) {
+            root.setLevel(Level.OFF);
+            return;
+        }
+        root.setLevel(Level.INFO);
+        context.putObject(Environment.class.getName(), new StandardEnvironment());
+
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setContext(context);
+        encoder.setFormat("logstash");
+        encoder.start();
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setFile(logFile.toString());
+        file.setEncoder(encoder);
+        file.start();
+
+        Appender<ILoggingEvent> appender = file;
+        if ("async".equals(logging)) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(1638);
+            async.setNeverBlock(true);
+            async.addAppender(file);
+            async.start();
+            appender = async;
+        }
+        root.addAppender(appender);
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> method.getName().equals("getRemoteAddr") ? "10.0.0.1" : null));
+    }
+
+    /**
+     * Grants a fixed token pair without a network call, so the benchmark measures this service's work.
+     */
+    private static final class KeycloakStandIn implements IKeycloakService {
+        private final TokensUser tokens = new TokensUser("access-token", "refresh-token", "300");
+
+        @Override
+        public TokensUser loginUser(LoginRequest loginRequest) {
+            return tokens;
+        }
+
+        @Override
+        public String createUser(UserKCDto userDto, String authToken) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteUser(String usernameAfterKC) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteUserById(String userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String findUserIdByRegistration(String username, String registrationId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getTokenAdminAppAuth() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TokensUser getNewToken(String refreshToken) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean validateToken(String token) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
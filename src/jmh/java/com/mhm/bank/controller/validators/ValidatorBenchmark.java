@@ -0,0 +1,45 @@
+package com.mhm.bank.controller.validators;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValidatorBenchmark {
+
+    private final BirthdateValidator birthdateValidator = new BirthdateValidator();
+    private String validEmail = "john.doe+bank@example.com";
+    private String username = "john_doe-1990";
+    private LocalDate adultBirthdate = LocalDate.of(1990, 5, 17);
+    private LocalDate minorBirthdate = LocalDate.now().minusYears(17);
+
+    @Benchmark
+    public boolean emailFormat_valid() {
+        return EmailValidator.isItAValidEmailFormat(validEmail);
+    }
+
+    /** {@code /me} checks every username with the email pattern to decide how to look the user up. */
+    @Benchmark
+    public boolean emailFormat_username() {
+        return EmailValidator.isItAValidEmailFormat(username);
+    }
+
+    @Benchmark
+    public boolean birthdate_adult() {
+        return birthdateValidator.isValid(adultBirthdate, null);
+    }
+
+    @Benchmark
+    public boolean birthdate_minor() {
+        return birthdateValidator.isValid(minorBirthdate, null);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.mhm.bank.exception;
+
+import com.mhm.bank.controller.AuthController;
+import com.mhm.bank.controller.dto.UserInformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the error responses of {@link GlobalExceptionHandler}; the exceptions are created once, as the
+ * handler receives them already thrown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GlobalExceptionHandlerBenchmark {
+
+    private final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+    private final UserAlreadyExistsException userAlreadyExists =
+            new UserAlreadyExistsException("User with username testuser already exists");
+    private final LoginRateLimitedException loginRateLimited =
+            new LoginRateLimitedException("Too many login attempts, please try again later", 60);
+    private MethodArgumentNotValidException validationException;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        BeanPropertyBindingResult bindingResult = new BeanPropertyBindingResult(new Object(), "userInformation");
+        bindingResult.addError(new FieldError("userInformation", "email", "must be a well-formed email address"));
+        bindingResult.addError(new FieldError("userInformation", "birthdate", "The user must be at least 18 years old."));
+        MethodParameter parameter = new MethodParameter(
+                AuthController.class.getMethod("registerUser", UserInformation.class, String.class), 0);
+        validationException = new MethodArgumentNotValidException(parameter, bindingResult);
+    }
+
+    @Benchmark
+    public ResponseEntity<ErrorResponse> userAlreadyExists() {
+        return handler.handleUserAlreadyExists(userAlreadyExists);
+    }
+
+    @Benchmark
+    public ResponseEntity<ErrorResponse> loginRateLimited() {
+        return handler.handleLoginRateLimited(loginRateLimited);
+    }
+
+    @Benchmark
+    public ResponseEntity<Map<String, String>> validationErrors() {
+        return handler.handleValidationExceptions(validationException);
+    }
+
+}
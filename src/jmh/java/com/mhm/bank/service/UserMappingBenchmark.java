@@ -0,0 +1,47 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.controller.dto.UserData;
+import com.mhm.bank.controller.dto.UserInformation;
+import com.mhm.bank.repository.entity.UserEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity/DTO mappings of {@link UserDataAccessService}, without the repository around them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserMappingBenchmark {
+
+    private final UserDataAccessService userDataAccessService = new UserDataAccessService(null, null);
+    private UserInformation userInformation;
+    private UserEntity userEntity;
+
+    @Setup
+    public void setUp() {
+        userInformation = new UserInformation("12345678", "testuser", "Password123!", "John", "Doe",
+                "123 Main St", "john@example.com", LocalDate.of(1990, 1, 1), "123456789", Set.of("user"));
+        userEntity = userDataAccessService.getUserEntity(userInformation);
+    }
+
+    @Benchmark
+    public UserEntity userInformationToEntity() {
+        return userDataAccessService.getUserEntity(userInformation);
+    }
+
+    @Benchmark
+    public UserData entityToUserData() {
+        return userDataAccessService.getUserData(userEntity);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.mhm.bank.service.external;
+
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the registration event with the value serializer configured for the Kafka producer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserRegisteredEventBenchmark {
+
+    private final JsonSerializer<UserRegisteredEvent> serializer = new JsonSerializer<>();
+    private final UserRegisteredEvent event = new UserRegisteredEvent("12345678", "testuser", "John", "Doe",
+            "john@example.com", "123 Main St", "123456789", "1990-01-01");
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize("user-registered", event);
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.mhm.bank.load;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures register, login, me and refresh throughput and latency of the whole service, with Keycloak replaced by
+ * {@link KeycloakStub}, Postgres by a Testcontainers database and Kafka by an embedded broker. Each endpoint is
+ * warmed up, then driven on its own at {@code loadtest.rate} requests per second for
+ * {@code loadtest.duration-sec}; the results are printed and written to {@code build/reports/loadTest}.
+ * Run with {@code gradle loadTest}; it is not part of {@code gradle test}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("dev")
+@Testcontainers(disabledWithoutDocker = true)
+@EmbeddedKafka(partitions = 1, topics = "user-registered", bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class AuthEndpointsLoadTest {
+    private static final String REALM = "mhm-corp-bank-dev";
+    private static final double RATE = Double.parseDouble(System.getProperty("loadtest.rate", "50"));
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("loadtest.duration-sec", 20));
+    private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("loadtest.warmup-sec", 5));
+    private static final long KEYCLOAK_LATENCY_MS = Long.getLong("loadtest.keycloak.latency-ms", 20);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("bank_auth")
+            .withUsername("test")
+            .withPassword("test");
+
+    private static final KeycloakStub keycloak = startKeycloak();
+
+    @LocalServerPort
+    private int port;
+
+    private static KeycloakStub startKeycloak() {
+        try {
+            return new KeycloakStub(REALM, KEYCLOAK_LATENCY_MS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to start the Keycloak stub", e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+
+        registry.add("keycloak.server.url", keycloak::url);
+        registry.add("keycloak.server.nodes", keycloak::url);
+        registry.add("keycloak.realm_name", () -> REALM);
+        registry.add("spring.security.oauth2.resourceserver.jwt.issuer-uri", keycloak::issuer);
+        registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri",
+                () -> keycloak.issuer() + "/protocol/openid-connect/certs");
+
+        // Every virtual user comes from the same address; the per-IP login limit would reject most of them
+        registry.add("login.guard.enabled", () -> "false");
+        registry.add("logging.level.com.mhm.bank", () -> "WARN");
+        registry.add("logging.level.org.keycloak", () -> "WARN");
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @Test
+    void authEndpoints_atFixedArrivalRate() throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(32))
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        FixedRateLoad load = new FixedRateLoad(httpClient);
+        long warmupRequests = (long) (RATE * WARMUP.toSeconds());
+        long users = warmupRequests + (long) (RATE * DURATION.toSeconds());
+
+        List<FixedRateLoad.Result> results = new ArrayList<>();
+        results.add(measure(load, "register", i -> register(i), warmupRequests));
+        results.add(measure(load, "login", i -> login(i % users), warmupRequests));
+        results.add(measure(load, "me", i -> me(i % users), warmupRequests));
+        results.add(measure(load, "refresh", i -> refresh(i), warmupRequests));
+
+        report(results);
+        for (FixedRateLoad.Result result : results) {
+            assertTrue(result.ok() > 0, "No successful " + result.endpoint() + " requests");
+        }
+    }
+
+    /** Warms the endpoint up, then measures it; requests of the measured run are numbered after the warm-up's. */
+    private FixedRateLoad.Result measure(FixedRateLoad load, String endpoint, LongFunction<HttpRequest> requests,
+                                         long warmupRequests) throws InterruptedException {
+        if (!WARMUP.isZero()) {
+            load.run(endpoint, RATE, WARMUP, requests);
+        }
+        return load.run(endpoint, RATE, DURATION, i -> requests.apply(warmupRequests + i));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth" + path))
+                .timeout(Duration.ofSeconds(30));
+    }
+
+    private HttpRequest register(long user) {
+        String body = String.format("{\"idCard\":\"%d\",\"username\":\"user%d\",\"password\":\"Password123!\","
+                + "\"firstName\":\"Load\",\"lastName\":\"Test\",\"address\":\"123 Main St\","
+                + "\"email\":\"user%d@example.com\",\"birthdate\":\"1990-01-01\",\"phoneNumber\":\"123456789\"}",
+                10_000_000 + user, user, user);
+        return request("/register")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest login(long user) {
+        return request("/login")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\":\"user" + user + "\",\"password\":\"Password123!\"}"))
+                .build();
+    }
+
+    private HttpRequest me(long user) {
+        return request("/me?username=user" + user).GET().build();
+    }
+
+    /** An expired access token and a distinct refresh token, so every request goes to Keycloak. */
+    private HttpRequest refresh(long request) {
+        return request("/refresh")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"accessToken\":\"expired\",\"refreshToken\":\"refresh-" + request + "\"}"))
+                .build();
+    }
+
+    private static void report(List<FixedRateLoad.Result> results) throws IOException {
+        StringBuilder report = new StringBuilder(String.format(
+                "Load test: %.1f req/s per endpoint for %d s, Keycloak latency %d ms, %d token and %d admin calls%n",
+                RATE, DURATION.toSeconds(), KEYCLOAK_LATENCY_MS, keycloak.tokenRequests(), keycloak.adminRequests()));
+        for (FixedRateLoad.Result result : results) {
+            report.append(result.summary()).append(System.lineSeparator());
+        }
+        System.out.print(report);
+
+        Path directory = Path.of("build", "reports", "loadTest");
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve("summary.txt"), report);
+        for (FixedRateLoad.Result result : results) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(result.endpoint() + ".hgrm")))) {
+                // HdrHistogram percentile distribution, in milliseconds; plot it with the HdrHistogram plotter
+                result.latencies().outputPercentileDistribution(out, 1e6);
+            }
+        }
+    }
+
+}
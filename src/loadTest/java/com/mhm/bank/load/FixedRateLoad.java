@@ -0,0 +1,88 @@
+package com.mhm.bank.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Open-model load generator: sends requests at a fixed arrival rate whatever the response times are, and measures
+ * each latency from the moment the request was due rather than from when it was sent, so a stalled server shows up
+ * in the percentiles instead of silently lowering the rate (coordinated omission).
+ */
+final class FixedRateLoad {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    record Result(String endpoint, double targetRate, long durationNanos, long ok, long failed, Histogram latencies) {
+
+        double throughput() {
+            return (ok + failed) / (durationNanos / 1e9);
+        }
+
+        String summary() {
+            return String.format("%-10s target %6.1f/s  achieved %6.1f/s  ok %6d  failed %5d  "
+                            + "p50 %7.2f  p90 %7.2f  p99 %7.2f  p99.9 %7.2f  max %7.2f ms",
+                    endpoint, targetRate, throughput(), ok, failed,
+                    millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private final HttpClient httpClient;
+
+    FixedRateLoad(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Sends {@code ratePerSecond} requests per second for the duration; {@code requests} builds the i-th request.
+     * Responses with a 2xx status count as ok.
+     */
+    Result run(String endpoint, double ratePerSecond, Duration duration, LongFunction<HttpRequest> requests)
+            throws InterruptedException {
+        Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        AtomicLong ok = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long intervalNanos = (long) (1e9 / ratePerSecond);
+        long total = (long) (ratePerSecond * duration.toNanos() / 1e9);
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            inFlight.add(httpClient.sendAsync(requests.apply(i), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies.recordValue(Math.min(MAX_LATENCY_NANOS, System.nanoTime() - due));
+                        if (error == null && response.statusCode() / 100 == 2) {
+                            ok.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }));
+        }
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                .exceptionally(error -> null)
+                .join();
+        return new Result(endpoint, ratePerSecond, System.nanoTime() - start, ok.get(), failed.get(), latencies);
+    }
+
+}
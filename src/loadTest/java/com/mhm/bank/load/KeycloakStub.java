@@ -0,0 +1,149 @@
+package com.mhm.bank.load;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Keycloak endpoints the service calls: the token endpoint of every realm, the JWKS
+ * and the admin API used by registration. Every answer is delayed by a fixed latency so that the load test sees
+ * Keycloak-like response times. Tokens are signed with a key generated at startup and accepted for any user.
+ */
+final class KeycloakStub implements AutoCloseable {
+    private static final String TOKEN_PATH = "/protocol/openid-connect/token";
+    private static final String CERTS_PATH = "/protocol/openid-connect/certs";
+
+    private final HttpServer server;
+    private final String realm;
+    private final long latencyMs;
+    private final String jwks;
+    private final byte[] tokenResponse;
+    private final AtomicLong tokenRequests = new AtomicLong();
+    private final AtomicLong adminRequests = new AtomicLong();
+
+    KeycloakStub(String realm, long latencyMs) throws IOException, JOSEException {
+        this.realm = realm;
+        this.latencyMs = latencyMs;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("load-test").generate();
+        this.jwks = new JWKSet(signingKey.toPublicJWK()).toString();
+        // One token for every grant: signing per request would make the stub, not the service, the bottleneck
+        this.tokenResponse = ("{\"access_token\":\"" + sign(signingKey) + "\",\"refresh_token\":\"stub-refresh\","
+                + "\"expires_in\":300,\"refresh_expires_in\":1800,\"token_type\":\"Bearer\"}").getBytes(StandardCharsets.UTF_8);
+
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    private String sign(RSAKey signingKey) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer())
+                .subject(UUID.randomUUID().toString())
+                .claim("typ", "Bearer")
+                .claim("azp", "auth-client-api-rest")
+                .claim("preferred_username", "load-test-user")
+                .claim("realm_access", Map.of("roles", List.of("user")))
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(signingKey));
+        return jwt.serialize();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    String issuer() {
+        return url() + "/realms/" + realm;
+    }
+
+    long tokenRequests() {
+        return tokenRequests.get();
+    }
+
+    long adminRequests() {
+        return adminRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            sleep();
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+
+            if (path.endsWith(TOKEN_PATH)) {
+                tokenRequests.incrementAndGet();
+                respond(exchange, 200, tokenResponse);
+            } else if (path.endsWith(CERTS_PATH)) {
+                respond(exchange, 200, jwks.getBytes(StandardCharsets.UTF_8));
+            } else if (path.startsWith("/admin/realms/")) {
+                adminRequests.incrementAndGet();
+                handleAdmin(exchange, method, path);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    private void handleAdmin(HttpExchange exchange, String method, String path) throws IOException {
+        if ("POST".equals(method) && path.endsWith("/users")) {
+            exchange.getResponseHeaders().add("Location", url() + path + "/" + UUID.randomUUID());
+            exchange.sendResponseHeaders(201, -1);
+        } else if ("GET".equals(method) && path.contains("/roles/")) {
+            String role = path.substring(path.lastIndexOf('/') + 1);
+            respond(exchange, 200, ("{\"id\":\"" + role + "-id\",\"name\":\"" + role + "\"}").getBytes(StandardCharsets.UTF_8));
+        } else if ("GET".equals(method)) {
+            respond(exchange, 200, "[]".getBytes(StandardCharsets.UTF_8));
+        } else {
+            exchange.sendResponseHeaders(204, -1);
+        }
+    }
+
+    private void sleep() {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.mhm.bank.load;
+
+import com.mhm.bank.BankApplication;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Measures how long the service takes to become ready and how long its first requests take, without warm-up, with
+ * {@code startup.warmup.enabled} and with {@code startup.warmup.jit.enabled} as well, against the same stand-ins
+ * as {@link AuthEndpointsLoadTest}. Each configuration runs in a JVM of its own, started with the classpath of
+ * this test, so that none of them starts with classes loaded or code compiled by another: readiness is measured
+ * from the start of the process to the first successful {@code /actuator/health/readiness}. After the first
+ * register and login, {@code loadtest.startup.logins} (500 by default) more logins are sent one at a time, the
+ * ones still served by interpreted code. The results are printed and written to
+ * {@code build/reports/loadTest/startup.txt}, the output of each JVM next to it. Run with {@code gradle loadTest}.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@EmbeddedKafka(partitions = 1, topics = "user-registered")
+class StartupTimeTest {
+    private static final String REALM = "mhm-corp-bank-dev";
+    private static final long KEYCLOAK_LATENCY_MS = Long.getLong("loadtest.keycloak.latency-ms", 20);
+    private static final int LOGINS = Integer.getInteger("loadtest.startup.logins", 500);
+    private static final Path REPORTS = Path.of("build", "reports", "loadTest");
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(2);
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("bank_auth")
+            .withUsername("test")
+            .withPassword("test");
+
+    private static final KeycloakStub keycloak = startKeycloak();
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    private record Run(String name, long readyMs, long firstRegisterMs, long firstLoginMs, Histogram logins) {
+        String summary() {
+            return String.format("%-18s ready %6d ms, first register %5d ms, first login %5d ms, "
+                            + "next %d logins p50 %6.2f ms, p99 %6.2f ms, max %6.2f ms",
+                    name, readyMs, firstRegisterMs, firstLoginMs, logins.getTotalCount(),
+                    logins.getValueAtPercentile(50) / 1e6, logins.getValueAtPercentile(99) / 1e6,
+                    logins.getMaxValue() / 1e6);
+        }
+    }
+
+    private static KeycloakStub startKeycloak() {
+        try {
+            return new KeycloakStub(REALM, KEYCLOAK_LATENCY_MS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to start the Keycloak stub", e);
+        }
+    }
+
+    @AfterAll
+    static void stopKeycloak() {
+        keycloak.close();
+    }
+
+    @Test
+    void startup_withAndWithoutWarmup(EmbeddedKafkaBroker broker) throws Exception {
+        Files.createDirectories(REPORTS);
+        List<Run> runs = new ArrayList<>();
+        runs.add(start("no warm-up", false, false, broker, 1));
+        runs.add(start("warm-up", true, false, broker, 2));
+        runs.add(start("warm-up + JIT", true, true, broker, 3));
+
+        StringBuilder report = new StringBuilder(String.format("Startup time (Keycloak latency %d ms)%n",
+                KEYCLOAK_LATENCY_MS));
+        for (Run run : runs) {
+            report.append(run.summary()).append(System.lineSeparator());
+        }
+        System.out.print(report);
+        Files.writeString(REPORTS.resolve("startup.txt"), report);
+    }
+
+    private Run start(String name, boolean warmup, boolean jit, EmbeddedKafkaBroker broker, int user)
+            throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                BankApplication.class.getName(),
+                "--spring.profiles.active=dev",
+                "--server.port=" + port,
+                "--startup.warmup.enabled=" + warmup,
+                "--startup.warmup.jit.enabled=" + jit,
+                "--spring.datasource.url=" + postgres.getJdbcUrl(),
+                "--spring.datasource.username=" + postgres.getUsername(),
+                "--spring.datasource.password=" + postgres.getPassword(),
+                "--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+                "--spring.kafka.producer.properties.bootstrap.servers=" + broker.getBrokersAsString(),
+                "--keycloak.server.url=" + keycloak.url(),
+                "--keycloak.server.nodes=" + keycloak.url(),
+                "--keycloak.realm_name=" + REALM,
+                "--spring.security.oauth2.resourceserver.jwt.issuer-uri=" + keycloak.issuer(),
+                "--spring.security.oauth2.resourceserver.jwt.jwk-set-uri=" + keycloak.issuer()
+                        + "/protocol/openid-connect/certs",
+                "--audit.enabled=false",
+                "--login.guard.enabled=false",
+                "--logging.level.com.mhm.bank=INFO",
+                "--logging.level.org.keycloak=WARN"));
+        Path output = REPORTS.resolve("startup-" + name.replaceAll("[^a-zA-Z]+", "-") + ".log");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output.toFile()).start();
+        try {
+            awaitReady(process, port);
+            long readyMs = elapsedMs(start);
+
+            long registerStart = System.nanoTime();
+            assertEquals(201, send(register(port, user)));
+            long firstRegisterMs = elapsedMs(registerStart);
+
+            long loginStart = System.nanoTime();
+            assertEquals(200, send(login(port, user)));
+            long firstLoginMs = elapsedMs(loginStart);
+
+            Histogram logins = new Histogram(TimeUnit.SECONDS.toNanos(30), 3);
+            for (int i = 0; i < LOGINS; i++) {
+                long sent = System.nanoTime();
+                assertEquals(200, send(login(port, user)));
+                logins.recordValue(System.nanoTime() - sent);
+            }
+            return new Run(name, readyMs, firstRegisterMs, firstLoginMs, logins);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private void awaitReady(Process process, int port) throws IOException, InterruptedException {
+        HttpRequest readiness = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        long deadline = System.nanoTime() + READY_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                fail("The service exited with " + process.exitValue() + " before it was ready");
+            }
+            try {
+                if (send(readiness) == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(20);
+        }
+        fail("The service was not ready within " + READY_TIMEOUT);
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static HttpRequest register(int port, int user) {
+        String body = String.format("{\"idCard\":\"%d\",\"username\":\"startup%d\",\"password\":\"Password123!\","
+                + "\"firstName\":\"Startup\",\"lastName\":\"Test\",\"address\":\"123 Main St\","
+                + "\"email\":\"startup%d@example.com\",\"birthdate\":\"1990-01-01\",\"phoneNumber\":\"123456789\"}",
+                20_000_000 + user, user, user);
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/register"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static HttpRequest login(int port, int user) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/login"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"username\":\"startup" + user + "\",\"password\":\"Password123!\"}"))
+                .build();
+    }
+
+}
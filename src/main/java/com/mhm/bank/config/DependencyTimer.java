@@ -0,0 +1,67 @@
+package com.mhm.bank.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Observes calls to the services this one depends on as {@value #CALLS}: a timer tagged by dependency, operation,
+ * outcome and error (with a percentile histogram, see {@code management.metrics.distribution}) so that the p99 of
+ * a request can be traced to the call that caused it, and a span that is current while the call runs, so that
+ * the HTTP client and Kafka spans it starts become its children. Failed calls are recorded as well: a timeout that
+ * takes the full read timeout is exactly what should show.
+ */
+@Component
+public class DependencyTimer {
+
+    static final String CALLS = "auth.dependency.calls";
+
+    private static final ThreadLocal<Boolean> UNOBSERVED = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Throwable> {
+        T call() throws E;
+    }
+
+    private final ObservationRegistry observationRegistry;
+
+    public DependencyTimer(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * Runs the action without observing the calls it makes, for synthetic calls such as the JIT warm-up that
+     * must not show in the latency of real ones.
+     */
+    public static void unobserved(Runnable action) {
+        UNOBSERVED.set(Boolean.TRUE);
+        try {
+            action.run();
+        } finally {
+            UNOBSERVED.remove();
+        }
+    }
+
+    public <T, E extends Throwable> T record(String dependency, String operation, TimedCall<T, E> call) throws E {
+        if (UNOBSERVED.get() != null) {
+            return call.call();
+        }
+        Observation observation = Observation.createNotStarted(CALLS, observationRegistry)
+                .contextualName(operation)
+                .lowCardinalityKeyValue("dependency", dependency)
+                .lowCardinalityKeyValue("operation", operation)
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            T result = call.call();
+            observation.lowCardinalityKeyValue("outcome", "success");
+            return result;
+        } catch (Throwable e) {
+            observation.lowCardinalityKeyValue("outcome", "failure");
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+}
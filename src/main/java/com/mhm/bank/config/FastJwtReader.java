@@ -0,0 +1,143 @@
+package com.mhm.bank.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads the few fields needed to reject a token early ({@code kid} from the header, {@code iss} and {@code exp}
+ * from the payload), and the {@code preferred_username} the audit trail records, without building the JSON maps {@code SignedJWT.parse} creates. Both parts are Base64URL-decoded
+ * straight from the token into a per-thread buffer and scanned with a streaming JSON parser that skips every other
+ * field. Nothing here is verified: a token that passes must still be parsed and verified in full.
+ */
+public final class FastJwtReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int MAX_CACHED_BUFFER_BYTES = 64 * 1024;
+    private static final byte[] BASE64URL_VALUES = new byte[128];
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    static {
+        Arrays.fill(BASE64URL_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64URL_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * The fields read from the token; {@code expiresAtSeconds} is 0 when the token has no {@code exp}.
+     */
+    public record Claims(String kid, String issuer, long expiresAtSeconds, String username) { }
+
+    private FastJwtReader() {
+    }
+
+    /**
+     * Returns the token's key id, issuer, expiry and username, or null if the token is not a well-formed signed JWT.
+     */
+    public static Claims read(String token) {
+        if (token == null) {
+            return null;
+        }
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+            return null;
+        }
+
+        int maxDecodedLength = (secondDot - 1) / 4 * 3 + 6;
+        byte[] buffer = BUFFER.get();
+        if (buffer.length < maxDecodedLength) {
+            buffer = new byte[maxDecodedLength];
+            if (maxDecodedLength <= MAX_CACHED_BUFFER_BYTES) {
+                BUFFER.set(buffer);
+            }
+        }
+
+        int headerLength = decode(token, 0, firstDot, buffer, 0);
+        if (headerLength < 0) {
+            return null;
+        }
+        int payloadLength = decode(token, firstDot + 1, secondDot, buffer, headerLength);
+        if (payloadLength < 0) {
+            return null;
+        }
+
+        try {
+            String kid = null;
+            String issuer = null;
+            long expiresAtSeconds = 0;
+            String username = null;
+            try (JsonParser header = JSON_FACTORY.createParser(buffer, 0, headerLength)) {
+                if (header.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (header.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = header.currentName();
+                    JsonToken value = header.nextToken();
+                    if ("kid".equals(field) && value == JsonToken.VALUE_STRING) {
+                        kid = header.getText();
+                    } else {
+                        header.skipChildren();
+                    }
+                }
+            }
+            try (JsonParser payload = JSON_FACTORY.createParser(buffer, headerLength, payloadLength)) {
+                if (payload.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (payload.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = payload.currentName();
+                    JsonToken value = payload.nextToken();
+                    if ("iss".equals(field) && value == JsonToken.VALUE_STRING) {
+                        issuer = payload.getText();
+                    } else if ("exp".equals(field) && value.isNumeric()) {
+                        expiresAtSeconds = payload.getLongValue();
+                    } else if ("preferred_username".equals(field) && value == JsonToken.VALUE_STRING) {
+                        username = payload.getText();
+                    } else {
+                        payload.skipChildren();
+                    }
+                }
+            }
+            return new Claims(kid, issuer, expiresAtSeconds, username);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the Base64URL characters {@code token[from, to)} into {@code out} at {@code offset} and returns the
+     * number of bytes written, or -1 if they are not valid Base64URL.
+     */
+    private static int decode(String token, int from, int to, byte[] out, int offset) {
+        while (to > from && token.charAt(to - 1) == '=') {
+            to--;
+        }
+        if ((to - from) % 4 == 1) {
+            return -1;
+        }
+        int written = offset;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = token.charAt(i);
+            int value = c < 128 ? BASE64URL_VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[written++] = (byte) (bits >> bitCount);
+            }
+        }
+        return written - offset;
+    }
+
+}
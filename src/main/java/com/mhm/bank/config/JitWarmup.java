@@ -0,0 +1,233 @@
+package com.mhm.bank.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mhm.bank.controller.dto.LoginRequest;
+import com.mhm.bank.controller.dto.TokenIntrospection;
+import com.mhm.bank.controller.dto.TokensUser;
+import com.mhm.bank.controller.dto.UserInformation;
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import com.mhm.bank.repository.UserRepository;
+import com.mhm.bank.service.dto.TokenResponse;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import jakarta.validation.Validator;
+import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import org.keycloak.admin.client.JacksonProvider;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NativeDetector;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Synthetic calls through the code the first requests run (JWT parsing and verification, Jackson binding of the
+ * request, response, token and event bodies, bean validation, the Keycloak admin client's JSON provider and the
+ * user repository queries), repeated until the JIT has compiled them, so that the first logins after a deploy are
+ * not served by the interpreter. They have no side effects: tokens are signed with a key generated for the
+ * purpose, nothing is sent to Keycloak or Kafka and the database is only read, for a username no user can have,
+ * without being recorded in {@code auth.dependency.calls}. A native image is compiled ahead of time and has no
+ * JIT to warm up, so there it makes no calls.
+ *
+ * <p>The calls run as steps of {@link StartupWarmup}, within its timeout, when both
+ * {@code startup.warmup.enabled} and {@code startup.warmup.jit.enabled} are set. Each step makes
+ * {@code startup.warmup.jit.iterations} calls, the queries {@code startup.warmup.jit.query-iterations}.
+ */
+@Component
+public class JitWarmup {
+
+    static final String USERNAME = "jit-warmup";
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+    private static final Type USER_LIST = new GenericType<List<UserRepresentation>>() { }.getType();
+
+    private static final String LOGIN_BODY = "{\"username\":\"jit-warmup\",\"password\":\"Password123!\"}";
+    private static final String REGISTER_BODY = "{\"idCard\":\"00000000\",\"username\":\"jit-warmup\","
+            + "\"password\":\"Password123!\",\"firstName\":\"Warm\",\"lastName\":\"Up\",\"address\":\"1 Main St\","
+            + "\"email\":\"jit-warmup@example.com\",\"birthdate\":\"1990-01-01\",\"phoneNumber\":\"123456789\"}";
+    private static final String TOKEN_BODY = "{\"access_token\":\"a.b.c\",\"expires_in\":300,"
+            + "\"refresh_expires_in\":1800,\"refresh_token\":\"d.e.f\",\"token_type\":\"Bearer\","
+            + "\"not-before-policy\":0,\"session_state\":\"00000000-0000-0000-0000-000000000000\","
+            + "\"scope\":\"profile email\"}";
+
+    @FunctionalInterface
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    private final boolean enabled;
+    private final int iterations;
+    private final int queryIterations;
+    private final String issuer;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final UserRepository userRepository;
+
+    public JitWarmup(@Value("${startup.warmup.jit.enabled:false}") boolean enabled,
+                     @Value("${startup.warmup.jit.iterations:10000}") int iterations,
+                     @Value("${startup.warmup.jit.query-iterations:200}") int queryIterations,
+                     @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuer,
+                     ObjectMapper objectMapper, Validator validator, UserRepository userRepository) {
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.queryIterations = queryIterations;
+        this.issuer = issuer;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * The warm-up steps by name, none when disabled or in a native image.
+     */
+    public Map<String, Runnable> steps() {
+        Map<String, Runnable> steps = new LinkedHashMap<>();
+        if (!enabled || NativeDetector.inNativeImage()) {
+            return steps;
+        }
+        steps.put("jwt verification", () -> jwtVerification(iterations));
+        steps.put("json binding", () -> repeat(iterations, this::jsonBinding));
+        steps.put("bean validation", () -> repeat(iterations, this::beanValidation));
+        steps.put("keycloak representations", () -> keycloakRepresentations(iterations));
+        steps.put("user queries", () -> DependencyTimer.unobserved(() -> repeat(queryIterations, this::userQueries)));
+        return steps;
+    }
+
+    void jwtVerification(int times) {
+        KeyPair keyPair = rsaKeyPair();
+        JWSVerifier verifier = new RSASSAVerifier((RSAPublicKey) keyPair.getPublic());
+        String token = signedToken(keyPair);
+        repeat(times, () -> {
+            // the steps of TokenProvider.verifyToken and TokenIntrospectionService.introspect
+            FastJwtReader.Claims fastClaims = FastJwtReader.read(token);
+            SignedJWT signedJWT = SignedJWT.parse(token);
+            if (fastClaims == null || !signedJWT.verify(verifier)) {
+                throw new IllegalStateException("warm-up token did not verify");
+            }
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+            claims.getStringClaim("preferred_username");
+            claims.getJSONObjectClaim("realm_access");
+        });
+    }
+
+    void jsonBinding() throws Exception {
+        LoginRequest login = objectMapper.readValue(LOGIN_BODY, LoginRequest.class);
+        UserInformation user = objectMapper.readValue(REGISTER_BODY, UserInformation.class);
+        TokenResponse tokenResponse = objectMapper.readValue(TOKEN_BODY, TokenResponse.class);
+        objectMapper.writeValueAsBytes(new TokensUser(tokenResponse.getAccessToken(), tokenResponse.getRefreshToken(),
+                tokenResponse.getExpiresIn()));
+        objectMapper.writeValueAsBytes(new TokenIntrospection(true, user.idCard(), login.username(),
+                List.of("user"), 0L));
+        objectMapper.writeValueAsBytes(new UserRegisteredEvent(user.idCard(), user.username(), user.firstName(),
+                user.lastName(), user.email(), user.address(), user.phoneNumber(), String.valueOf(user.birthdate())));
+    }
+
+    void beanValidation() {
+        validator.validate(new UserInformation("00000000", USERNAME, "Password123!", "Warm", "Up", "1 Main St",
+                "jit-warmup@example.com", LocalDate.of(1990, 1, 1), "123456789", Set.of("user")));
+        // a rejected registration also interpolates the violation messages
+        validator.validate(new UserInformation("00000000", "", "", "", "", null, "not-an-email",
+                LocalDate.now(), "1234567890123456789012", null));
+    }
+
+    void keycloakRepresentations(int times) {
+        JacksonProvider provider = new JacksonProvider();
+        UserRepresentation user = new UserRepresentation();
+        user.setUsername(USERNAME);
+        user.setEmail("jit-warmup@example.com");
+        user.setEnabled(true);
+        user.setAttributes(Map.of("registrationId", List.of("00000000-0000-0000-0000-000000000000")));
+        CredentialRepresentation credential = new CredentialRepresentation();
+        credential.setType(CredentialRepresentation.PASSWORD);
+        credential.setValue("Password123!");
+        user.setCredentials(List.of(credential));
+        repeat(times, () -> {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+            provider.writeTo(user, UserRepresentation.class, UserRepresentation.class, NO_ANNOTATIONS,
+                    MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), body);
+            byte[] users = ("[" + body.toString(StandardCharsets.UTF_8) + "]").getBytes(StandardCharsets.UTF_8);
+            readFrom(provider, UserRepresentation.class, USER_LIST, users);
+            readFrom(provider, AccessTokenResponse.class, AccessTokenResponse.class,
+                    TOKEN_BODY.getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    void userQueries() {
+        userRepository.existsByUsername(USERNAME);
+        userRepository.existsByEmail(USERNAME);
+        userRepository.findByUsername(USERNAME);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void readFrom(JacksonProvider provider, Class<?> type, Type genericType, byte[] body)
+            throws Exception {
+        provider.readFrom((Class) type, genericType, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE,
+                new MultivaluedHashMap<>(), new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Makes the call the given number of times, stopping early when the warm-up is cancelled.
+     */
+    private static void repeat(int times, Call call) {
+        for (int i = 0; i < times && !Thread.currentThread().isInterrupted(); i++) {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static KeyPair rsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private String signedToken(KeyPair keyPair) {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .subject("00000000-0000-0000-0000-000000000000")
+                .claim("preferred_username", USERNAME)
+                .claim("realm_access", Map.of("roles", List.of("user")))
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(USERNAME).build(), claims);
+        try {
+            jwt.sign(new RSASSASigner(keyPair.getPrivate()));
+        } catch (JOSEException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return jwt.serialize();
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.mhm.bank.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps Keycloak's signing keys in memory as ready-to-use verifiers, so validating a token does not fetch the
+ * JWKS document. The keys are reloaded after {@code keycloak.jwks.ttl-sec}, or earlier when a token names a key
+ * id we don't know (Keycloak rotated its keys), at most once per {@code keycloak.jwks.min-refresh-interval-ms}
+ * so that tokens with made-up key ids can't hammer Keycloak. If a reload fails the previous keys stay in use.
+ *
+ * <p>Once the TTL has passed, the keys are reloaded by a single background thread while requests keep being
+ * verified with the cached ones; only a token whose key id is unknown, or the first one before any key was
+ * loaded, waits for Keycloak.
+ */
+@Component
+public class JwksCache {
+    private static final Logger logger = LoggerFactory.getLogger(JwksCache.class);
+
+    private static final int JWKS_SIZE_LIMIT_BYTES = 256 * 1024;
+
+    private final String jwksUrl;
+    private final long ttlMs;
+    private final long minRefreshIntervalMs;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private volatile Map<String, JWSVerifier> verifiers = Map.of();
+    private volatile long loadedAtMillis;
+    private volatile long lastAttemptMillis;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ThreadPoolExecutor refresher;
+
+    public JwksCache(@Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwksUrl,
+                     @Value("${keycloak.jwks.ttl-sec:300}") long ttlSeconds,
+                     @Value("${keycloak.jwks.min-refresh-interval-ms:10000}") long minRefreshIntervalMs,
+                     @Value("${keycloak.client.connect-timeout-ms:2000}") int connectTimeoutMs,
+                     @Value("${keycloak.client.read-timeout-ms:5000}") int readTimeoutMs) {
+        this.jwksUrl = jwksUrl;
+        this.ttlMs = ttlSeconds * 1000;
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.refresher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "jwks-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the verifier for the key id, or null if Keycloak does not publish such a key.
+     */
+    public JWSVerifier getVerifier(String kid) {
+        if (kid == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - loadedAtMillis > ttlMs) {
+            if (verifiers.isEmpty()) {
+                reload(now, false);
+            } else {
+                refreshInBackground(now);
+            }
+        }
+        JWSVerifier verifier = verifiers.get(kid);
+        if (verifier == null) {
+            // the keys may also have been reloaded by another thread while this one waited for the lock
+            reload(now, true);
+            verifier = verifiers.get(kid);
+        }
+        return verifier;
+    }
+
+    /**
+     * Loads the signing keys ahead of the first token to verify; returns whether they could be loaded.
+     */
+    public boolean preload() {
+        return reload(System.currentTimeMillis(), true);
+    }
+
+    /**
+     * Reloads the keys on the refresh thread unless a reload is already running or was attempted less than
+     * {@code keycloak.jwks.min-refresh-interval-ms} ago.
+     */
+    private void refreshInBackground(long now) {
+        if (now - lastAttemptMillis < minRefreshIntervalMs || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    reload(System.currentTimeMillis(), false);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    private synchronized boolean reload(long now, boolean unknownKid) {
+        if (now - lastAttemptMillis < minRefreshIntervalMs) {
+            return false;
+        }
+        if (!unknownKid && now - loadedAtMillis <= ttlMs) {
+            // Another thread reloaded the keys while we were waiting for the lock
+            return false;
+        }
+        lastAttemptMillis = now;
+        try {
+            Map<String, JWSVerifier> loaded = new HashMap<>();
+            for (JWK jwk : load().getKeys()) {
+                if (jwk instanceof RSAKey rsaKey && jwk.getKeyID() != null) {
+                    loaded.put(jwk.getKeyID(), new RSASSAVerifier(rsaKey.toRSAPublicKey()));
+                }
+            }
+            verifiers = Map.copyOf(loaded);
+            loadedAtMillis = now;
+            logger.debug("Loaded {} signing keys from {}", loaded.size(), jwksUrl);
+            return true;
+        } catch (IOException | ParseException | JOSEException e) {
+            logger.warn("Failed to load signing keys from {}, keeping {} cached keys: {}",
+                    jwksUrl, verifiers.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    JWKSet load() throws IOException, ParseException {
+        return JWKSet.load(new URL(jwksUrl), connectTimeoutMs, readTimeoutMs, JWKS_SIZE_LIMIT_BYTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.service.external.keycloak.KeycloakResilience;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Client-side pool of the Keycloak nodes listed in {@code keycloak.server.nodes}. Each call goes to the less
+ * busy of two randomly picked healthy nodes (power of two choices on outstanding requests), and a node that fails
+ * or answers too slowly several times in a row is ejected for a while, growing with every ejection. The growth is
+ * only forgotten once the node has stayed in the pool for {@code keycloak.pool.max-ejection-ms} since its last
+ * ejection ended, so that a node that keeps failing right after it comes back is ejected for longer each time.
+ * When every node is ejected the pool fails open to the node whose ejection ends first.
+ */
+@Component
+public class KeycloakEndpointPool {
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakEndpointPool.class);
+
+    static final String OUTSTANDING = "auth.keycloak.pool.outstanding";
+    static final String EJECTIONS = "auth.keycloak.pool.ejections";
+    private static final double LATENCY_EWMA_WEIGHT = 0.2;
+
+    static final class Node {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejections = new AtomicInteger();
+        private volatile long ejectedUntilMillis;
+        private volatile double latencyEwmaMs;
+        private Counter ejectionCounter;
+
+        private Node(String url) {
+            this.url = url;
+        }
+
+        boolean isHealthy(long now) {
+            return ejectedUntilMillis <= now;
+        }
+
+        String url() {
+            return url;
+        }
+    }
+
+    private final List<Node> nodes;
+    private final int ejectAfterFailures;
+    private final long baseEjectionMs;
+    private final long maxEjectionMs;
+    private final long slowCallMs;
+
+    public KeycloakEndpointPool(@Value("${keycloak.server.nodes:${keycloak.server.url}}") String nodes,
+                                @Value("${keycloak.pool.eject-after-failures:3}") int ejectAfterFailures,
+                                @Value("${keycloak.pool.ejection-ms:10000}") long baseEjectionMs,
+                                @Value("${keycloak.pool.max-ejection-ms:300000}") long maxEjectionMs,
+                                @Value("${keycloak.pool.slow-call-ms:3000}") long slowCallMs,
+                                MeterRegistry meterRegistry) {
+        this.nodes = Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .distinct()
+                .map(Node::new)
+                .toList();
+        if (this.nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one Keycloak node must be configured");
+        }
+        this.ejectAfterFailures = Math.max(1, ejectAfterFailures);
+        this.baseEjectionMs = baseEjectionMs;
+        this.maxEjectionMs = Math.max(baseEjectionMs, maxEjectionMs);
+        this.slowCallMs = slowCallMs;
+        for (Node node : this.nodes) {
+            Gauge.builder(OUTSTANDING, node.outstanding, AtomicInteger::get).tag("node", node.url).register(meterRegistry);
+            node.ejectionCounter = meterRegistry.counter(EJECTIONS, "node", node.url);
+        }
+        logger.info("Keycloak endpoint pool initialized with nodes: {}", this.nodes.stream().map(Node::url).toList());
+    }
+
+    public List<String> urls() {
+        return nodes.stream().map(Node::url).toList();
+    }
+
+    public String choose() {
+        return pick(null).url;
+    }
+
+    /**
+     * Chooses a node other than the excluded one, e.g. for a hedged request; returns the excluded node if it is
+     * the only one.
+     */
+    public String chooseOther(String excluded) {
+        return pick(excluded).url;
+    }
+
+    public <T> T execute(String url, Supplier<T> call) {
+        return execute(url, call, result -> false);
+    }
+
+    /**
+     * Runs the call against the node, tracking it as outstanding while it runs. Exceptions that mean the node
+     * could not answer, results matching {@code isFailure} and calls slower than {@code keycloak.pool.slow-call-ms}
+     * count as failures of the node.
+     */
+    public <T> T execute(String url, Supplier<T> call, Predicate<T> isFailure) {
+        Node node = find(url);
+        if (node == null) {
+            return call.get();
+        }
+        node.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = isFailure.test(result);
+            return result;
+        } catch (RuntimeException e) {
+            failed = KeycloakResilience.isKeycloakFailure(e);
+            throw e;
+        } finally {
+            node.outstanding.decrementAndGet();
+            record(node, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failed);
+        }
+    }
+
+    List<Node> getNodes() {
+        return nodes;
+    }
+
+    private Node pick(String excluded) {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        long now = System.currentTimeMillis();
+        List<Node> candidates = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (!node.url.equals(excluded) && node.isHealthy(now)) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return nodes.stream()
+                    .filter(node -> !node.url.equals(excluded))
+                    .min((a, b) -> Long.compare(a.ejectedUntilMillis, b.ejectedUntilMillis))
+                    .orElse(nodes.get(0));
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        return lessLoaded(candidates.get(first), candidates.get(second));
+    }
+
+    private static Node lessLoaded(Node a, Node b) {
+        int outstandingA = a.outstanding.get();
+        int outstandingB = b.outstanding.get();
+        if (outstandingA != outstandingB) {
+            return outstandingA < outstandingB ? a : b;
+        }
+        return a.latencyEwmaMs <= b.latencyEwmaMs ? a : b;
+    }
+
+    long ejectedUntilMillis(String url) {
+        return find(url).ejectedUntilMillis;
+    }
+
+    private Node find(String url) {
+        for (Node node : nodes) {
+            if (node.url.equals(url)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void record(Node node, long latencyMs, boolean failed) {
+        node.latencyEwmaMs += LATENCY_EWMA_WEIGHT * (latencyMs - node.latencyEwmaMs);
+        if (!failed && latencyMs < slowCallMs) {
+            node.consecutiveFailures.set(0);
+            if (node.ejections.get() > 0 && System.currentTimeMillis() - node.ejectedUntilMillis >= maxEjectionMs) {
+                node.ejections.set(0);
+            }
+            return;
+        }
+        if (node.consecutiveFailures.incrementAndGet() >= ejectAfterFailures) {
+            node.consecutiveFailures.set(0);
+            int ejections = node.ejections.getAndIncrement();
+            long ejectionMs = Math.min(maxEjectionMs, baseEjectionMs << Math.min(ejections, 20));
+            node.ejectedUntilMillis = System.currentTimeMillis() + ejectionMs;
+            node.ejectionCounter.increment();
+            logger.warn("Ejecting Keycloak node {} for {} ms after {} failed or slow calls",
+                    node.url, ejectionMs, ejectAfterFailures);
+        }
+    }
+
+}
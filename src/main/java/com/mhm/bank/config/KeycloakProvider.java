@@ -1,5 +1,9 @@
 package com.mhm.bank.config;
 
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
@@ -10,11 +14,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Component
 public class KeycloakProvider {
     private static final Logger logger = LoggerFactory.getLogger(KeycloakProvider.class);
-    @Value("${keycloak.server.url}")
-    private String serverKeycloakUrl;
+    private static final int CONNECTION_POOL_SIZE = 10;
     @Value("${keycloak.realm_name}")
     private String realmName;
     @Value("${keycloak.realm.master}")
@@ -27,31 +33,75 @@ public class KeycloakProvider {
     private String passwordConsole;
     @Value("${keycloak.client.client_secret}")
     private String clientSecret;
+    @Value("${keycloak.client.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+    @Value("${keycloak.client.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    private final KeycloakEndpointPool endpointPool;
+    private final ObservationRegistry observationRegistry;
+    /** One admin client per node, so that its connection pool and admin token are reused between calls. */
+    private final Map<String, Keycloak> clients = new ConcurrentHashMap<>();
+
+    public KeycloakProvider(KeycloakEndpointPool endpointPool, ObservationRegistry observationRegistry) {
+        this.endpointPool = endpointPool;
+        this.observationRegistry = observationRegistry;
+    }
 
     public RealmResource getRealmResouce() {
-        logger.debug("Initializing Keycloak client for realm: {}", realmName);
+        String node = endpointPool.choose();
+        logger.debug("Using Keycloak node {} for realm: {}", node, realmName);
+        return clients.computeIfAbsent(node, this::createClient).realm(realmName);
+    }
+
+    private Keycloak createClient(String node) {
+        logger.debug("Initializing Keycloak client for node: {}", node);
         try {
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(Math.toIntExact(connectTimeoutMs))
+                    .setSocketTimeout(Math.toIntExact(readTimeoutMs))
+                    .build();
+            HttpClientBuilder httpClient = HttpClientBuilder.create()
+                    .setMaxConnTotal(CONNECTION_POOL_SIZE)
+                    .setMaxConnPerRoute(CONNECTION_POOL_SIZE)
+                    .setDefaultRequestConfig(requestConfig);
+            ResteasyClientBuilderImpl clientBuilder = new ResteasyClientBuilderImpl();
+            clientBuilder.httpEngine(new PooledClientHttpEngine(httpClient.build(), endpointPool, node,
+                    observationRegistry));
+
             Keycloak keycloak = KeycloakBuilder.builder()
-                    .serverUrl(serverKeycloakUrl)
+                    .serverUrl(node)
                     .realm(realmMaster)
                     .clientId(adminCli)
                     .username(userConsole)
                     .password(passwordConsole)
                     .clientSecret(clientSecret)
-                    .resteasyClient(
-                            new ResteasyClientBuilderImpl()
-                                    .connectionPoolSize(10)
-                                    .build()
-                    )
+                    .resteasyClient(clientBuilder.build())
                     .build();
-            logger.info("Successfully initialized Keycloak client for realm: {}", realmName);
-            return keycloak.realm(realmName);
+            logger.info("Successfully initialized Keycloak client for node: {}", node);
+            return keycloak;
         } catch (Exception e) {
-            logger.error("Failed to initialize Keycloak client for realm: {}. Error: {}", realmName, e.getMessage(), e);
+            logger.error("Failed to initialize Keycloak client for node: {}. Error: {}", node, e.getMessage(), e);
             throw e;
         }
     }
 
+    /**
+     * Creates the admin client of every node and has it fetch its admin token, so that the first registration
+     * finds the RESTEasy client initialized, a pooled connection open and a token cached.
+     */
+    public void warmUp() {
+        for (String node : endpointPool.urls()) {
+            clients.computeIfAbsent(node, this::createClient).tokenManager().getAccessToken();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        clients.values().forEach(Keycloak::close);
+        clients.clear();
+    }
+
     public UsersResource getUserResource() {
         logger.debug("Retrieving users resource for realm: {}", realmName);
         try {
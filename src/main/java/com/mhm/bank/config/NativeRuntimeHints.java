@@ -0,0 +1,107 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import com.mhm.bank.controller.validators.BirthdateValidator;
+import com.mhm.bank.service.dto.TokenResponse;
+import org.jboss.resteasy.client.jaxrs.internal.proxy.ResteasyClientProxy;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.admin.client.resource.RealmsResource;
+import org.keycloak.admin.client.resource.RoleMappingResource;
+import org.keycloak.admin.client.resource.RoleResource;
+import org.keycloak.admin.client.resource.RoleScopeResource;
+import org.keycloak.admin.client.resource.RolesResource;
+import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.admin.client.token.TokenService;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.RoleRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reflection, proxy and resource hints for a native image of the service, for what Spring AOT can't find on its
+ * own. Hibernate, Flyway, Kafka and the JSON bodies of the controllers are covered by Spring and the libraries;
+ * what is left is mostly the Keycloak admin client: RESTEasy implements each admin resource interface as a JDK
+ * proxy, reads the JAX-RS annotations of its methods, discovers its providers through
+ * {@code META-INF/services} and binds the Keycloak representations with Jackson. Nimbus JOSE parses JWTs and
+ * JWK sets without reflection and needs nothing.
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final List<Class<?>> KEYCLOAK_RESOURCES = List.of(RealmsResource.class, RealmResource.class,
+            UsersResource.class, UserResource.class, RolesResource.class, RoleResource.class,
+            RoleMappingResource.class, RoleScopeResource.class, TokenService.class);
+
+    static final List<String> RESTEASY_SERVICES = List.of("jakarta.ws.rs.client.ClientBuilder",
+            "jakarta.ws.rs.ext.RuntimeDelegate", "jakarta.ws.rs.ext.Providers");
+
+    private static final List<Class<?>> JSON_TYPES = List.of(UserRepresentation.class, RoleRepresentation.class,
+            CredentialRepresentation.class, AccessTokenResponse.class,
+            // bound by RestTemplate in TokenProvider and by the Kafka JsonSerializer
+            TokenResponse.class, UserRegisteredEvent.class);
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> resource : KEYCLOAK_RESOURCES) {
+            hints.proxies().registerJdkProxy(resource, ResteasyClientProxy.class);
+            hints.reflection().registerType(resource, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        for (String service : RESTEASY_SERVICES) {
+            String location = "META-INF/services/" + service;
+            hints.resources().registerPattern(location);
+            for (String implementation : implementations(classLoader, location)) {
+                hints.reflection().registerType(TypeReference.of(implementation),
+                        MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+            }
+        }
+        bindingRegistrar.registerReflectionHints(hints.reflection(), JSON_TYPES.toArray(Class<?>[]::new));
+        // Hibernate Validator creates the validators of custom constraints itself
+        hints.reflection().registerType(BirthdateValidator.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        hints.resources().registerPattern("logback-spring.xml");
+    }
+
+    /**
+     * The classes named in every service file found at {@code location}, read at build time from the classpath
+     * the image is built from.
+     */
+    private static List<String> implementations(ClassLoader classLoader, String location) {
+        if (classLoader == null) {
+            return List.of();
+        }
+        try {
+            return Collections.list(classLoader.getResources(location)).stream()
+                    .flatMap(url -> read(url).stream())
+                    .map(line -> line.replaceFirst("#.*", "").trim())
+                    .filter(line -> !line.isEmpty())
+                    .distinct()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + location, e);
+        }
+    }
+
+    private static List<String> read(URL url) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            return reader.lines().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + url, e);
+        }
+    }
+
+}
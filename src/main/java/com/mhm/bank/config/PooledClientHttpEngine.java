@@ -0,0 +1,59 @@
+package com.mhm.bank.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.core.Response;
+import org.apache.http.client.HttpClient;
+import org.jboss.resteasy.client.jaxrs.engines.ManualClosingApacheHttpClient43Engine;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+
+/**
+ * RESTEasy engine of the Keycloak admin client of one node; reports every request to the
+ * {@link KeycloakEndpointPool} so that admin calls count towards the node's load and health, and observes it as
+ * {@value #REQUESTS} so that each HTTP call of an admin operation gets its own span and timer. It extends the
+ * Apache engine rather than wrapping one, since that engine casts the client's engine back to its own class.
+ */
+// The Apache HttpClient 4 engine is the one RESTEasy 6.2, and so the Keycloak admin client, builds by default; it is
+// deprecated for removal with no replacement inside resteasy-client, so this goes when the admin client moves on
+@SuppressWarnings("removal")
+class PooledClientHttpEngine extends ManualClosingApacheHttpClient43Engine {
+    static final String REQUESTS = "keycloak.admin.requests";
+    private static final int FIRST_SERVER_ERROR = 500;
+
+    private final KeycloakEndpointPool endpointPool;
+    private final String node;
+    private final ObservationRegistry observationRegistry;
+
+    PooledClientHttpEngine(HttpClient httpClient, KeycloakEndpointPool endpointPool, String node,
+                           ObservationRegistry observationRegistry) {
+        super(httpClient, true);
+        this.endpointPool = endpointPool;
+        this.node = node;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public Response invoke(Invocation request) {
+        Observation observation = Observation.createNotStarted(REQUESTS, observationRegistry);
+        if (request instanceof ClientInvocation invocation) {
+            observation.contextualName("keycloak admin " + invocation.getMethod())
+                    .lowCardinalityKeyValue("method", invocation.getMethod())
+                    .highCardinalityKeyValue("uri", invocation.getUri().getPath());
+        }
+        observation.start();
+        try (Observation.Scope scope = observation.openScope()) {
+            Response response = endpointPool.execute(node, () -> super.invoke(request),
+                    result -> result.getStatus() >= FIRST_SERVER_ERROR);
+            observation.lowCardinalityKeyValue("status", String.valueOf(response.getStatus()));
+            return response;
+        } catch (RuntimeException e) {
+            observation.lowCardinalityKeyValue("status", "CLIENT_ERROR");
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.mhm.bank.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs every Spring Data repository method through {@link DependencyTimer}, so that each query is timed per
+ * repository method and gets its own span under the request that issued it.
+ */
+@Component
+public class RepositoryTimingPostProcessor implements BeanPostProcessor {
+
+    static final String DATABASE = "database";
+
+    private final ObjectProvider<DependencyTimer> dependencyTimer;
+
+    public RepositoryTimingPostProcessor(ObjectProvider<DependencyTimer> dependencyTimer) {
+        this.dependencyTimer = dependencyTimer;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactoryBean) {
+            repositoryFactoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(
+                            new TimingInterceptor(repositoryInformation.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    private final class TimingInterceptor implements MethodInterceptor {
+        private final String repository;
+        private final Map<Method, String> operations = new ConcurrentHashMap<>();
+
+        private TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            if (invocation.getMethod().getDeclaringClass() == Object.class) {
+                return invocation.proceed();
+            }
+            String operation = operations.computeIfAbsent(invocation.getMethod(),
+                    method -> repository + "." + method.getName());
+            return dependencyTimer.getObject().record(DATABASE, operation, invocation::proceed);
+        }
+    }
+
+}
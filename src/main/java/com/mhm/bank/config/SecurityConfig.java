@@ -3,19 +3,32 @@ package com.mhm.bank.config;
 import com.mhm.bank.service.external.keycloak.IKeycloakService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
 public class SecurityConfig {
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
+    static final String INTROSPECTION_CLIENT_ROLE = "INTROSPECTION_CLIENT";
     private IKeycloakService keycloakService;
 
 
@@ -25,6 +38,27 @@ public class SecurityConfig {
         logger.info("Initializing SecurityConfig with KeycloakService");
     }
 
+    /**
+     * The introspection endpoints tell whoever asks whether a token is active and whose it is, so, as RFC 7662
+     * requires, only the resource servers configured in {@code auth.introspection.clients} may call them, with
+     * their client id and secret over HTTP Basic.
+     */
+    @Bean
+    @Order(1)
+    SecurityFilterChain introspectionFilterChain(HttpSecurity http,
+                                                 @Value("${auth.introspection.clients:}") List<String> clients)
+            throws Exception {
+        logger.debug("Configuring introspection SecurityFilterChain for {} clients", clients.size());
+        return http
+                .securityMatcher("/api/auth/introspect", "/api/auth/introspect/**")
+                .csrf(csrf -> csrf.disable())
+                .authorizeHttpRequests(request -> request.anyRequest().hasRole(INTROSPECTION_CLIENT_ROLE))
+                .authenticationManager(introspectionClients(clients))
+                .httpBasic(basic -> { })
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .build();
+    }
+
     @Bean
     SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         logger.debug("Configuring SecurityFilterChain");
@@ -46,5 +80,29 @@ public class SecurityConfig {
         }
     }
 
+    /**
+     * Authenticates the introspection clients, given as {@code client-id:secret} entries where the secret carries
+     * its encoding prefix ({@code {bcrypt}...}, {@code {noop}...}).
+     */
+    static AuthenticationManager introspectionClients(List<String> clients) {
+        List<UserDetails> users = new ArrayList<>();
+        for (String client : clients) {
+            int separator = client.indexOf(':');
+            if (separator <= 0 || separator == client.length() - 1) {
+                throw new IllegalArgumentException("auth.introspection.clients entries must be client-id:secret");
+            }
+            users.add(User.withUsername(client.substring(0, separator).trim())
+                    .password(client.substring(separator + 1).trim())
+                    .roles(INTROSPECTION_CLIENT_ROLE)
+                    .build());
+        }
+        if (users.isEmpty()) {
+            logger.warn("No auth.introspection.clients configured, introspection requests will be refused");
+        }
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(
+                PasswordEncoderFactories.createDelegatingPasswordEncoder());
+        provider.setUserDetailsService(new InMemoryUserDetailsManager(users));
+        return new ProviderManager(provider);
+    }
 
 }
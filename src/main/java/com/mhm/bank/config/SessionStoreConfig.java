@@ -0,0 +1,32 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.service.session.InMemorySessionStore;
+import com.mhm.bank.service.session.MappedFileSessionStore;
+import com.mhm.bank.service.session.SessionStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class SessionStoreConfig {
+
+    /**
+     * Backend of the refresh-token vault: {@code memory} (default) keeps sessions on the heap, {@code mapped-file}
+     * keeps them off-heap in {@code session.vault.file.path}, in buckets of {@code session.vault.file.ways} slots.
+     */
+    @Bean
+    public SessionStore sessionStore(@Value("${session.vault.store:memory}") String store,
+                                     @Value("${session.vault.max-sessions:100000}") int maxSessions,
+                                     @Value("${session.vault.file.path:sessions.bin}") String filePath,
+                                     @Value("${session.vault.file.slots:16384}") int slots,
+                                     @Value("${session.vault.file.slot-bytes:8192}") int slotBytes,
+                                     @Value("${session.vault.file.ways:8}") int ways) {
+        if ("mapped-file".equals(store)) {
+            return new MappedFileSessionStore(Path.of(filePath), slots, slotBytes, ways);
+        }
+        return new InMemorySessionStore(maxSessions);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.service.external.KafkaProducerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connects the Keycloak and Kafka clients, which are created lazily so that they don't slow down the context
+ * refresh, before the application reports itself ready: runners complete before Spring Boot publishes
+ * {@code ReadinessState.ACCEPTING_TRAFFIC}, so the first requests routed to a new instance don't pay for client
+ * initialization, connection setup and metadata lookups. The steps run in parallel and are bounded by
+ * {@code startup.warmup.timeout-ms}; a dependency that is down is logged and left to the resilience of the
+ * request path rather than keeping the instance out of service. With {@code startup.warmup.jit.enabled} the
+ * steps of {@link JitWarmup} also run, so that the request paths are compiled before the first requests.
+ *
+ * <p>Enabled with {@code startup.warmup.enabled}, checked at runtime rather than with a condition, so that it
+ * can still be switched in an AOT-processed build.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final Map<String, Runnable> steps = new LinkedHashMap<>();
+
+    public StartupWarmup(@Value("${startup.warmup.enabled:false}") boolean enabled,
+                         @Value("${startup.warmup.timeout-ms:15000}") long timeoutMs,
+                         KeycloakProvider keycloakProvider, TokenProvider tokenProvider, JwksCache jwksCache,
+                         KafkaProducerService kafkaProducerService, JitWarmup jitWarmup) {
+        this.enabled = enabled;
+        this.timeoutMs = timeoutMs;
+        steps.put("keycloak admin client", keycloakProvider::warmUp);
+        steps.put("keycloak token endpoint", () -> {
+            try {
+                tokenProvider.getAccessToken();
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        });
+        steps.put("keycloak signing keys", () -> {
+            if (!jwksCache.preload()) {
+                throw new IllegalStateException("signing keys could not be loaded");
+            }
+        });
+        steps.put("kafka producer", kafkaProducerService::warmUp);
+        steps.putAll(jitWarmup.steps());
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(steps.size(), runnable -> {
+            Thread thread = new Thread(runnable, "startup-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<String, CompletableFuture<Long>> running = new LinkedHashMap<>();
+            steps.forEach((name, step) -> running.put(name, CompletableFuture.supplyAsync(() -> {
+                long stepStart = System.nanoTime();
+                step.run();
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stepStart);
+            }, executor)));
+
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            running.forEach((name, step) -> await(name, step, deadline));
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("Warm-up finished in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void await(String name, CompletableFuture<Long> step, long deadline) {
+        try {
+            long tookMs = step.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            logger.info("Warmed up {} in {} ms", name, tookMs);
+        } catch (TimeoutException e) {
+            logger.warn("Warm-up of {} did not finish within {} ms, continuing without it", name, timeoutMs);
+        } catch (ExecutionException e) {
+            logger.warn("Warm-up of {} failed, continuing without it: {}", name, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
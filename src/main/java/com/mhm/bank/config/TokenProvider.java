@@ -2,19 +2,19 @@ package com.mhm.bank.config;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.mhm.bank.controller.dto.TokensUser;
 import com.mhm.bank.exception.KeycloakException;
 import com.mhm.bank.service.dto.TokenResponse;
 import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
-import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
@@ -23,8 +23,14 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
-import java.net.URL;
-import java.security.interfaces.RSAPublicKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class TokenProvider {
@@ -32,9 +38,10 @@ public class TokenProvider {
 
     private static final String REFRESH_TOKEN_GRANT = "refresh_token";
     private static final String PASSWORD_GRANT = "password";
+    private static final int MAX_REFRESH_FLIGHTS = 100_000;
+    private static final String KEYCLOAK = "keycloak";
+    private static final String ACCESS_TOKEN_TYPE = "Bearer";
 
-    @Value("${keycloak.server.url}")
-    private String serverUrl;
     @Value("${keycloak.realm_name}")
     private String realm;
     @Value("${jwt.auth.converter.resource-id}")
@@ -45,68 +52,121 @@ public class TokenProvider {
     private String adminAppName;
     @Value("${keycloak.user.admin.app.password}")
     private String adminAppPassword;
-    @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}")
-    private String jwksUrl;
     @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
     private String issuer;
+    @Value("${keycloak.token.refresh.grace-ms:5000}")
+    private long refreshGraceMs;
+
+    private final RestTemplate restTemplate;
+    private final TokenRequestHedger tokenRequestHedger;
+    private final KeycloakEndpointPool endpointPool;
+    private final JwksCache jwksCache;
+    private final DependencyTimer dependencyTimer;
+    /**
+     * Refresh requests by SHA-256 of the refresh token, kept while the Keycloak call may still be running and for
+     * {@code refreshGraceMs} after it succeeds.
+     */
+    private final Cache<String, CompletableFuture<TokensUser>> refreshFlights;
+
+    public TokenProvider(RestTemplateBuilder restTemplateBuilder, KeycloakEndpointPool endpointPool,
+                         TokenRequestHedger tokenRequestHedger, JwksCache jwksCache, DependencyTimer dependencyTimer,
+                         @Value("${keycloak.client.connect-timeout-ms:2000}") long connectTimeoutMs,
+                         @Value("${keycloak.client.read-timeout-ms:5000}") long readTimeoutMs) {
+        this.restTemplate = restTemplateBuilder
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .readTimeout(Duration.ofMillis(readTimeoutMs))
+                .build();
+        this.endpointPool = endpointPool;
+        this.tokenRequestHedger = tokenRequestHedger;
+        this.jwksCache = jwksCache;
+        this.dependencyTimer = dependencyTimer;
+        long inFlightNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeoutMs + readTimeoutMs);
+        this.refreshFlights = Caffeine.newBuilder()
+                .maximumSize(MAX_REFRESH_FLIGHTS)
+                .expireAfter(new Expiry<String, CompletableFuture<TokensUser>>() {
+                    @Override
+                    public long expireAfterCreate(String key, CompletableFuture<TokensUser> flight, long currentTime) {
+                        return inFlightNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CompletableFuture<TokensUser> flight, long currentTime,
+                                                  long currentDuration) {
+                        // rewritten once the call succeeded, the grace window starts then
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, refreshGraceMs));
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CompletableFuture<TokensUser> flight, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
 
-    private String getTokenUrlFromKeycloak (){
-        String tokenUrl = serverUrl + "/realms/" + realm + "/protocol/openid-connect/token";
+    private String getTokenUrlFromKeycloak (String baseUrl){
+        String tokenUrl = baseUrl + "/realms/" + realm + "/protocol/openid-connect/token";
         logger.debug("Generated Keycloak token URL: {}", tokenUrl);
         return tokenUrl;
     }
 
-    private MultiValueMap<String, String> createTokenRequestMap(String grantType, String username, String password) {
+    private MultiValueMap<String, String> createClientRequestMap(String grantType) {
         logger.debug("Creating token request map with grant type: {}", grantType);
         MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
         map.add("grant_type", grantType);
         map.add("client_id", clientId);
         map.add("client_secret", clientSecret);
+        return map;
+    }
 
-        if (grantType.equals(PASSWORD_GRANT)) {
-            logger.debug("Adding password grant parameters for user: {}", username);
-            map.add("username", username);
-            map.add(PASSWORD_GRANT, password);
-            map.add("scope", "openid");
-        } else if (grantType.equals(REFRESH_TOKEN_GRANT)) {
-            logger.debug("Adding refresh token parameters");
-            map.add(REFRESH_TOKEN_GRANT, password);
-        }
-
+    private MultiValueMap<String, String> createPasswordGrantRequest(String username, String password) {
+        MultiValueMap<String, String> map = createClientRequestMap(PASSWORD_GRANT);
+        logger.debug("Adding password grant parameters for user: {}", username);
+        map.add("username", username);
+        map.add(PASSWORD_GRANT, password);
+        map.add("scope", "openid");
         return map;
     }
 
-    private TokenResponse getTokenFromKeycloak (String username, String password) throws KeycloakException {
-        logger.info("Requesting token from Keycloak for user: {}", username);
-        RestTemplate restTemplate = new RestTemplate();
-        String tokenUrl = getTokenUrlFromKeycloak();
+    private MultiValueMap<String, String> createRefreshTokenGrantRequest(String refreshToken) {
+        MultiValueMap<String, String> map = createClientRequestMap(REFRESH_TOKEN_GRANT);
+        logger.debug("Adding refresh token parameters");
+        map.add(REFRESH_TOKEN_GRANT, refreshToken);
+        return map;
+    }
 
+    private ResponseEntity<TokenResponse> requestToken(String baseUrl, MultiValueMap<String, String> form) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(form, headers);
+
+        return endpointPool.execute(baseUrl, () -> restTemplate.exchange(
+                getTokenUrlFromKeycloak(baseUrl),
+                HttpMethod.POST,
+                request,
+                TokenResponse.class
+        ));
+    }
 
-        MultiValueMap<String, String> map = createTokenRequestMap(PASSWORD_GRANT, username, password);
-
-
-
-        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
-
-        ResponseEntity<TokenResponse> response = null;
+    /**
+     * Requests tokens with the password grant. Only the admin app's own grant may be hedged: a user's wrong
+     * password sent twice would count twice towards Keycloak's brute-force detection and lock the account early.
+     */
+    private TokenResponse getTokenFromKeycloak (String username, String password, boolean hedged) throws KeycloakException {
+        logger.debug("Requesting token from Keycloak for user: {}", username);
         try {
-            response = restTemplate.exchange(
-                    tokenUrl,
-                    HttpMethod.POST,
-                    request,
-                    TokenResponse.class
-            );
-            logger.info("Successfully obtained token for user: {}", username);
+            MultiValueMap<String, String> form = createPasswordGrantRequest(username, password);
+            ResponseEntity<TokenResponse> response = hedged
+                    ? tokenRequestHedger.execute(endpointPool.choose(), node -> requestToken(node, form))
+                    : requestToken(endpointPool.choose(), form);
+            logger.debug("Successfully obtained token for user: {}", username);
             return response.getBody();
         } catch (org.springframework.web.client.HttpClientErrorException e) {
             logger.error("Failed to obtain token for user: {}. Status: {}", username, e.getStatusCode());
             handleKeycloakError(e);
             return null;
         }
-
-
     }
 
     private void handleKeycloakError(HttpClientErrorException e) throws KeycloakException {
@@ -132,22 +192,24 @@ public class TokenProvider {
 
     public String getAccessToken() throws KeycloakException {
         logger.debug("Requesting admin app access token");
-        TokenResponse body =getTokenFromKeycloak(adminAppName, adminAppPassword);
+        TokenResponse body = dependencyTimer.record(KEYCLOAK, "token.admin",
+                () -> getTokenFromKeycloak(adminAppName, adminAppPassword, true));
         if (body == null) {
             logger.error("No token response received from Keycloak");
             throw new KeycloakException("No token response body received from Keycloak");
         }
-        logger.info("Successfully obtained admin app access token");
+        logger.debug("Successfully obtained admin app access token");
         return body.getAccessToken();
     }
 
     public TokensUser getUserAccessToken(String username, String password) throws KeycloakException {
         logger.debug("Requesting user access token for: {}", username);
-        TokenResponse body = getTokenFromKeycloak(username, password);
+        TokenResponse body = dependencyTimer.record(KEYCLOAK, "token.password",
+                () -> getTokenFromKeycloak(username, password, false));
         TokensUser tokensUser = new TokensUser();
 
         if (body != null) {
-            logger.info("Successfully obtained tokens for user: {}", username);
+            logger.debug("Successfully obtained tokens for user: {}", username);
             tokensUser.setAccessToken(body.getAccessToken());
             tokensUser.setRefreshToken(body.getRefreshToken());
             tokensUser.setExpiresIn(body.getExpiresIn());
@@ -166,88 +228,156 @@ public class TokenProvider {
             logger.error("Failed to obtain admin app authentication token");
             throw new KeycloakException("Failed to obtain Keycloak token");
         }
-        logger.info("Successfully obtained admin app authentication token");
+        logger.debug("Successfully obtained admin app authentication token");
         return token;
     }
 
     public boolean validateToken(String token) {
         logger.debug("Validating token");
-        try {
-            SignedJWT signedJWT = SignedJWT.parse(token);
-
-            JWKSet publicKeys = JWKSet.load(new URL(jwksUrl));
-
-            String kid = signedJWT.getHeader().getKeyID();
-            JWK jwk = publicKeys.getKeyByKeyId(kid);
+        boolean isValid = verifyToken(token) != null;
+        logger.debug("Token validation result: {}", isValid);
+        return isValid;
+    }
 
-            if (jwk == null) {
-                logger.info("Public key not found for kid: {}", kid);
-                return false;
-            }
+    /**
+     * Verifies the token's signature against the cached Keycloak keys, its issuer and its expiry, that it is an
+     * access token ({@code typ} {@code Bearer}) and that it was issued to this client ({@code azp}) or for it
+     * ({@code aud}), and returns its claims, or null if the token is not valid. No call to Keycloak is made unless its keys need reloading.
+     * Malformed, foreign and expired tokens are rejected by {@link FastJwtReader} before the signature check and
+     * the full parse.
+     */
+    public JWTClaimsSet verifyToken(String token) {
+        FastJwtReader.Claims fastClaims = FastJwtReader.read(token);
+        if (fastClaims == null) {
+            logger.debug("Token is not a well-formed JWT");
+            return null;
+        }
+        if (!issuer.equals(fastClaims.issuer())) {
+            logger.warn("Token issuer verification failed");
+            return null;
+        }
+        if (fastClaims.expiresAtSeconds() * 1000 < System.currentTimeMillis()) {
+            logger.debug("Token has expired");
+            return null;
+        }
 
-            RSAKey rsaKey = (RSAKey) jwk;
-            RSAPublicKey publicKey = rsaKey.toRSAPublicKey();
+        JWSVerifier verifier = jwksCache.getVerifier(fastClaims.kid());
+        if (verifier == null) {
+            logger.info("Public key not found for kid: {}", fastClaims.kid());
+            return null;
+        }
 
-            JWSVerifier verifier = new RSASSAVerifier(publicKey);
-            boolean signatureValid = signedJWT.verify(verifier);
+        try {
+            SignedJWT signedJWT = SignedJWT.parse(token);
 
-            if (!signatureValid) {
+            if (!signedJWT.verify(verifier)) {
                 logger.warn("Token signature verification failed");
-                return false;
+                return null;
             }
 
+            // Checked again on the verified claims, the fast reader may see a different value for duplicated keys
             JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
 
-            if (!claims.getIssuer().equals(issuer)) {
+            if (!issuer.equals(claims.getIssuer())) {
                 logger.warn("Token issuer verification failed");
-                return false;
+                return null;
             }
 
-            boolean isValid = !(claims.getExpirationTime() == null ||
-                    claims.getExpirationTime().before(new java.util.Date()));
-            logger.info("Token validation result: {}", isValid);
-            return isValid;
+            if (claims.getExpirationTime() == null || claims.getExpirationTime().before(new java.util.Date())) {
+                logger.debug("Token has expired");
+                return null;
+            }
+
+            // ID and refresh tokens are signed by the same realm keys, only access tokens are accepted
+            if (!ACCESS_TOKEN_TYPE.equals(claims.getStringClaim("typ"))) {
+                logger.warn("Token is not an access token");
+                return null;
+            }
+
+            if (!clientId.equals(claims.getStringClaim("azp"))
+                    && (claims.getAudience() == null || !claims.getAudience().contains(clientId))) {
+                logger.warn("Token was not issued to or for this client");
+                return null;
+            }
+            return claims;
 
         } catch (Exception e) {
-            logger.error("Error validating token: ",e);
-            return false;
+            logger.error("Error validating token: {}", e.getMessage());
+            return null;
         }
     }
 
+    /**
+     * Exchanges the refresh token for new tokens. Concurrent calls with the same refresh token (e.g. several
+     * browser tabs) share one Keycloak request, and its result is reused for a short grace window so that late
+     * callers don't present a token Keycloak has already rotated.
+     */
     public TokensUser getNewToken (String refreshToken){
-        logger.debug("Requesting new token using refresh token");
-        RestTemplate restTemplate = new RestTemplate();
-        String tokenUrl = getTokenUrlFromKeycloak();
+        String flightKey = flightKey(refreshToken);
+        CompletableFuture<TokensUser> ownFlight = new CompletableFuture<>();
+        CompletableFuture<TokensUser> flight = refreshFlights.asMap().putIfAbsent(flightKey, ownFlight);
+        if (flight != null) {
+            logger.debug("Joining in-flight refresh for the same refresh token");
+            try {
+                return flight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        TokensUser tokensUser;
+        try {
+            tokensUser = dependencyTimer.record(KEYCLOAK, "token.refresh", () -> requestNewToken(refreshToken));
+        } catch (RuntimeException | Error e) {
+            refreshFlights.asMap().remove(flightKey, ownFlight);
+            ownFlight.completeExceptionally(e);
+            throw e;
+        }
+        if (tokensUser != null) {
+            refreshFlights.asMap().replace(flightKey, ownFlight, ownFlight);
+        } else {
+            // Failures are not shared beyond the callers already waiting, so the next attempt goes to Keycloak
+            refreshFlights.asMap().remove(flightKey, ownFlight);
+        }
+        ownFlight.complete(tokensUser);
+        return tokensUser;
+    }
 
-        MultiValueMap<String, String> map = createTokenRequestMap(REFRESH_TOKEN_GRANT, null, refreshToken);
-        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
+    /**
+     * The refresh token is a bearer credential, so only its hash is held in memory between requests.
+     */
+    private static String flightKey(String refreshToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(refreshToken.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 
+    private TokensUser requestNewToken(String refreshToken) {
+        logger.debug("Requesting new token using refresh token");
         try {
-            ResponseEntity<TokenResponse> response = restTemplate.exchange(
-                    tokenUrl,
-                    HttpMethod.POST,
-                    request,
-                    TokenResponse.class
-            );
-
-            TokenResponse body = response.getBody();
+            // Not hedged: with refresh-token rotation the second grant of the same token would be rejected
+            TokenResponse body = requestToken(endpointPool.choose(), createRefreshTokenGrantRequest(refreshToken)).getBody();
             if (body != null) {
-                logger.info("Successfully refreshed token");
+                logger.debug("Successfully refreshed token");
                 TokensUser tokensUser = new TokensUser();
                 tokensUser.setAccessToken(body.getAccessToken());
                 tokensUser.setRefreshToken(body.getRefreshToken());
+                tokensUser.setExpiresIn(body.getExpiresIn());
                 return tokensUser;
             }
             logger.warn("No response body received when refreshing token");
             return null;
-        } catch (Exception e) {
-            logger.error("Error refreshing token: ", e);
+        } catch (HttpClientErrorException e) {
+            logger.warn("Keycloak rejected the refresh token. Status: {}", e.getStatusCode());
             return null;
         }
     }
 
-
 }
@@ -0,0 +1,216 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.service.external.keycloak.KeycloakResilience;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Optionally hedges token requests: when Keycloak has not answered within the configured percentile of recent
+ * response times, the same request is sent to another node and the first answer wins. The number of hedges is
+ * capped by a token bucket refilled by a fraction of every request, so a slow Keycloak can't double our load.
+ * Only the admin app's token requests are hedged, never a user's login or refresh (see {@link TokenProvider});
+ * a hedged grant may leave an unused session behind in Keycloak, it expires like any idle session.
+ */
+@Component
+public class TokenRequestHedger {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRequestHedger.class);
+
+    static final String HEDGES = "auth.keycloak.token.hedges";
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int RECOMPUTE_EVERY = 16;
+    private static final long BUDGET_SCALE = 1000;
+
+    private final boolean enabled;
+    private final KeycloakEndpointPool endpointPool;
+    private final double percentile;
+    private final long minDelayMs;
+    private final long budgetPerRequest;
+    private final long maxBudget;
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+    private final AtomicLong recordedLatencies = new AtomicLong();
+    private final AtomicLong budget;
+    private volatile long hedgeDelayMs;
+    private final ThreadPoolExecutor executor;
+    /** Runs requests with the caller's observation current, so their HTTP spans stay in the caller's trace. */
+    private final ExecutorService tracedExecutor;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter hedgesSkipped;
+
+    public TokenRequestHedger(@Value("${keycloak.token.hedging.enabled:false}") boolean enabled,
+                              KeycloakEndpointPool endpointPool,
+                              @Value("${keycloak.token.hedging.percentile:0.95}") double percentile,
+                              @Value("${keycloak.token.hedging.min-delay-ms:20}") long minDelayMs,
+                              @Value("${keycloak.token.hedging.budget-ratio:0.05}") double budgetRatio,
+                              @Value("${keycloak.token.hedging.max-burst:10}") int maxBurst,
+                              @Value("${keycloak.token.hedging.max-threads:64}") int maxThreads,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.endpointPool = endpointPool;
+        this.percentile = percentile;
+        this.minDelayMs = minDelayMs;
+        this.hedgeDelayMs = minDelayMs;
+        this.budgetPerRequest = Math.round(budgetRatio * BUDGET_SCALE);
+        this.maxBudget = maxBurst * BUDGET_SCALE;
+        this.budget = new AtomicLong(maxBudget);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, Math.max(2, maxThreads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "keycloak-token-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.tracedExecutor = ContextExecutorService.wrap(executor, ContextSnapshotFactory.builder().build());
+        this.hedgesSent = meterRegistry.counter(HEDGES, "outcome", "sent");
+        this.hedgesWon = meterRegistry.counter(HEDGES, "outcome", "won");
+        this.hedgesSkipped = meterRegistry.counter(HEDGES, "outcome", "budget_exhausted");
+    }
+
+    /**
+     * Runs the request against the primary URL, hedging it to another node if it is slow. Errors that Keycloak
+     * answered with (e.g. 401) win like any other answer; a connection failure or timeout of one request waits
+     * for the other one.
+     */
+    public <T> T execute(String primaryUrl, Function<String, T> request) {
+        if (!enabled) {
+            return request.apply(primaryUrl);
+        }
+        refillBudget();
+
+        CompletableFuture<T> primary = CompletableFuture.supplyAsync(() -> timed(request, primaryUrl), tracedExecutor);
+        try {
+            return primary.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (!tryAcquireBudget()) {
+                hedgesSkipped.increment();
+                return join(primary);
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for Keycloak", e);
+        }
+
+        String hedgeUrl = endpointPool.chooseOther(primaryUrl);
+        logger.debug("Token request to {} is slower than {} ms, hedging to {}", primaryUrl, hedgeDelayMs, hedgeUrl);
+        hedgesSent.increment();
+        CompletableFuture<T> hedge = CompletableFuture.supplyAsync(() -> timed(request, hedgeUrl), tracedExecutor);
+
+        CompletableFuture<T> firstAnswer = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        primary.whenComplete((result, error) -> complete(firstAnswer, pending, result, error, false));
+        hedge.whenComplete((result, error) -> complete(firstAnswer, pending, result, error, true));
+        return join(firstAnswer);
+    }
+
+    private <T> void complete(CompletableFuture<T> firstAnswer, AtomicInteger pending, T result, Throwable error,
+                              boolean isHedge) {
+        int remaining = pending.decrementAndGet();
+        if (error == null || !KeycloakResilience.isKeycloakFailure(error) || remaining == 0) {
+            synchronized (firstAnswer) {
+                if (firstAnswer.isDone()) {
+                    return;
+                }
+                if (isHedge) {
+                    hedgesWon.increment();
+                }
+                if (error == null) {
+                    firstAnswer.complete(result);
+                } else {
+                    firstAnswer.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    private <T> T timed(Function<String, T> request, String url) {
+        long start = System.nanoTime();
+        T result = request.apply(url);
+        recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    void recordLatency(long latencyMs) {
+        long count = recordedLatencies.getAndIncrement();
+        latencies.set((int) (count % LATENCY_SAMPLES), latencyMs);
+        if ((count + 1) % RECOMPUTE_EVERY == 0) {
+            int samples = (int) Math.min(count + 1, LATENCY_SAMPLES);
+            long[] sorted = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.min(samples - 1, Math.ceil(percentile * samples) - 1);
+            hedgeDelayMs = Math.max(minDelayMs, sorted[Math.max(0, index)]);
+        }
+    }
+
+    long getHedgeDelayMs() {
+        return hedgeDelayMs;
+    }
+
+    private void refillBudget() {
+        budget.getAndUpdate(current -> Math.min(maxBudget, current + budgetPerRequest));
+    }
+
+    private boolean tryAcquireBudget() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < BUDGET_SCALE) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - BUDGET_SCALE));
+        return true;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (error instanceof Error e) {
+            throw e;
+        }
+        return new IllegalStateException(error);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
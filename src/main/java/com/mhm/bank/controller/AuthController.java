@@ -1,15 +1,20 @@
 package com.mhm.bank.controller;
 
 import com.mhm.bank.controller.dto.*;
+import com.mhm.bank.exception.IdempotencyKeyReusedException;
 import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.RegistrationInProgressException;
 import com.mhm.bank.exception.UserAlreadyExistsException;
 import com.mhm.bank.service.AuthService;
+import com.mhm.bank.service.RegistrationFingerprint;
+import com.mhm.bank.service.TokenIntrospectionService;
 import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import com.mhm.bank.service.session.RefreshTokenVault;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
@@ -20,52 +25,93 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.KafkaException;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
 @RestController
 @RequestMapping("/api/auth")
 
 @Tag(name = "Authentication and Authorization API", description = "REST API related with user management")
 public class AuthController {
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
-    @Value("${server.at.maximun.expiration.time-sec}")
-    private int cookieMaxExpirationTimeSeconds;
-    @Value("${cookie.secure}")
-    private boolean cookieSecure;
     private final AuthService authService;
     private final IKeycloakService keycloakService;
-    private static final String NAME_TOKEN_IN_COOKIE = "accessToken";
-    private static final String NAME_REFRESH_TOKEN_IN_COOKIE = "refreshToken";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    // the key becomes registration_sagas.id, a VARCHAR(64)
+    private static final Pattern IDEMPOTENCY_KEY = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private final IdempotencyStore idempotencyStore;
+    private final TokenIntrospectionService tokenIntrospectionService;
+    private final TokenCookieWriter tokenCookieWriter;
+    private final RefreshTokenVault refreshTokenVault;
+    @Value("${auth.introspection.max-batch-size:100}")
+    private int maxIntrospectionBatchSize;
 
-    public AuthController(AuthService authService, IKeycloakService keycloakService) {
+    public AuthController(AuthService authService, IKeycloakService keycloakService, IdempotencyStore idempotencyStore,
+                          TokenIntrospectionService tokenIntrospectionService, TokenCookieWriter tokenCookieWriter,
+                          RefreshTokenVault refreshTokenVault) {
         this.authService = authService;
         this.keycloakService = keycloakService;
-    }
-
-    private void putInCookie (String nameCookie, String accessToken, HttpServletResponse response) {
-        logger.debug("Setting cookie: {}", nameCookie);
-        Cookie cookie = new Cookie(nameCookie, accessToken);
-        cookie.setHttpOnly(true);
-        cookie.setSecure(cookieSecure);
-        cookie.setPath("/");
-        cookie.setMaxAge(cookieMaxExpirationTimeSeconds);
-
-        response.addCookie(cookie);
-        logger.debug("Cookie {} set successfully", nameCookie);
+        this.idempotencyStore = idempotencyStore;
+        this.tokenIntrospectionService = tokenIntrospectionService;
+        this.tokenCookieWriter = tokenCookieWriter;
+        this.refreshTokenVault = refreshTokenVault;
     }
 
     @PostMapping("/register")
     @Operation(summary = "Register a new user")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "User registered successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid input data"),
-            @ApiResponse(responseCode = "409", description = "User already exists (ID, username or email)"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data or Idempotency-Key (1 to 64 letters, digits, '_' or '-')"),
+            @ApiResponse(responseCode = "409", description = "User already exists (ID, username or email) or registration in progress"),
+            @ApiResponse(responseCode = "422", description = "Idempotency key already used for a different request"),
             @ApiResponse(responseCode = "500", description = "Internal server error (Keycloak or Kafka errors)")
     })
-    public ResponseEntity<String> registerUser(@Valid @RequestBody UserInformation userInformation)
+    public ResponseEntity<String> registerUser(@Valid @RequestBody UserInformation userInformation,
+                                               @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
+            throws UserAlreadyExistsException, KeycloakException, KafkaException {
+        logger.debug("Received registration request for user: {}", userInformation.username());
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return register(userInformation, null);
+        }
+        if (!IDEMPOTENCY_KEY.matcher(idempotencyKey).matches()) {
+            logger.debug("Rejected registration with malformed idempotency key");
+            return ResponseEntity.badRequest()
+                    .body(IDEMPOTENCY_KEY_HEADER + " must be 1 to 64 letters, digits, '_' or '-'");
+        }
+
+        CompletableFuture<ResponseEntity<String>> outcome = new CompletableFuture<>();
+        String fingerprint = RegistrationFingerprint.of(userInformation);
+        IdempotencyStore.Entry previous = idempotencyStore.putIfAbsent(idempotencyKey, fingerprint, outcome);
+        if (previous != null) {
+            if (!previous.fingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyReusedException("Idempotency key " + idempotencyKey + " was used for a different request");
+            }
+            logger.info("Replaying registration outcome for idempotency key {}", idempotencyKey);
+            return replay(idempotencyKey, previous.outcome());
+        }
+
+        try {
+            ResponseEntity<String> response = register(userInformation, idempotencyKey);
+            outcome.complete(response);
+            return response;
+        } catch (UserAlreadyExistsException e) {
+            outcome.completeExceptionally(e);
+            throw e;
+        } catch (Throwable e) {
+            // Transient failures (Keycloak, database, Kafka) are not remembered so that the client can retry
+            idempotencyStore.remove(idempotencyKey, outcome);
+            outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private ResponseEntity<String> register(UserInformation userInformation, String idempotencyKey)
             throws UserAlreadyExistsException, KeycloakException, KafkaException {
-        logger.info("Received registration request for user: {}", userInformation.username());
         try {
-            String result = authService.registerUser(userInformation);
-            logger.info("Successfully registered user: {}", userInformation.username());
+            String result = authService.registerUser(userInformation, idempotencyKey);
+            logger.debug("Successfully registered user: {}", userInformation.username());
             return ResponseEntity.status(HttpStatus.CREATED).body(result);
         } catch (Exception e) {
             logger.error("Failed to register user: {}. Error: {}", userInformation.username(), e.getMessage());
@@ -73,27 +119,58 @@ public class AuthController {
         }
     }
 
+    private ResponseEntity<String> replay(String idempotencyKey, CompletableFuture<ResponseEntity<String>> outcome)
+            throws UserAlreadyExistsException, KeycloakException {
+        if (!outcome.isDone()) {
+            // The request holding the key may be stuck on a dependency; don't tie up another thread waiting for it
+            throw new RegistrationInProgressException("Registration with idempotency key " + idempotencyKey
+                    + " is still in progress");
+        }
+        try {
+            return outcome.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UserAlreadyExistsException userAlreadyExistsException) {
+                throw userAlreadyExistsException;
+            }
+            if (cause instanceof KeycloakException keycloakException) {
+                throw keycloakException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
     @PostMapping("/login")
     @Operation(summary = "Login a user")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Login successful, tokens set in cookies"),
             @ApiResponse(responseCode = "400", description = "Invalid login request format"),
             @ApiResponse(responseCode = "401", description = "Invalid credentials"),
+            @ApiResponse(responseCode = "429", description = "Too many login attempts for the user or from the client"),
             @ApiResponse(responseCode = "500", description = "Internal server error (Keycloak errors)")
     })
-    public ResponseEntity<Void> loginUser (@Valid @RequestBody LoginRequest loginRequest, HttpServletResponse response) throws KeycloakException {
-        logger.info("Received login request for user: {}", loginRequest.username());
+    public ResponseEntity<Void> loginUser (@Valid @RequestBody LoginRequest loginRequest, HttpServletRequest request,
+                                           HttpServletResponse response) throws KeycloakException {
+        logger.debug("Received login request for user: {}", loginRequest.username());
         try {
-            TokensUser tokensUser = authService.loginUser(loginRequest);
+            TokensUser tokensUser = authService.loginUser(loginRequest, request.getRemoteAddr());
 
             if (tokensUser == null)  {
                 logger.warn("Login failed for user: {}", loginRequest.username());
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
             }
 
-            putInCookie(NAME_TOKEN_IN_COOKIE, tokensUser.getAccessToken(), response);
-            putInCookie(NAME_REFRESH_TOKEN_IN_COOKIE, tokensUser.getRefreshToken(), response);
-            logger.info("Login successful for user: {}", loginRequest.username());
+            tokenCookieWriter.writeAccessToken(response, tokensUser.getAccessToken(), tokensUser.getExpiresIn());
+            String sessionId = refreshTokenVault.isEnabled() ? refreshTokenVault.open(tokensUser) : null;
+            if (sessionId != null) {
+                tokenCookieWriter.writeSessionId(response, sessionId);
+            } else {
+                tokenCookieWriter.writeRefreshToken(response, tokensUser.getRefreshToken());
+            }
+            logger.debug("Login successful for user: {}", loginRequest.username());
             return ResponseEntity.status(HttpStatus.OK).build();
         } catch (Exception e) {
             logger.error("Login error for user: {}. Error: {}", loginRequest.username(), e.getMessage());
@@ -110,11 +187,11 @@ public class AuthController {
             @ApiResponse(responseCode = "404", description = "User not found")
     })
     public ResponseEntity<UserData> getUserInformation(String username){
-        logger.info("Retrieving user information for: {}", username);
+        logger.debug("Retrieving user information for: {}", username);
         try {
             UserData userInfo = authService.getUserInformation(username);
             if (userInfo != null) {
-                logger.info("Successfully retrieved information for user: {}", username);
+                logger.debug("Successfully retrieved information for user: {}", username);
                 return ResponseEntity.ok(userInfo);
             }
             logger.warn("User not found: {}", username);
@@ -126,18 +203,42 @@ public class AuthController {
 
     }
 
+    @GetMapping("/availability")
+    @Operation(summary = "Check whether a username and/or email can still be used to register")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Availability of the requested values"),
+            @ApiResponse(responseCode = "400", description = "Neither username nor email was given"),
+            @ApiResponse(responseCode = "429", description = "Too many checks from this client, retry after the Retry-After header")
+    })
+    public ResponseEntity<AvailabilityResponse> checkAvailability(@RequestParam(required = false) String username,
+                                                                  @RequestParam(required = false) String email,
+                                                                  HttpServletRequest request) {
+        if (username == null && email == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(authService.checkAvailability(username, email, request.getRemoteAddr()));
+    }
+
     @PostMapping("/refresh")
     @Operation(summary = "Use the refresh token when the token has expired")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Token refreshed successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid token format"),
-            @ApiResponse(responseCode = "401", description = "Invalid or expired refresh token"),
+            @ApiResponse(responseCode = "400", description = "Invalid token format or neither tokens nor a session were given"),
+            @ApiResponse(responseCode = "401", description = "Invalid or expired refresh token or session"),
             @ApiResponse(responseCode = "500", description = "Internal server error (Keycloak errors)")
     })
-    public ResponseEntity<Void> refreshTokenResponse(@RequestBody TokenRefreshRequest tokenRequest,
+    public ResponseEntity<Void> refreshTokenResponse(@RequestBody(required = false) TokenRefreshRequest tokenRequest,
+                                                     @CookieValue(name = TokenCookieWriter.SESSION_COOKIE, required = false) String sessionId,
+                                                     HttpServletRequest request,
                                                      HttpServletResponse response) throws KeycloakException {
-        logger.info("Received token refresh request");
+        logger.debug("Received token refresh request");
         try {
+            if (sessionId != null && refreshTokenVault.isEnabled()) {
+                return refreshSession(sessionId, request.getRemoteAddr(), response);
+            }
+            if (tokenRequest == null) {
+                return ResponseEntity.badRequest().build();
+            }
             String accessToken = tokenRequest.accessToken();
             String refreshToken = tokenRequest.refreshToken();
 
@@ -146,14 +247,14 @@ public class AuthController {
                 return null;
             }
 
-            TokensUser newTokens = authService.refreshToken(refreshToken);
+            TokensUser newTokens = authService.refreshToken(refreshToken, request.getRemoteAddr());
             if (newTokens == null) {
                 logger.warn("Token refresh failed - invalid refresh token");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
             }
 
-            putInCookie(NAME_TOKEN_IN_COOKIE, newTokens.getAccessToken(), response);
-            logger.info("Token refresh successful");
+            tokenCookieWriter.writeAccessToken(response, newTokens.getAccessToken(), newTokens.getExpiresIn());
+            logger.debug("Token refresh successful");
             return ResponseEntity.ok().build();
 
         } catch (Exception e) {
@@ -162,4 +263,47 @@ public class AuthController {
         }
     }
 
+    private ResponseEntity<Void> refreshSession(String sessionId, String clientIp, HttpServletResponse response) {
+        TokensUser tokens = refreshTokenVault.refresh(sessionId, clientIp);
+        if (tokens == null) {
+            logger.warn("Token refresh failed - unknown or expired session");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        tokenCookieWriter.writeAccessToken(response, tokens.getAccessToken(), tokens.getExpiresIn());
+        tokenCookieWriter.writeSessionId(response, sessionId);
+        logger.debug("Session token refresh successful");
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/introspect")
+    @Operation(summary = "Validate an access token and return its subject, realm roles and expiry")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Token introspected; inactive tokens only carry active=false"),
+            @ApiResponse(responseCode = "400", description = "No token was given"),
+            @ApiResponse(responseCode = "401", description = "The caller is not an introspection client")
+    })
+    public ResponseEntity<TokenIntrospection> introspectToken(@RequestBody IntrospectionRequest introspectionRequest) {
+        if (introspectionRequest == null || introspectionRequest.token() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(tokenIntrospectionService.introspect(introspectionRequest.token()));
+    }
+
+    @PostMapping("/introspect/batch")
+    @Operation(summary = "Introspect many access tokens at once, answering in the order they were given")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Tokens introspected"),
+            @ApiResponse(responseCode = "400", description = "No tokens were given or the batch is too large"),
+            @ApiResponse(responseCode = "401", description = "The caller is not an introspection client")
+    })
+    public ResponseEntity<List<TokenIntrospection>> introspectTokens(@RequestBody BatchIntrospectionRequest batchRequest) {
+        if (batchRequest == null || batchRequest.tokens() == null || batchRequest.tokens().isEmpty()
+                || batchRequest.tokens().size() > maxIntrospectionBatchSize) {
+            logger.warn("Rejecting introspection batch of {} tokens",
+                    batchRequest == null || batchRequest.tokens() == null ? 0 : batchRequest.tokens().size());
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(tokenIntrospectionService.introspect(batchRequest.tokens()));
+    }
+
 }
@@ -0,0 +1,64 @@
+package com.mhm.bank.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bounded, time-limited store of request outcomes keyed by the client's {@code Idempotency-Key}.
+ * The outcome is a future so that a retry arriving while the original request is still running is
+ * told so (409) instead of starting a second registration, and a later one gets the same outcome.
+ * The fingerprint is the {@link com.mhm.bank.service.RegistrationFingerprint} of the request body.
+ */
+@Component
+public class IdempotencyStore {
+
+    record Entry(String fingerprint, long expiresAtMillis, CompletableFuture<ResponseEntity<String>> outcome) { }
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    public IdempotencyStore(@Value("${registration.idempotency.max-entries:10000}") int maxEntries,
+                            @Value("${registration.idempotency.ttl-sec:86400}") long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries || eldest.getValue().expiresAtMillis() <= System.currentTimeMillis();
+            }
+        };
+    }
+
+    /**
+     * Registers a new outcome for the key, or returns the entry of the request that already used it.
+     */
+    public synchronized Entry putIfAbsent(String key, String fingerprint, CompletableFuture<ResponseEntity<String>> outcome) {
+        long now = System.currentTimeMillis();
+        Entry existing = entries.get(key);
+        if (existing != null && existing.expiresAtMillis() > now) {
+            return existing;
+        }
+        entries.remove(key);
+        entries.put(key, new Entry(fingerprint, now + ttlMillis, outcome));
+        return null;
+    }
+
+    /**
+     * Forgets the outcome so that the key can be retried, e.g. after a transient server error.
+     */
+    public synchronized void remove(String key, CompletableFuture<ResponseEntity<String>> outcome) {
+        Entry existing = entries.get(key);
+        if (existing != null && existing.outcome() == outcome) {
+            entries.remove(key);
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.mhm.bank.controller;
+
+import com.mhm.bank.service.ServerTiming;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Set;
+
+/**
+ * Adds a {@code Server-Timing} header with the stages recorded by {@link ServerTiming} to register, login and
+ * refresh responses. Only registered when {@code server-timing.enabled} is set, so it costs nothing otherwise.
+ * The header has to be set before the body commits the response, so the response is wrapped to add it on the
+ * first write; responses without a body get it once the request is handled.
+ */
+@Component
+@ConditionalOnProperty(name = "server-timing.enabled", havingValue = "true")
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final Set<String> TIMED_PATHS = Set.of("/api/auth/register", "/api/auth/login", "/api/auth/refresh");
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !TIMED_PATHS.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        TimedResponse timedResponse = new TimedResponse(response);
+        ServerTiming.begin();
+        try {
+            filterChain.doFilter(request, timedResponse);
+        } finally {
+            timedResponse.writeHeader();
+        }
+    }
+
+    private static final class TimedResponse extends HttpServletResponseWrapper {
+        private boolean written;
+
+        private TimedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        private void writeHeader() {
+            if (written) {
+                return;
+            }
+            written = true;
+            String header = ServerTiming.finish();
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (header != null && !response.isCommitted()) {
+                response.addHeader(ServerTiming.HEADER, header);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeHeader();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeHeader();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeHeader();
+            super.sendError(sc);
+        }
+    }
+
+}
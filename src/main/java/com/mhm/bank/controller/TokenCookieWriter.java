@@ -0,0 +1,82 @@
+package com.mhm.bank.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the token cookies as raw {@code Set-Cookie} headers. Every attribute except the token and, for the
+ * access token, its {@code Max-Age} is built once at startup, so a login only concatenates a few strings.
+ */
+@Component
+public class TokenCookieWriter {
+
+    static final String ACCESS_TOKEN_COOKIE = "accessToken";
+    static final String REFRESH_TOKEN_COOKIE = "refreshToken";
+    static final String SESSION_COOKIE = "sessionId";
+
+    private static final String ACCESS_TOKEN_PREFIX = ACCESS_TOKEN_COOKIE + "=";
+    private static final String REFRESH_TOKEN_PREFIX = REFRESH_TOKEN_COOKIE + "=";
+    private static final String SESSION_PREFIX = SESSION_COOKIE + "=";
+    private static final String MAX_AGE = "; Max-Age=";
+
+    private final int maxAgeSeconds;
+    private final String defaultMaxAgeAttribute;
+    private final String attributes;
+
+    public TokenCookieWriter(@Value("${cookie.secure}") boolean secure,
+                             @Value("${server.at.maximun.expiration.time-sec}") int maxAgeSeconds,
+                             @Value("${cookie.same-site:Lax}") String sameSite) {
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.defaultMaxAgeAttribute = MAX_AGE + maxAgeSeconds;
+        StringBuilder builder = new StringBuilder("; Path=/; HttpOnly");
+        if (secure) {
+            builder.append("; Secure");
+        }
+        if (sameSite != null && !sameSite.isBlank()) {
+            builder.append("; SameSite=").append(sameSite.trim());
+        }
+        this.attributes = builder.toString();
+    }
+
+    /**
+     * Writes the access token cookie so that it expires with the token, i.e. after {@code expiresIn} seconds,
+     * but never later than {@code server.at.maximun.expiration.time-sec}.
+     */
+    public void writeAccessToken(HttpServletResponse response, String accessToken, String expiresIn) {
+        write(response, ACCESS_TOKEN_PREFIX, accessToken, maxAgeAttribute(expiresIn));
+    }
+
+    public void writeRefreshToken(HttpServletResponse response, String refreshToken) {
+        write(response, REFRESH_TOKEN_PREFIX, refreshToken, defaultMaxAgeAttribute);
+    }
+
+    public void writeSessionId(HttpServletResponse response, String sessionId) {
+        write(response, SESSION_PREFIX, sessionId, defaultMaxAgeAttribute);
+    }
+
+    private void write(HttpServletResponse response, String prefix, String value, String maxAgeAttribute) {
+        String token = value == null ? "" : value;
+        String header = new StringBuilder(prefix.length() + token.length() + maxAgeAttribute.length() + attributes.length())
+                .append(prefix)
+                .append(token)
+                .append(maxAgeAttribute)
+                .append(attributes)
+                .toString();
+        response.addHeader(HttpHeaders.SET_COOKIE, header);
+    }
+
+    private String maxAgeAttribute(String expiresIn) {
+        if (expiresIn == null) {
+            return defaultMaxAgeAttribute;
+        }
+        try {
+            int seconds = Integer.parseInt(expiresIn.trim());
+            return seconds > 0 && seconds < maxAgeSeconds ? MAX_AGE + seconds : defaultMaxAgeAttribute;
+        } catch (NumberFormatException e) {
+            return defaultMaxAgeAttribute;
+        }
+    }
+
+}
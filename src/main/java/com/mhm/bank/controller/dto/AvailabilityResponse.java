@@ -0,0 +1,10 @@
+package com.mhm.bank.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AvailabilityResponse(
+        Boolean usernameAvailable,
+        Boolean emailAvailable
+) {
+}
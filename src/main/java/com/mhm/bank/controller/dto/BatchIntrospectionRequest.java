@@ -0,0 +1,5 @@
+package com.mhm.bank.controller.dto;
+
+import java.util.List;
+
+public record BatchIntrospectionRequest(List<String> tokens) { }
@@ -0,0 +1,3 @@
+package com.mhm.bank.controller.dto;
+
+public record IntrospectionRequest(String token) { }
@@ -0,0 +1,20 @@
+package com.mhm.bank.controller.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TokenIntrospection(
+        boolean active,
+        String sub,
+        String username,
+        List<String> roles,
+        Long exp
+) {
+    private static final TokenIntrospection INACTIVE = new TokenIntrospection(false, null, null, null, null);
+
+    public static TokenIntrospection inactive() {
+        return INACTIVE;
+    }
+}
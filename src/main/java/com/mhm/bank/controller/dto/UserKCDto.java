@@ -11,6 +11,10 @@ public record UserKCDto  (
         String firstName,
         String lastName,
         String email,
-        Set<String> roles
+        Set<String> roles,
+        String registrationId
 ){
+    public UserKCDto(String username, String password, String firstName, String lastName, String email, Set<String> roles) {
+        this(username, password, firstName, lastName, email, roles, null);
+    }
 }
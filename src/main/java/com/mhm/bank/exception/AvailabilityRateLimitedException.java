@@ -0,0 +1,13 @@
+package com.mhm.bank.exception;
+
+import lombok.Getter;
+
+@Getter
+public class AvailabilityRateLimitedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public AvailabilityRateLimitedException(String text, long retryAfterSeconds) {
+        super(text);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mhm.bank.exception;
 
 import org.apache.kafka.common.KafkaException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.CannotCreateTransactionException;
@@ -39,6 +40,64 @@ public class GlobalExceptionHandler {
                 .body(errorResponse);
     }
 
+    @ExceptionHandler(RegistrationInProgressException.class)
+    public ResponseEntity<ErrorResponse> handleRegistrationInProgress(RegistrationInProgressException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                "REGISTRATION_IN_PROGRESS",
+                ex.getMessage()
+        );
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyKeyReused(IdempotencyKeyReusedException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                "IDEMPOTENCY_KEY_REUSED",
+                ex.getMessage()
+        );
+        return ResponseEntity
+                .status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(LoginRateLimitedException.class)
+    public ResponseEntity<ErrorResponse> handleLoginRateLimited(LoginRateLimitedException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                "TOO_MANY_LOGIN_ATTEMPTS",
+                ex.getMessage()
+        );
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(AvailabilityRateLimitedException.class)
+    public ResponseEntity<ErrorResponse> handleAvailabilityRateLimited(AvailabilityRateLimitedException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                "TOO_MANY_AVAILABILITY_CHECKS",
+                ex.getMessage()
+        );
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(KeycloakUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleKeycloakUnavailable(KeycloakUnavailableException ex) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                "KEYCLOAK_UNAVAILABLE",
+                ex.getMessage()
+        );
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
     @ExceptionHandler(CannotCreateTransactionException.class)
     public ResponseEntity<ErrorResponse> handleTransactionException(CannotCreateTransactionException ex) {
         ErrorResponse errorResponse = new ErrorResponse(
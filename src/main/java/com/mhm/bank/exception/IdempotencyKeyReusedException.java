@@ -0,0 +1,7 @@
+package com.mhm.bank.exception;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException(String text) {
+        super(text);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mhm.bank.exception;
+
+import lombok.Getter;
+
+@Getter
+public class KeycloakUnavailableException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public KeycloakUnavailableException(String text, long retryAfterSeconds) {
+        super(text);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public KeycloakUnavailableException(String text, long retryAfterSeconds, Throwable cause) {
+        super(text, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
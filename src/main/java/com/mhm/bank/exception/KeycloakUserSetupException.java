@@ -0,0 +1,18 @@
+package com.mhm.bank.exception;
+
+import lombok.Getter;
+
+/**
+ * The user was created in Keycloak but a follow-up step (password, roles) failed,
+ * so the caller owns a partially set up Keycloak user identified by {@link #getUserId()}.
+ */
+@Getter
+public class KeycloakUserSetupException extends KeycloakException {
+    private final String userId;
+
+    public KeycloakUserSetupException(String errorDescription, String userId, Exception cause) {
+        super(errorDescription, cause);
+        this.userId = userId;
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.mhm.bank.exception;
+
+import lombok.Getter;
+
+@Getter
+public class LoginRateLimitedException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public LoginRateLimitedException(String text, long retryAfterSeconds) {
+        super(text);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,7 @@
+package com.mhm.bank.exception;
+
+public class RegistrationInProgressException extends RuntimeException {
+    public RegistrationInProgressException(String text) {
+        super(text);
+    }
+}
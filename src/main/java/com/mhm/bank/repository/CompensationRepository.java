@@ -0,0 +1,17 @@
+package com.mhm.bank.repository;
+
+import com.mhm.bank.repository.entity.CompensationEntity;
+import com.mhm.bank.repository.entity.CompensationEntity.CompensationStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CompensationRepository extends ListCrudRepository<CompensationEntity, Long> {
+
+    List<CompensationEntity> findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+            CompensationStatus status, LocalDateTime now, Pageable pageable);
+}
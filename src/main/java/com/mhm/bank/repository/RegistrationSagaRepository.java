@@ -0,0 +1,16 @@
+package com.mhm.bank.repository;
+
+import com.mhm.bank.repository.entity.RegistrationSagaEntity;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity.SagaState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RegistrationSagaRepository extends JpaRepository<RegistrationSagaEntity, String> {
+
+    List<RegistrationSagaEntity> findByStateInAndUpdatedAtBefore(Collection<SagaState> states, LocalDateTime updatedBefore);
+}
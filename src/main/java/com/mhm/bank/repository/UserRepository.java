@@ -1,11 +1,16 @@
 package com.mhm.bank.repository;
 
 import com.mhm.bank.repository.entity.UserEntity;
-import org.springframework.data.repository.ListCrudRepository;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.stream.Stream;
+
 @Repository
-public interface UserRepository  extends ListCrudRepository<UserEntity, String> {
+public interface UserRepository  extends JpaRepository<UserEntity, String> {
 
     boolean existsByUsername(String username);
 
@@ -13,4 +18,17 @@ public interface UserRepository  extends ListCrudRepository<UserEntity, String>
 
     UserEntity findByUsername(String username);
     UserEntity findByEmail(String email);
+
+    /**
+     * Streams the unique keys of all users; must be consumed inside a transaction.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query("select u.id as id, u.username as username, u.email as email from UserEntity u")
+    Stream<UserKeys> streamAllKeys();
+
+    interface UserKeys {
+        String getId();
+        String getUsername();
+        String getEmail();
+    }
 }
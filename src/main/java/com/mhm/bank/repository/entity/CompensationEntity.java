@@ -0,0 +1,47 @@
+package com.mhm.bank.repository.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "registration_compensations")
+@NoArgsConstructor
+@Getter
+@Setter
+public class CompensationEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "keycloak_user_id", nullable = false, length = 64)
+    private String keycloakUserId;
+    @Column(name = "username", nullable = false, length = 50)
+    private String username;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private CompensationStatus status;
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    @Column(name = "last_error")
+    private String lastError;
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public enum CompensationStatus {
+        PENDING,
+        FAILED
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.mhm.bank.repository.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "registration_sagas")
+@NoArgsConstructor
+@Getter
+@Setter
+public class RegistrationSagaEntity {
+    @Id
+    @Column(name = "id", length = 64)
+    private String id;
+    @Column(name = "user_id", nullable = false, length = 30)
+    private String userId;
+    @Column(name = "username", nullable = false, length = 50)
+    private String username;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 30)
+    private SagaState state;
+    @Column(name = "keycloak_user_id", length = 64)
+    private String keycloakUserId;
+    @Column(name = "last_error")
+    private String lastError;
+    /** Fingerprint of the registration request, see {@link com.mhm.bank.service.RegistrationFingerprint}. */
+    @Column(name = "request_hash", length = 64)
+    private String requestHash;
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    /** Every update is conditional on it, so a saga is only ever driven by the request or replica that claimed it. */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    /**
+     * Registration steps in execution order. A saga that is not in a terminal state
+     * ({@link #COMPLETED}, {@link #COMPENSATED}, {@link #FAILED}) is still running or was interrupted.
+     */
+    public enum SagaState {
+        STARTED,
+        KEYCLOAK_USER_CREATED,
+        USER_STORED,
+        COMPLETED,
+        COMPENSATED,
+        FAILED;
+
+        public boolean isTerminal() {
+            return this == COMPLETED || this == COMPENSATED || this == FAILED;
+        }
+    }
+
+}
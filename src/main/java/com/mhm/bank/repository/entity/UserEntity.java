@@ -3,10 +3,15 @@ package com.mhm.bank.repository.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDate;
 
@@ -15,15 +20,16 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @Getter
 @Setter
-public class UserEntity {
+public class UserEntity implements Persistable<String> {
     @Id
     private String id;
-    @Column(name = "username", nullable = false, length = 50)
+    @Column(name = "username", nullable = false, unique = true, length = 50)
     private String username;
     @Column(name = "first_name", nullable = false, length = 50)
     private String firstName;
     @Column(name = "last_name", nullable = false, length = 50)
     private String lastName;
+    @Column(name = "email", nullable = false, unique = true, length = 100)
     private String email;
     private String address;
     @Column(name = "phone_number", length = 20)
@@ -31,5 +37,21 @@ public class UserEntity {
     @Column(name = "birth_date")
     private LocalDate birthDate;
 
+    // The id is assigned, so without this save() would merge, overwriting a user with the same id
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean stored;
+
+    @Override
+    public boolean isNew() {
+        return !stored;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markStored() {
+        stored = true;
+    }
 
 }
@@ -2,16 +2,23 @@ package com.mhm.bank.service;
 
 import com.mhm.bank.controller.dto.*;
 import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.KeycloakUserSetupException;
+import com.mhm.bank.exception.LoginRateLimitedException;
 import com.mhm.bank.exception.UserAlreadyExistsException;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity.SagaState;
 import com.mhm.bank.repository.entity.UserEntity;
+import com.mhm.bank.service.ServerTiming.Stage;
+import com.mhm.bank.service.audit.AuthAuditLog;
+import com.mhm.bank.service.audit.AuthAuditLog.Event;
 import com.mhm.bank.service.external.KafkaProducerService;
 import com.mhm.bank.service.external.keycloak.IKeycloakService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.kafka.KafkaException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -30,40 +37,87 @@ public class AuthService {
     private final KafkaProducerService kafkaProducerService;
     private final IKeycloakService keycloakService;
     private final UserDataAccessService userDataAccessService;
+    private final RegistrationSagaService registrationSagaService;
+    private final LoginAttemptGuard loginAttemptGuard;
+    private final AvailabilityCheckGuard availabilityCheckGuard;
+    private final AuthAuditLog auditLog;
 
 
-    public AuthService(KafkaProducerService kafkaProducerService, IKeycloakService keycloakService, UserDataAccessService userDataAccessService) throws KeycloakException {
+    public AuthService(KafkaProducerService kafkaProducerService, IKeycloakService keycloakService, UserDataAccessService userDataAccessService,
+                       RegistrationSagaService registrationSagaService, LoginAttemptGuard loginAttemptGuard,
+                       AvailabilityCheckGuard availabilityCheckGuard, AuthAuditLog auditLog) throws KeycloakException {
         this.kafkaProducerService = kafkaProducerService;
         this.keycloakService = keycloakService;
         this.userDataAccessService = userDataAccessService;
+        this.registrationSagaService = registrationSagaService;
+        this.loginAttemptGuard = loginAttemptGuard;
+        this.availabilityCheckGuard = availabilityCheckGuard;
+        this.auditLog = auditLog;
     }
 
-    @Transactional
     public String registerUser(UserInformation userInformation) throws UserAlreadyExistsException, KeycloakException, KafkaException {
-        String usernameAfterKC = userInformation.username();
+        return registerUser(userInformation, null);
+    }
+
+    /**
+     * Registers the user in Keycloak, the database and Kafka as a saga: each completed step is recorded so that
+     * a failure only compensates what was actually done, and a retry with the same idempotency key of a
+     * completed registration returns its result without repeating any step.
+     */
+    public String registerUser(UserInformation userInformation, String idempotencyKey)
+            throws UserAlreadyExistsException, KeycloakException, KafkaException {
+        long stageStart = ServerTiming.start();
+        RegistrationSagaEntity saga = registrationSagaService.begin(idempotencyKey, userInformation);
+        ServerTiming.stop(Stage.SAGA, stageStart);
+        if (saga.getState() == SagaState.COMPLETED) {
+            return String.format("User %s with ID %s has been added", saga.getUsername(), saga.getUserId());
+        }
         try {
+            stageStart = ServerTiming.start();
             String token = keycloakService.getTokenAdminAppAuth();
+            ServerTiming.stop(Stage.ADMIN_TOKEN, stageStart);
+
+            stageStart = ServerTiming.start();
             userDataAccessService.doesUserExistInDataBase(userInformation);
-            sendUserToKeycloak(userInformation, token);
+            ServerTiming.stop(Stage.UNIQUENESS_CHECK, stageStart);
+
+            saga.setKeycloakUserId(sendUserToKeycloak(userInformation, token, saga.getId()));
+            advance(saga, SagaState.KEYCLOAK_USER_CREATED);
+
+            stageStart = ServerTiming.start();
             UserEntity userEntity = userDataAccessService.sendUserToDataBase(userInformation);
+            ServerTiming.stop(Stage.DB_INSERT, stageStart);
+            advance(saga, SagaState.USER_STORED);
+
+            stageStart = ServerTiming.start();
             sendEventToKafka(userInformation);
+            ServerTiming.stop(Stage.KAFKA_ACK, stageStart);
+            advance(saga, SagaState.COMPLETED);
 
-            logger.info("User {} successfully registered with ID: {}", userInformation.username(), userEntity.getId());
+            logger.debug("User {} successfully registered with ID: {}", userInformation.username(), userEntity.getId());
+            auditLog.success(Event.REGISTER, userInformation.username(), null);
             return String.format("User %s with ID %s has been added", userInformation.username(), userEntity.getId());
+        } catch (OptimisticLockingFailureException e) {
+            // The saga was taken over by recovery, which finishes or undoes it; compensating here would race it
+            auditLog.failure(Event.REGISTER, userInformation.username(), null, e.getClass().getSimpleName());
+            throw e;
         } catch (Exception e) {
-            if (usernameAfterKC != null) {
-                try {
-                    keycloakService.deleteUser(usernameAfterKC);
-                    logger.info("User {} deleted from Keycloak after transaction failure", usernameAfterKC);
-                } catch (Exception ke) {
-                    logger.error("Failed to delete user {} from Keycloak after transaction failure", usernameAfterKC, ke);
-                }
+            if (e instanceof KeycloakUserSetupException setupException) {
+                saga.setKeycloakUserId(setupException.getUserId());
             }
+            registrationSagaService.compensate(saga, e);
+            auditLog.failure(Event.REGISTER, userInformation.username(), null, e.getClass().getSimpleName());
             throw e;
         }
     }
 
-    private void sendUserToKeycloak(UserInformation userInformation, String token) throws KeycloakException {
+    private void advance(RegistrationSagaEntity saga, SagaState state) {
+        long stageStart = ServerTiming.start();
+        registrationSagaService.advance(saga, state);
+        ServerTiming.stop(Stage.SAGA, stageStart);
+    }
+
+    private String sendUserToKeycloak(UserInformation userInformation, String token, String registrationId) throws KeycloakException {
         Set<String> roles = (userInformation.roles() != null && !userInformation.roles().isEmpty())
                 ? userInformation.roles()
                 : Set.of(kcUserRole);
@@ -74,13 +128,15 @@ public class AuthService {
                 userInformation.firstName(),
                 userInformation.lastName(),
                 userInformation.email(),
-                roles
+                roles,
+                registrationId
         );
 
-        boolean success = keycloakService.createUser(userKCDto, "Bearer " + token);
-        if (!success) {
+        String keycloakUserId = keycloakService.createUser(userKCDto, "Bearer " + token);
+        if (keycloakUserId == null) {
             throw new KeycloakException(String.format("Failed to create user %s in Keycloak", userKCDto.username()));
         }
+        return keycloakUserId;
     }
 
     private void sendEventToKafka(UserInformation userInformation) throws KafkaException {
@@ -96,11 +152,9 @@ public class AuthService {
         );
 
         try {
-            logger.info("Sending message to Kafka for user: {}", userInformation.username());
-            kafkaProducerService.sendMessage(event)
-                    .thenAccept(result -> logger.info("Message sent successfully to partition {} for user: {}",
-                            result.getRecordMetadata().partition(), userInformation.username()))
-                    .get(authTimeout, TimeUnit.SECONDS);
+            logger.debug("Sending message to Kafka for user: {}", userInformation.username());
+            // KafkaProducerService logs the acknowledgement
+            kafkaProducerService.sendMessage(event).get(authTimeout, TimeUnit.MILLISECONDS);
         } catch (ExecutionException | InterruptedException | TimeoutException e) {
             logger.error("Failed to send Kafka message - User: {}, Error: {}",
                     userInformation.username(), e.getMessage());
@@ -109,12 +163,39 @@ public class AuthService {
         }
     }
 
-    public TokensUser loginUser(LoginRequest loginRequest) throws KeycloakException {
-        String token = keycloakService.getTokenAdminAppAuth();
-
-        TokensUser tokensUser = keycloakService.loginUser(loginRequest, token);
+    public TokensUser loginUser(LoginRequest loginRequest, String clientIp) throws KeycloakException {
+        try {
+            loginAttemptGuard.checkAllowed(loginRequest.username(), clientIp);
+        } catch (LoginRateLimitedException e) {
+            auditLog.failure(Event.LOGIN, loginRequest.username(), clientIp, "rate_limited");
+            throw e;
+        }
+        TokensUser tokensUser;
+        long stageStart = ServerTiming.start();
+        try {
+            tokensUser = keycloakService.loginUser(loginRequest);
+        } catch (KeycloakException e) {
+            // An error code means Keycloak rejected the grant; outages don't count against the user
+            if (e.getErrorCode() != null) {
+                loginAttemptGuard.recordFailure(loginRequest.username());
+            }
+            auditLog.failure(Event.LOGIN, loginRequest.username(), clientIp,
+                    e.getErrorCode() != null ? e.getErrorCode() : "keycloak_unavailable");
+            throw e;
+        } catch (RuntimeException e) {
+            // Circuit breaker, bulkhead or connection failure: not the user's doing
+            auditLog.failure(Event.LOGIN, loginRequest.username(), clientIp, e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            ServerTiming.stop(Stage.TOKEN_GRANT, stageStart);
+        }
 
-        logger.info("{}]'s login was successful.", loginRequest.username());
+        logger.debug("{}]'s login was successful.", loginRequest.username());
+        if (tokensUser != null) {
+            auditLog.success(Event.LOGIN, loginRequest.username(), clientIp);
+        } else {
+            auditLog.failure(Event.LOGIN, loginRequest.username(), clientIp, "no_tokens");
+        }
         return tokensUser;
     }
 
@@ -122,8 +203,31 @@ public class AuthService {
         return userDataAccessService.getUserInfo(searchData);
     }
 
-    public TokensUser refreshToken(String refreshToken) throws KeycloakException {
-        return keycloakService.getNewToken(refreshToken);
+    public AvailabilityResponse checkAvailability(String username, String email, String clientIp) {
+        availabilityCheckGuard.checkAllowed(clientIp);
+        return new AvailabilityResponse(
+                username != null ? userDataAccessService.isUsernameAvailable(username) : null,
+                email != null ? userDataAccessService.isEmailAvailable(email) : null
+        );
+    }
+
+    public TokensUser refreshToken(String refreshToken, String clientIp) throws KeycloakException {
+        long stageStart = ServerTiming.start();
+        TokensUser tokensUser;
+        try {
+            tokensUser = keycloakService.getNewToken(refreshToken);
+        } catch (RuntimeException e) {
+            auditLog.failure(Event.REFRESH, null, clientIp, e.getClass().getSimpleName());
+            throw e;
+        } finally {
+            ServerTiming.stop(Stage.TOKEN_REFRESH, stageStart);
+        }
+        if (tokensUser != null) {
+            auditLog.success(Event.REFRESH, AuthAuditLog.usernameOf(tokensUser.getAccessToken()), clientIp);
+        } else {
+            auditLog.failure(Event.REFRESH, null, clientIp, "rejected");
+        }
+        return tokensUser;
     }
 
 }
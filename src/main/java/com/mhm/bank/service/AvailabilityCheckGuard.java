@@ -0,0 +1,54 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.exception.AvailabilityRateLimitedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Limits the username and email availability checks per client IP within a sliding window. The check is
+ * public, so that the registration form can use it, which also makes it a way to find out which usernames and
+ * emails are registered; the limit keeps it to what a person filling in the form needs.
+ */
+@Component
+public class AvailabilityCheckGuard {
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilityCheckGuard.class);
+
+    static final String REJECTIONS = "auth.availability.guard.rejections";
+    private static final String REJECTION_MESSAGE = "Too many availability checks, please try again later";
+
+    private final boolean enabled;
+    private final int maxChecksPerIp;
+    private final long windowSeconds;
+    private final SlidingWindowCounter checksByIp;
+    private final Counter rejections;
+
+    public AvailabilityCheckGuard(@Value("${registration.availability.guard.enabled:true}") boolean enabled,
+                                  @Value("${registration.availability.guard.cells:65536}") int cells,
+                                  @Value("${registration.availability.guard.max-checks:20}") int maxChecksPerIp,
+                                  @Value("${registration.availability.guard.window-sec:60}") long windowSeconds,
+                                  MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxChecksPerIp = maxChecksPerIp;
+        this.windowSeconds = windowSeconds;
+        this.checksByIp = new SlidingWindowCounter(cells, Duration.ofSeconds(windowSeconds));
+        this.rejections = meterRegistry.counter(REJECTIONS);
+    }
+
+    /**
+     * Counts the check against the client IP and throws if the IP is over its limit.
+     */
+    public void checkAllowed(String clientIp) {
+        if (enabled && clientIp != null && checksByIp.increment(clientIp) > maxChecksPerIp) {
+            rejections.increment();
+            logger.warn("Availability check rejected, too many checks from {}", clientIp);
+            throw new AvailabilityRateLimitedException(REJECTION_MESSAGE, windowSeconds);
+        }
+    }
+
+}
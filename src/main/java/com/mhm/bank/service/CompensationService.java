@@ -0,0 +1,147 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.repository.CompensationRepository;
+import com.mhm.bank.repository.entity.CompensationEntity;
+import com.mhm.bank.repository.entity.CompensationEntity.CompensationStatus;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Undoes the Keycloak side of registrations that failed after the Keycloak user was created.
+ * Compensations are stored in the database and executed by a background worker with exponential
+ * backoff, so the failing request returns without waiting on extra Keycloak round trips.
+ */
+@Service
+public class CompensationService {
+    private static final Logger logger = LoggerFactory.getLogger(CompensationService.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    @Value("${registration.compensation.max-attempts:8}")
+    private int maxAttempts;
+    @Value("${registration.compensation.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+    @Value("${registration.compensation.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+    @Value("${registration.compensation.batch-size:50}")
+    private int batchSize;
+
+    private final CompensationRepository compensationRepository;
+    private final IKeycloakService keycloakService;
+    private final TransactionTemplate requiresNewTransaction;
+    /** Compensations that could not be persisted (e.g. the database is down); retried from memory. */
+    private final Queue<CompensationEntity> unsaved = new ConcurrentLinkedQueue<>();
+
+    public CompensationService(CompensationRepository compensationRepository, IKeycloakService keycloakService,
+                               PlatformTransactionManager transactionManager) {
+        this.compensationRepository = compensationRepository;
+        this.keycloakService = keycloakService;
+        // The registration transaction is rolling back when a compensation is scheduled, so it must not be joined
+        this.requiresNewTransaction = new TransactionTemplate(transactionManager);
+        this.requiresNewTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void scheduleKeycloakUserRemoval(String keycloakUserId, String username) {
+        LocalDateTime now = LocalDateTime.now();
+        CompensationEntity compensation = new CompensationEntity();
+        compensation.setKeycloakUserId(keycloakUserId);
+        compensation.setUsername(username);
+        compensation.setStatus(CompensationStatus.PENDING);
+        compensation.setAttempts(0);
+        compensation.setNextAttemptAt(now);
+        compensation.setCreatedAt(now);
+        try {
+            requiresNewTransaction.executeWithoutResult(status -> compensationRepository.save(compensation));
+            logger.info("Scheduled removal of Keycloak user {} ({})", username, keycloakUserId);
+        } catch (Exception e) {
+            logger.warn("Could not persist compensation for Keycloak user {} ({}), keeping it in memory: {}",
+                    username, keycloakUserId, e.getMessage());
+            unsaved.add(compensation);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${registration.compensation.poll-interval-ms:5000}")
+    public void runDueCompensations() {
+        runUnsavedCompensations();
+
+        List<CompensationEntity> due;
+        try {
+            due = compensationRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                    CompensationStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, batchSize));
+        } catch (Exception e) {
+            logger.warn("Could not load pending compensations: {}", e.getMessage());
+            return;
+        }
+
+        for (CompensationEntity compensation : due) {
+            if (execute(compensation)) {
+                compensationRepository.delete(compensation);
+            } else {
+                compensationRepository.save(compensation);
+            }
+        }
+    }
+
+    private void runUnsavedCompensations() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int pending = unsaved.size(); pending > 0; pending--) {
+            CompensationEntity compensation = unsaved.poll();
+            if (compensation == null) {
+                return;
+            }
+            if (compensation.getNextAttemptAt().isAfter(now) || !execute(compensation)) {
+                if (compensation.getStatus() == CompensationStatus.PENDING) {
+                    unsaved.add(compensation);
+                }
+            }
+        }
+    }
+
+    private boolean execute(CompensationEntity compensation) {
+        try {
+            keycloakService.deleteUserById(compensation.getKeycloakUserId());
+            logger.info("User {} deleted from Keycloak after registration failure", compensation.getUsername());
+            return true;
+        } catch (Exception e) {
+            int attempts = compensation.getAttempts() + 1;
+            compensation.setAttempts(attempts);
+            compensation.setLastError(truncate(e.getMessage()));
+            if (attempts >= maxAttempts) {
+                compensation.setStatus(CompensationStatus.FAILED);
+                logger.error("Giving up removing Keycloak user {} ({}) after {} attempts, manual cleanup required",
+                        compensation.getUsername(), compensation.getKeycloakUserId(), attempts);
+            } else {
+                compensation.setNextAttemptAt(LocalDateTime.now().plus(backoff(attempts)));
+                logger.warn("Failed to remove Keycloak user {} (attempt {}): {}",
+                        compensation.getUsername(), attempts, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    Duration backoff(int attempts) {
+        long delay = initialBackoffMs << Math.min(attempts - 1, 30);
+        return Duration.ofMillis(Math.min(delay, maxBackoffMs));
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+}
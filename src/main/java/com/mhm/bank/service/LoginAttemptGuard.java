@@ -0,0 +1,126 @@
+package com.mhm.bank.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mhm.bank.exception.LoginRateLimitedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+/**
+ * Rejects logins before they reach Keycloak when the client IP sends too many attempts, or when the
+ * username collected too many failed attempts, within a sliding window.
+ *
+ * <p>Attempts per IP are estimated with a {@link SlidingWindowCounter}: an overestimate only slows down a client
+ * sharing cells with a noisy one. Failures per username are counted exactly, since an overestimate there would
+ * lock an innocent user out: the times of the last {@code login.guard.username.max-failures} failures are kept
+ * per username, for up to {@code login.guard.username.max-tracked} usernames, until the window has passed since
+ * the last one. The client IP is the one Tomcat resolves, which follows {@code X-Forwarded-For} only from the
+ * proxies trusted by {@code server.forward-headers-strategy} and {@code server.tomcat.remoteip.internal-proxies}.
+ */
+@Component
+public class LoginAttemptGuard {
+    private static final Logger logger = LoggerFactory.getLogger(LoginAttemptGuard.class);
+
+    static final String REJECTIONS = "auth.login.guard.rejections";
+    private static final String REJECTION_MESSAGE = "Too many login attempts, please try again later";
+
+    private final boolean enabled;
+    private final int maxAttemptsPerIp;
+    private final long ipWindowSeconds;
+    private final int maxFailuresPerUsername;
+    private final long usernameWindowSeconds;
+    private final SlidingWindowCounter attemptsByIp;
+    private final long usernameWindowMillis;
+    private final Cache<String, Deque<Long>> failuresByUsername;
+    private final Counter ipRejections;
+    private final Counter usernameRejections;
+
+    public LoginAttemptGuard(@Value("${login.guard.enabled:true}") boolean enabled,
+                             @Value("${login.guard.cells:65536}") int cells,
+                             @Value("${login.guard.ip.max-attempts:30}") int maxAttemptsPerIp,
+                             @Value("${login.guard.ip.window-sec:60}") long ipWindowSeconds,
+                             @Value("${login.guard.username.max-failures:5}") int maxFailuresPerUsername,
+                             @Value("${login.guard.username.window-sec:900}") long usernameWindowSeconds,
+                             @Value("${login.guard.username.max-tracked:100000}") long maxTrackedUsernames,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxAttemptsPerIp = maxAttemptsPerIp;
+        this.ipWindowSeconds = ipWindowSeconds;
+        this.maxFailuresPerUsername = maxFailuresPerUsername;
+        this.usernameWindowSeconds = usernameWindowSeconds;
+        this.attemptsByIp = new SlidingWindowCounter(cells, Duration.ofSeconds(ipWindowSeconds));
+        this.usernameWindowMillis = Duration.ofSeconds(usernameWindowSeconds).toMillis();
+        this.failuresByUsername = Caffeine.newBuilder()
+                .maximumSize(maxTrackedUsernames)
+                .expireAfterWrite(Duration.ofSeconds(usernameWindowSeconds))
+                .build();
+        this.ipRejections = meterRegistry.counter(REJECTIONS, "key", "ip");
+        this.usernameRejections = meterRegistry.counter(REJECTIONS, "key", "username");
+    }
+
+    /**
+     * Counts the attempt against the client IP and throws if either the IP or the username is over its limit.
+     */
+    public void checkAllowed(String username, String clientIp) {
+        if (!enabled) {
+            return;
+        }
+        if (clientIp != null && attemptsByIp.increment(clientIp) > maxAttemptsPerIp) {
+            ipRejections.increment();
+            logger.warn("Login rejected, too many attempts from {}", clientIp);
+            throw new LoginRateLimitedException(REJECTION_MESSAGE, ipWindowSeconds);
+        }
+        if (username != null && failures(username, System.currentTimeMillis()) >= maxFailuresPerUsername) {
+            usernameRejections.increment();
+            logger.warn("Login rejected, too many failed attempts for user {}", username);
+            throw new LoginRateLimitedException(REJECTION_MESSAGE, usernameWindowSeconds);
+        }
+    }
+
+    public void recordFailure(String username) {
+        if (enabled && username != null) {
+            recordFailure(username, System.currentTimeMillis());
+        }
+    }
+
+    void recordFailure(String username, long nowMillis) {
+        failuresByUsername.asMap().compute(normalize(username), (key, times) -> {
+            Deque<Long> failures = times != null ? times : new ArrayDeque<>(maxFailuresPerUsername);
+            failures.addLast(nowMillis);
+            while (failures.size() > maxFailuresPerUsername) {
+                failures.removeFirst();
+            }
+            return failures;
+        });
+    }
+
+    /**
+     * Returns the number of failures recorded for the username within the window ending at the given time.
+     */
+    int failures(String username, long nowMillis) {
+        int[] count = new int[1];
+        failuresByUsername.asMap().computeIfPresent(normalize(username), (key, times) -> {
+            long windowStart = nowMillis - usernameWindowMillis;
+            while (!times.isEmpty() && times.peekFirst() <= windowStart) {
+                times.removeFirst();
+            }
+            count[0] = times.size();
+            return times.isEmpty() ? null : times;
+        });
+        return count[0];
+    }
+
+    private static String normalize(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
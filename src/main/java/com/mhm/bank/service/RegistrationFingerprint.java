@@ -0,0 +1,54 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.controller.dto.UserInformation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.TreeSet;
+
+/**
+ * SHA-256 of a registration request in a canonical form, used to tell a retry with the same
+ * {@code Idempotency-Key} from a different request reusing it. Every field is length-prefixed so that no two
+ * requests share a canonical form, and the roles are sorted. The password is left out because the hash is stored
+ * with the saga and must not help guess it: a retry that only changes the password counts as the same request.
+ */
+public final class RegistrationFingerprint {
+
+    private RegistrationFingerprint() {
+    }
+
+    public static String of(UserInformation userInformation) {
+        StringBuilder canonical = new StringBuilder(256);
+        append(canonical, userInformation.idCard());
+        append(canonical, userInformation.username());
+        append(canonical, userInformation.firstName());
+        append(canonical, userInformation.lastName());
+        append(canonical, userInformation.address());
+        append(canonical, userInformation.email());
+        append(canonical, userInformation.birthdate() != null ? userInformation.birthdate().toString() : null);
+        append(canonical, userInformation.phoneNumber());
+        if (userInformation.roles() != null) {
+            for (String role : new TreeSet<>(userInformation.roles())) {
+                append(canonical, role);
+            }
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void append(StringBuilder canonical, String value) {
+        if (value == null) {
+            canonical.append("-1:");
+            return;
+        }
+        canonical.append(value.length()).append(':').append(value);
+    }
+
+}
@@ -0,0 +1,316 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.controller.dto.UserInformation;
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import com.mhm.bank.exception.IdempotencyKeyReusedException;
+import com.mhm.bank.exception.RegistrationInProgressException;
+import com.mhm.bank.repository.RegistrationSagaRepository;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity.SagaState;
+import com.mhm.bank.repository.entity.UserEntity;
+import com.mhm.bank.service.external.KafkaProducerService;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the progress of each registration (Keycloak user, database row, Kafka event) so that a
+ * failed or interrupted registration can be compensated step by step, and a crashed one can be
+ * resumed or compensated by the recovery sweeper.
+ *
+ * <p>Every update of a saga is conditional on its version, and recovery first claims the saga with such an
+ * update: when several replicas sweep at the same time, or a retry finds the saga the sweeper is handling, only
+ * one of them drives it.
+ */
+@Service
+public class RegistrationSagaService {
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationSagaService.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+    private static final EnumSet<SagaState> UNFINISHED_STATES =
+            EnumSet.of(SagaState.STARTED, SagaState.KEYCLOAK_USER_CREATED, SagaState.USER_STORED);
+
+    /** Keycloak calls a registration makes between two saga updates: admin token, user, roles and role mapping. */
+    private static final int KEYCLOAK_CALLS_PER_STEP = 6;
+
+    @Value("${registration.saga.stale-after-sec:120}")
+    private int staleAfterSeconds;
+    /** Milliseconds to wait for the acknowledgement of the registration event. */
+    @Value("${kafka.producer.auth.timeout}")
+    private long authTimeout;
+    @Value("${spring.kafka.producer.properties.max.block.ms:60000}")
+    private long kafkaMaxBlockMs;
+    @Value("${keycloak.client.connect-timeout-ms:2000}")
+    private long keycloakConnectTimeoutMs;
+    @Value("${keycloak.client.read-timeout-ms:5000}")
+    private long keycloakReadTimeoutMs;
+    @Value("${spring.datasource.hikari.connection-timeout:30000}")
+    private long databaseConnectionTimeoutMs;
+
+    private final RegistrationSagaRepository registrationSagaRepository;
+    private final UserDataAccessService userDataAccessService;
+    private final CompensationService compensationService;
+    private final IKeycloakService keycloakService;
+    private final KafkaProducerService kafkaProducerService;
+
+    public RegistrationSagaService(RegistrationSagaRepository registrationSagaRepository, UserDataAccessService userDataAccessService,
+                                   CompensationService compensationService, IKeycloakService keycloakService,
+                                   KafkaProducerService kafkaProducerService) {
+        this.registrationSagaRepository = registrationSagaRepository;
+        this.userDataAccessService = userDataAccessService;
+        this.compensationService = compensationService;
+        this.keycloakService = keycloakService;
+        this.kafkaProducerService = kafkaProducerService;
+    }
+
+    /**
+     * Starts a saga for the registration, or continues the one of the idempotency key when it was already used.
+     * A completed saga is returned as is so the caller can skip the registration; an unfinished one that is still
+     * fresh belongs to a concurrent request and is rejected, an interrupted one is recovered first, and a failed
+     * or compensated one is started again in place, so that what an earlier attempt created is never lost.
+     * A key used for a different request is rejected.
+     */
+    public RegistrationSagaEntity begin(String idempotencyKey, UserInformation userInformation) {
+        String requestHash = RegistrationFingerprint.of(userInformation);
+        if (idempotencyKey == null) {
+            return insert(UUID.randomUUID().toString(), userInformation, requestHash);
+        }
+        Optional<RegistrationSagaEntity> existing = registrationSagaRepository.findById(idempotencyKey);
+        if (existing.isEmpty()) {
+            return insert(idempotencyKey, userInformation, requestHash);
+        }
+
+        RegistrationSagaEntity saga = existing.get();
+        if (saga.getRequestHash() != null && !saga.getRequestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReusedException("Idempotency key " + idempotencyKey + " was used for a different request");
+        }
+        if (saga.getState() == SagaState.COMPLETED) {
+            logger.info("Registration {} already completed for user {}", saga.getId(), saga.getUsername());
+            return saga;
+        }
+        if (!saga.getState().isTerminal()) {
+            if (saga.getUpdatedAt().isAfter(LocalDateTime.now().minus(staleAfter())) || !claim(saga)) {
+                throw inProgress(idempotencyKey);
+            }
+            try {
+                recover(saga);
+            } catch (Exception e) {
+                logger.error("Failed to recover registration {} for user {}: {}",
+                        saga.getId(), saga.getUsername(), e.getMessage());
+                throw inProgress(idempotencyKey);
+            }
+            if (saga.getState() == SagaState.COMPLETED) {
+                return saga;
+            }
+        }
+        return restart(saga, userInformation, requestHash);
+    }
+
+    /**
+     * Inserts the saga; the insert fails if a concurrent request with the same key got there first.
+     */
+    private RegistrationSagaEntity insert(String id, UserInformation userInformation, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        RegistrationSagaEntity saga = new RegistrationSagaEntity();
+        saga.setId(id);
+        saga.setUserId(userInformation.idCard());
+        saga.setUsername(userInformation.username());
+        saga.setRequestHash(requestHash);
+        saga.setState(SagaState.STARTED);
+        saga.setCreatedAt(now);
+        saga.setUpdatedAt(now);
+        try {
+            return registrationSagaRepository.saveAndFlush(saga);
+        } catch (DataIntegrityViolationException e) {
+            if (!UserDataAccessService.isUniqueViolation(e)) {
+                throw e;
+            }
+            throw inProgress(id);
+        }
+    }
+
+    /**
+     * Starts a finished saga over. Its Keycloak user, if any, was handed to the {@link CompensationService} when
+     * the saga was compensated.
+     */
+    private RegistrationSagaEntity restart(RegistrationSagaEntity saga, UserInformation userInformation,
+                                           String requestHash) {
+        logger.info("Restarting registration {} for user {} after it ended {}", saga.getId(), saga.getUsername(),
+                saga.getState());
+        saga.setUserId(userInformation.idCard());
+        saga.setUsername(userInformation.username());
+        saga.setRequestHash(requestHash);
+        saga.setKeycloakUserId(null);
+        saga.setLastError(null);
+        try {
+            advance(saga, SagaState.STARTED);
+        } catch (OptimisticLockingFailureException e) {
+            throw inProgress(saga.getId());
+        }
+        return saga;
+    }
+
+    private static RegistrationInProgressException inProgress(String idempotencyKey) {
+        return new RegistrationInProgressException("Registration " + idempotencyKey + " is already in progress");
+    }
+
+    /**
+     * How long an unfinished saga must have gone without progress before it is treated as interrupted: the
+     * configured {@code registration.saga.stale-after-sec}, but never less than twice the longest a live request
+     * can take between two updates (its Keycloak calls or the Kafka send, plus waiting for a database connection),
+     * so that a registration still waiting on a dependency is not recovered under it.
+     */
+    Duration staleAfter() {
+        long longestStepMs = Math.max(KEYCLOAK_CALLS_PER_STEP * (keycloakConnectTimeoutMs + keycloakReadTimeoutMs),
+                kafkaMaxBlockMs + authTimeout) + databaseConnectionTimeoutMs;
+        return Duration.ofMillis(Math.max(staleAfterSeconds * 1000L, 2 * longestStepMs));
+    }
+
+    /**
+     * Takes the saga over by updating it on the version that was read; false if another request or replica
+     * updated it since, in which case it is left to them.
+     */
+    private boolean claim(RegistrationSagaEntity saga) {
+        try {
+            advance(saga, saga.getState());
+            return true;
+        } catch (OptimisticLockingFailureException e) {
+            logger.debug("Registration {} was claimed by someone else", saga.getId());
+            return false;
+        }
+    }
+
+    public void advance(RegistrationSagaEntity saga, SagaState state) {
+        saga.setState(state);
+        saga.setUpdatedAt(LocalDateTime.now());
+        // The saga stays detached, so it takes the version of the saved copy for its next conditional update
+        saga.setVersion(registrationSagaRepository.save(saga).getVersion());
+    }
+
+    /**
+     * Undoes the steps the saga reached, in reverse order. The local database row is removed right away,
+     * the Keycloak user is handed to the {@link CompensationService} worker.
+     */
+    public void compensate(RegistrationSagaEntity saga, Exception cause) {
+        boolean compensated = false;
+        if (saga.getState() == SagaState.USER_STORED) {
+            try {
+                userDataAccessService.removeUserFromDataBase(saga.getUserId());
+                compensated = true;
+            } catch (Exception e) {
+                logger.error("Failed to remove user {} from the database during compensation: {}",
+                        saga.getUsername(), e.getMessage());
+            }
+        }
+        if (saga.getKeycloakUserId() != null) {
+            compensationService.scheduleKeycloakUserRemoval(saga.getKeycloakUserId(), saga.getUsername());
+            compensated = true;
+        }
+
+        saga.setLastError(truncate(cause != null ? cause.getMessage() : null));
+        try {
+            advance(saga, compensated ? SagaState.COMPENSATED : SagaState.FAILED);
+        } catch (Exception e) {
+            logger.warn("Could not record the outcome of registration {}: {}", saga.getId(), e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        recoverInterruptedSagas();
+    }
+
+    @Scheduled(fixedDelayString = "${registration.saga.sweep-interval-ms:60000}",
+            initialDelayString = "${registration.saga.sweep-interval-ms:60000}")
+    public void recoverInterruptedSagas() {
+        List<RegistrationSagaEntity> interrupted;
+        try {
+            interrupted = registrationSagaRepository.findByStateInAndUpdatedAtBefore(
+                    UNFINISHED_STATES, LocalDateTime.now().minus(staleAfter()));
+        } catch (Exception e) {
+            logger.warn("Could not load interrupted registrations: {}", e.getMessage());
+            return;
+        }
+
+        for (RegistrationSagaEntity saga : interrupted) {
+            if (!claim(saga)) {
+                continue;
+            }
+            try {
+                recover(saga);
+            } catch (Exception e) {
+                logger.error("Failed to recover registration {} for user {}: {}",
+                        saga.getId(), saga.getUsername(), e.getMessage());
+            }
+        }
+    }
+
+    private void recover(RegistrationSagaEntity saga) throws Exception {
+        logger.info("Recovering registration {} for user {} from state {}", saga.getId(), saga.getUsername(), saga.getState());
+        Optional<UserEntity> storedUser = userDataAccessService.findUserById(saga.getUserId())
+                .filter(user -> user.getUsername().equals(saga.getUsername()));
+
+        switch (saga.getState()) {
+            case STARTED -> {
+                // The Keycloak id is only known once the create call returned; the user is tagged with the saga id
+                // so that only a user created by this registration can be found and removed
+                saga.setKeycloakUserId(keycloakService.findUserIdByRegistration(saga.getUsername(), saga.getId()));
+                compensate(saga, null);
+            }
+            case KEYCLOAK_USER_CREATED -> {
+                if (storedUser.isPresent()) {
+                    advance(saga, SagaState.USER_STORED);
+                    resumeEventPublication(saga, storedUser.get());
+                } else {
+                    compensate(saga, null);
+                }
+            }
+            case USER_STORED -> {
+                if (storedUser.isPresent()) {
+                    resumeEventPublication(saga, storedUser.get());
+                } else {
+                    compensate(saga, null);
+                }
+            }
+            default -> logger.debug("Registration {} is already finished", saga.getId());
+        }
+    }
+
+    private void resumeEventPublication(RegistrationSagaEntity saga, UserEntity userEntity) throws Exception {
+        UserRegisteredEvent event = new UserRegisteredEvent(
+                userEntity.getId(),
+                userEntity.getUsername(),
+                userEntity.getFirstName(),
+                userEntity.getLastName(),
+                userEntity.getEmail(),
+                userEntity.getAddress(),
+                userEntity.getPhoneNumber(),
+                userEntity.getBirthDate() != null ? userEntity.getBirthDate().toString() : null
+        );
+        kafkaProducerService.sendMessage(event).get(authTimeout, TimeUnit.MILLISECONDS);
+        advance(saga, SagaState.COMPLETED);
+        logger.info("Registration {} for user {} resumed and completed", saga.getId(), saga.getUsername());
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.mhm.bank.service;
+
+import java.util.Arrays;
+
+/**
+ * Durations of the stages of the current request, reported in the {@code Server-Timing} header when
+ * {@code server-timing.enabled} is set. Recording is only active between {@link #begin()} and {@link #finish()}
+ * on the request thread; everywhere else {@link #start()} returns 0 and {@link #stop} returns at once, so the
+ * calls can stay in the code paths at the cost of a thread-local lookup. Each thread reuses one recorder, so an
+ * active request allocates nothing but its header.
+ */
+public final class ServerTiming {
+
+    public enum Stage {
+        ADMIN_TOKEN("admin-token"),
+        UNIQUENESS_CHECK("uniqueness-check"),
+        SAGA("saga"),
+        KEYCLOAK_CREATE("keycloak-create"),
+        PASSWORD_SET("password-set"),
+        ROLE_ASSIGN("role-assign"),
+        DB_INSERT("db-insert"),
+        KAFKA_ACK("kafka-ack"),
+        TOKEN_GRANT("token-grant"),
+        TOKEN_REFRESH("token-refresh");
+
+        private final String metricName;
+
+        Stage(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    public static final String HEADER = "Server-Timing";
+    private static final Stage[] STAGES = Stage.values();
+    private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+    private final long[] nanos = new long[STAGES.length];
+    private final StringBuilder header = new StringBuilder(256);
+    private boolean active;
+    private long beganAt;
+
+    private ServerTiming() {
+    }
+
+    /**
+     * Starts recording the stages of the request handled by the current thread.
+     */
+    public static void begin() {
+        ServerTiming timing = CURRENT.get();
+        if (timing == null) {
+            timing = new ServerTiming();
+            CURRENT.set(timing);
+        }
+        Arrays.fill(timing.nanos, 0);
+        timing.active = true;
+        timing.beganAt = System.nanoTime();
+    }
+
+    /**
+     * Returns the start of a stage to pass to {@link #stop}, or 0 if nothing is being recorded.
+     */
+    public static long start() {
+        ServerTiming timing = CURRENT.get();
+        return timing != null && timing.active ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since {@code startNanos} to the stage; a stage that runs more than once is reported as its sum.
+     */
+    public static void stop(Stage stage, long startNanos) {
+        if (startNanos == 0) {
+            return;
+        }
+        ServerTiming timing = CURRENT.get();
+        if (timing != null && timing.active) {
+            timing.nanos[stage.ordinal()] += System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Stops recording and returns the header value, e.g. {@code admin-token;dur=3.120, total;dur=41.007} in
+     * milliseconds, or null if recording was not active.
+     */
+    public static String finish() {
+        ServerTiming timing = CURRENT.get();
+        if (timing == null || !timing.active) {
+            return null;
+        }
+        timing.active = false;
+        long total = System.nanoTime() - timing.beganAt;
+        StringBuilder header = timing.header;
+        header.setLength(0);
+        for (Stage stage : STAGES) {
+            long stageNanos = timing.nanos[stage.ordinal()];
+            if (stageNanos > 0) {
+                appendMetric(header, stage.metricName, stageNanos).append(", ");
+            }
+        }
+        return appendMetric(header, "total", total).toString();
+    }
+
+    private static StringBuilder appendMetric(StringBuilder header, String name, long nanos) {
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        header.append(name).append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) {
+            header.append('0');
+        }
+        if (fraction < 10) {
+            header.append('0');
+        }
+        return header.append(fraction);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.mhm.bank.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed-size sliding window event counter over strings. Keys are hashed into two distinct cells of a
+ * count-min table, so memory does not grow with the number of keys; a collision can only overestimate.
+ * Each cell packs the window number with the counts of the current and the previous window, and the
+ * estimate weights the previous window by how much of it still overlaps the sliding window.
+ */
+public final class SlidingWindowCounter {
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int WINDOW_SHIFT = 2 * COUNT_BITS;
+    private static final long WINDOW_MASK = (1L << (Long.SIZE - WINDOW_SHIFT)) - 1;
+    private static final long ONE_CURRENT = 1L << COUNT_BITS;
+
+    private final AtomicLongArray cells;
+    private final long windowMillis;
+
+    public SlidingWindowCounter(int cellCount, Duration window) {
+        this.cells = new AtomicLongArray(Math.max(2, cellCount));
+        this.windowMillis = Math.max(1, window.toMillis());
+    }
+
+    /**
+     * Records one event for the key and returns the estimated number of events in the last window, including it.
+     */
+    public long increment(String key) {
+        return increment(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the estimated number of events recorded for the key in the last window.
+     */
+    public long estimate(String key) {
+        return estimate(key, System.currentTimeMillis());
+    }
+
+    long increment(String key, long nowMillis) {
+        long window = nowMillis / windowMillis;
+        double previousWeight = previousWeight(nowMillis);
+        long hash1 = BloomFilter.hash(key);
+        int index1 = index(hash1);
+        int index2 = secondIndex(index1, hash1);
+        return Math.min(count(incrementCell(index1, window), previousWeight),
+                count(incrementCell(index2, window), previousWeight));
+    }
+
+    long estimate(String key, long nowMillis) {
+        long window = nowMillis / windowMillis;
+        double previousWeight = previousWeight(nowMillis);
+        long hash1 = BloomFilter.hash(key);
+        int index1 = index(hash1);
+        int index2 = secondIndex(index1, hash1);
+        return Math.min(count(roll(cells.get(index1), window), previousWeight),
+                count(roll(cells.get(index2), window), previousWeight));
+    }
+
+    private long incrementCell(int index, long window) {
+        long cell;
+        long next;
+        do {
+            cell = cells.get(index);
+            next = roll(cell, window);
+            if (((next >>> COUNT_BITS) & COUNT_MASK) < COUNT_MASK) {
+                next += ONE_CURRENT;
+            }
+        } while (!cells.compareAndSet(index, cell, next));
+        return next;
+    }
+
+    /** Moves the cell to the given window; the current count becomes the previous one if the windows are adjacent. */
+    private static long roll(long cell, long window) {
+        long cellWindow = cell >>> WINDOW_SHIFT;
+        long currentWindow = window & WINDOW_MASK;
+        if (cellWindow == currentWindow) {
+            return cell;
+        }
+        long previousCount = cellWindow == ((currentWindow - 1) & WINDOW_MASK) ? (cell >>> COUNT_BITS) & COUNT_MASK : 0;
+        return (currentWindow << WINDOW_SHIFT) | previousCount;
+    }
+
+    private static long count(long cell, double previousWeight) {
+        long current = (cell >>> COUNT_BITS) & COUNT_MASK;
+        long previous = cell & COUNT_MASK;
+        return current + (long) (previous * previousWeight);
+    }
+
+    private double previousWeight(long nowMillis) {
+        return 1.0 - (double) (nowMillis % windowMillis) / windowMillis;
+    }
+
+    private int index(long hash) {
+        return (int) Math.floorMod(hash, (long) cells.length());
+    }
+
+    /**
+     * A second cell that is never the first one, so that an event is never counted twice in the same cell.
+     */
+    private int secondIndex(int index1, long hash1) {
+        long hash2 = BloomFilter.mix(hash1 ^ 0x9E3779B97F4A7C15L);
+        int cellCount = cells.length();
+        return (int) ((index1 + 1 + Math.floorMod(hash2, (long) cellCount - 1)) % cellCount);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.config.TokenProvider;
+import com.mhm.bank.controller.dto.TokenIntrospection;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Introspects access tokens in-process: the signature is checked against the cached Keycloak keys and the
+ * claims are read from the token itself, so resource servers can ask us instead of calling Keycloak's
+ * introspection endpoint for every request.
+ */
+@Service
+public class TokenIntrospectionService {
+    private static final Logger logger = LoggerFactory.getLogger(TokenIntrospectionService.class);
+
+    private final TokenProvider tokenProvider;
+
+    public TokenIntrospectionService(TokenProvider tokenProvider) {
+        this.tokenProvider = tokenProvider;
+    }
+
+    public TokenIntrospection introspect(String token) {
+        if (token == null || token.isBlank()) {
+            return TokenIntrospection.inactive();
+        }
+        JWTClaimsSet claims = tokenProvider.verifyToken(token);
+        if (claims == null) {
+            return TokenIntrospection.inactive();
+        }
+        try {
+            return new TokenIntrospection(true,
+                    claims.getSubject(),
+                    claims.getStringClaim("preferred_username"),
+                    realmRoles(claims),
+                    claims.getExpirationTime().getTime() / 1000);
+        } catch (ParseException e) {
+            logger.warn("Token has malformed claims: {}", e.getMessage());
+            return TokenIntrospection.inactive();
+        }
+    }
+
+    /**
+     * Introspects every token, in order. A token repeated in the batch is verified only once.
+     */
+    public List<TokenIntrospection> introspect(List<String> tokens) {
+        Map<String, TokenIntrospection> verified = new HashMap<>();
+        List<TokenIntrospection> results = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            results.add(token == null ? TokenIntrospection.inactive() : verified.computeIfAbsent(token, this::introspect));
+        }
+        logger.debug("Introspected {} tokens ({} distinct)", tokens.size(), verified.size());
+        return results;
+    }
+
+    private static List<String> realmRoles(JWTClaimsSet claims) throws ParseException {
+        Map<String, Object> realmAccess = claims.getJSONObjectClaim("realm_access");
+        if (realmAccess == null || !(realmAccess.get("roles") instanceof List<?> roles)) {
+            return List.of();
+        }
+        return roles.stream().map(String::valueOf).toList();
+    }
+
+}
@@ -6,47 +6,102 @@ import com.mhm.bank.controller.validators.EmailValidator;
 import com.mhm.bank.exception.UserAlreadyExistsException;
 import com.mhm.bank.repository.UserRepository;
 import com.mhm.bank.repository.entity.UserEntity;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.ConstraintViolationException.ConstraintKind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+
+/**
+ * Access to the {@code users} table. The registration pre-check skips the queries the {@link UserExistenceFilter}
+ * rules out, since the unique constraints of the table catch whatever the filter of this instance has not seen
+ * yet (users registered through another instance since its last rebuild); answers given to clients, such as
+ * availability, always come from the database.
+ */
 @Service
 public class UserDataAccessService {
     private static final Logger logger = LoggerFactory.getLogger(UserDataAccessService.class);
 
     private final UserRepository userRepository;
+    private final UserExistenceFilter userExistenceFilter;
 
-    public UserDataAccessService(UserRepository userRepository) {
+    public UserDataAccessService(UserRepository userRepository, UserExistenceFilter userExistenceFilter) {
         this.userRepository = userRepository;
+        this.userExistenceFilter = userExistenceFilter;
     }
 
     public void doesUserExistInDataBase(UserInformation userInformation) throws UserAlreadyExistsException {
         String id = userInformation.idCard();
-        if (userRepository.existsById(id)) {
+        if (userExistenceFilter.mightContainId(id) && userRepository.existsById(id)) {
             logger.error("User with ID {} already exists", id);
             throw new UserAlreadyExistsException("User with ID "+id+" already exists");
         }
 
         String username = userInformation.username();
-        if (userRepository.existsByUsername(username)) {
+        if (userExistenceFilter.mightContainUsername(username) && userRepository.existsByUsername(username)) {
             logger.error("Username {} is already taken", username);
             throw new UserAlreadyExistsException("Username "+username+" is already taken");
         }
 
         String email = userInformation.email();
-        if (userRepository.existsByEmail(email)) {
+        if (userExistenceFilter.mightContainEmail(email) && userRepository.existsByEmail(email)) {
             logger.error("Email {} is already taken", email);
             throw new UserAlreadyExistsException("Email "+email+" is already taken");
         }
     }
 
-    public UserEntity sendUserToDataBase(UserInformation userInformation) {
+    public boolean isUsernameAvailable(String username) {
+        return !userRepository.existsByUsername(username);
+    }
+
+    public boolean isEmailAvailable(String email) {
+        return !userRepository.existsByEmail(email);
+    }
+
+    public UserEntity sendUserToDataBase(UserInformation userInformation) throws UserAlreadyExistsException {
         UserEntity userEntity = getUserEntity(userInformation);
-        userRepository.save(userEntity);
+        try {
+            userRepository.saveAndFlush(userEntity);
+        } catch (DataIntegrityViolationException e) {
+            if (!isUniqueViolation(e)) {
+                throw e;
+            }
+            // Taken by a user the filter had not seen; one of the three values is, the others only cost a query
+            userExistenceFilter.add(userEntity.getId(), userEntity.getUsername(), userEntity.getEmail());
+            logger.error("User with ID {}, username {} or email {} already exists", userEntity.getId(),
+                    userEntity.getUsername(), userEntity.getEmail());
+            throw new UserAlreadyExistsException("User with ID " + userEntity.getId() + ", username "
+                    + userEntity.getUsername() + " or email " + userEntity.getEmail() + " already exists");
+        }
+        userExistenceFilter.add(userEntity.getId(), userEntity.getUsername(), userEntity.getEmail());
         return userEntity;
     }
 
-    private UserEntity getUserEntity(UserInformation userInformation) {
+    /**
+     * Whether the violation is a unique or primary key conflict, rather than, say, a value too long or a missing one.
+     */
+    static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                return violation.getKind() == ConstraintKind.UNIQUE;
+            }
+        }
+        return false;
+    }
+
+    public void removeUserFromDataBase(String id) {
+        userRepository.deleteById(id);
+        logger.info("User with ID {} removed from the database", id);
+    }
+
+    public Optional<UserEntity> findUserById(String id) {
+        return userRepository.findById(id);
+    }
+
+    UserEntity getUserEntity(UserInformation userInformation) {
         UserEntity userEntity = new UserEntity();
         userEntity.setId(userInformation.idCard());
         userEntity.setUsername(userInformation.username());
@@ -59,7 +114,7 @@ public class UserDataAccessService {
         return userEntity;
     }
 
-    private UserData getUserData(UserEntity userEntity) {
+    UserData getUserData(UserEntity userEntity) {
         UserData userdata = new UserData();
         userdata.setIdCard(userEntity.getId());
         userdata.setUsername(userEntity.getUsername());
@@ -0,0 +1,127 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.repository.UserRepository;
+import com.mhm.bank.repository.UserRepository.UserKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.stream.Stream;
+
+/**
+ * In-memory Bloom filter of the ids, usernames and emails stored in the {@code users} table.
+ * A negative answer means the value is definitely not taken, so the database lookup can be skipped;
+ * a positive answer must be confirmed by the database. Until the first load finishes every lookup
+ * answers "might contain". The filter is rebuilt periodically to pick up users inserted by other
+ * instances and to drop removed ones; until then a negative answer may be wrong for those, so it is only
+ * trusted where the unique constraints of the table back it up (see {@link UserDataAccessService}).
+ */
+@Component
+public class UserExistenceFilter {
+    private static final Logger logger = LoggerFactory.getLogger(UserExistenceFilter.class);
+    private static final String ID_PREFIX = "id:";
+    private static final String USERNAME_PREFIX = "username:";
+    private static final String EMAIL_PREFIX = "email:";
+    private static final int KEYS_PER_USER = 3;
+
+    @Value("${registration.bloom.expected-users:1000000}")
+    private long expectedUsers;
+    @Value("${registration.bloom.false-positive-probability:0.01}")
+    private double falsePositiveProbability;
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    // Guards the swap of the filters, so that a user added during a rebuild lands in the filter that stays
+    private final Object swapLock = new Object();
+    private volatile BloomFilter filter;
+    private BloomFilter rebuilding;
+
+    public UserExistenceFilter(UserRepository userRepository, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${registration.bloom.rebuild-interval-ms:3600000}",
+            initialDelayString = "${registration.bloom.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        long start = System.nanoTime();
+        BloomFilter fresh = new BloomFilter(expectedUsers * KEYS_PER_USER, falsePositiveProbability);
+        // Users inserted while the table is streamed are added to both filters
+        synchronized (swapLock) {
+            rebuilding = fresh;
+        }
+        try {
+            Long loaded = readOnlyTransaction.execute(status -> {
+                try (Stream<UserKeys> keys = userRepository.streamAllKeys()) {
+                    return keys.mapToLong(user -> {
+                        put(fresh, user.getId(), user.getUsername(), user.getEmail());
+                        return 1;
+                    }).sum();
+                }
+            });
+            synchronized (swapLock) {
+                filter = fresh;
+                rebuilding = null;
+            }
+            logger.info("User existence filter loaded with {} users in {} ms", loaded, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.warn("Could not load the user existence filter, lookups fall through to the database: {}", e.getMessage());
+            synchronized (swapLock) {
+                rebuilding = null;
+            }
+        }
+    }
+
+    public void add(String id, String username, String email) {
+        synchronized (swapLock) {
+            if (filter != null) {
+                put(filter, id, username, email);
+            }
+            if (rebuilding != null) {
+                put(rebuilding, id, username, email);
+            }
+        }
+    }
+
+    public boolean mightContainId(String id) {
+        return mightContain(ID_PREFIX, id);
+    }
+
+    public boolean mightContainUsername(String username) {
+        return mightContain(USERNAME_PREFIX, username);
+    }
+
+    public boolean mightContainEmail(String email) {
+        return mightContain(EMAIL_PREFIX, email);
+    }
+
+    private boolean mightContain(String prefix, String value) {
+        BloomFilter current = filter;
+        return current == null || value == null || current.mightContain(prefix + value);
+    }
+
+    private static void put(BloomFilter target, String id, String username, String email) {
+        if (id != null) {
+            target.put(ID_PREFIX + id);
+        }
+        if (username != null) {
+            target.put(USERNAME_PREFIX + username);
+        }
+        if (email != null) {
+            target.put(EMAIL_PREFIX + email);
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+package com.mhm.bank.service.audit;
+
+import com.mhm.bank.config.FastJwtReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Audit trail of registrations, logins and refreshes, kept out of the application log. The request thread only
+ * puts a small record on a lock-free queue; a background thread drains it in batches into
+ * {@code audit.file.path}, one tab-separated line per event: time, event, outcome, username, client IP and the
+ * reason of a failure ({@code -} when unknown). The outcome is {@code SUCCESS}, {@code FAILURE} or, for a refresh
+ * answered with the session's still valid access token, {@code CACHED}. Failures are always kept, the others are
+ * sampled at {@code audit.success-sample-rate}. When the queue is full the record is dropped and counted, the
+ * request never waits for the file.
+ *
+ * <p>Once the file would grow past {@code audit.file.max-bytes} it is renamed with the time it was rolled as a
+ * suffix ({@code auth-audit.log.20261019T143000123Z}) and a new one is started; only the newest
+ * {@code audit.file.max-history} rolled files are kept.
+ */
+@Component
+public class AuthAuditLog {
+    private static final Logger logger = LoggerFactory.getLogger(AuthAuditLog.class);
+
+    static final String RECORDS = "auth.audit.records";
+    private static final int MAX_FIELD_LENGTH = 128;
+    private static final DateTimeFormatter ROLLED_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'").withZone(ZoneOffset.UTC);
+
+    public enum Event { REGISTER, LOGIN, REFRESH }
+
+    enum Outcome { SUCCESS, FAILURE, CACHED }
+
+    record AuditRecord(long timestampMillis, Event event, Outcome outcome, String username, String clientIp,
+                       String reason) {
+    }
+
+    private final boolean enabled;
+    private final double successSampleRate;
+    private final int queueCapacity;
+    private final Queue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final StringBuilder line = new StringBuilder(256);
+    private final Counter written;
+    private final Counter dropped;
+    private final Path filePath;
+    private final int regionBytes;
+    private final long maxFileBytes;
+    private final int maxHistory;
+    private MappedAppendFile file;
+    private long lastRolledAt;
+    private final ScheduledExecutorService writer;
+
+    public AuthAuditLog(@Value("${audit.enabled:false}") boolean enabled,
+                        @Value("${audit.file.path:auth-audit.log}") String filePath,
+                        @Value("${audit.file.region-bytes:1048576}") int regionBytes,
+                        @Value("${audit.file.max-bytes:104857600}") long maxFileBytes,
+                        @Value("${audit.file.max-history:10}") int maxHistory,
+                        @Value("${audit.queue-capacity:65536}") int queueCapacity,
+                        @Value("${audit.success-sample-rate:1.0}") double successSampleRate,
+                        @Value("${audit.flush-interval-ms:200}") long flushIntervalMs,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.successSampleRate = successSampleRate;
+        this.queueCapacity = queueCapacity;
+        this.written = meterRegistry.counter(RECORDS, "outcome", "written");
+        this.dropped = meterRegistry.counter(RECORDS, "outcome", "dropped");
+        this.regionBytes = regionBytes;
+        this.maxFileBytes = maxFileBytes;
+        this.maxHistory = maxHistory;
+        if (!enabled) {
+            this.filePath = null;
+            this.writer = null;
+            return;
+        }
+        this.filePath = Path.of(filePath);
+        try {
+            this.file = new MappedAppendFile(this.filePath, regionBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open audit file " + filePath, e);
+        }
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "auth-audit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Writing auth audit records to {}, sampling {} of successes", filePath, successSampleRate);
+    }
+
+    public void success(Event event, String username, String clientIp) {
+        sampled(event, Outcome.SUCCESS, username, clientIp);
+    }
+
+    /**
+     * Records a request answered without calling Keycloak, such as a refresh served from the session vault.
+     */
+    public void cached(Event event, String username, String clientIp) {
+        sampled(event, Outcome.CACHED, username, clientIp);
+    }
+
+    public void failure(Event event, String username, String clientIp, String reason) {
+        if (enabled) {
+            enqueue(new AuditRecord(System.currentTimeMillis(), event, Outcome.FAILURE, username, clientIp, reason));
+        }
+    }
+
+    /**
+     * The {@code preferred_username} of an access token Keycloak issued, or null. The token is not verified: use
+     * it only to name the user of a refresh in the audit trail.
+     */
+    public static String usernameOf(String accessToken) {
+        FastJwtReader.Claims claims = FastJwtReader.read(accessToken);
+        return claims != null ? claims.username() : null;
+    }
+
+    private void sampled(Event event, Outcome outcome, String username, String clientIp) {
+        if (enabled && (successSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < successSampleRate)) {
+            enqueue(new AuditRecord(System.currentTimeMillis(), event, outcome, username, clientIp, null));
+        }
+    }
+
+    private void enqueue(AuditRecord auditRecord) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(auditRecord);
+    }
+
+    /**
+     * Writes every queued record to the file as one batch.
+     */
+    synchronized void flush() {
+        if (file == null || queue.isEmpty()) {
+            return;
+        }
+        line.setLength(0);
+        int count = 0;
+        AuditRecord auditRecord;
+        while ((auditRecord = queue.poll()) != null) {
+            queued.decrementAndGet();
+            append(auditRecord);
+            count++;
+        }
+        try {
+            byte[] batch = line.toString().getBytes(StandardCharsets.UTF_8);
+            if (maxFileBytes > 0 && file.size() > 0 && file.size() + batch.length > maxFileBytes) {
+                try {
+                    roll();
+                } catch (IOException e) {
+                    logger.error("Failed to roll audit file: {}", e.getMessage());
+                }
+            }
+            file.append(batch);
+            written.increment(count);
+        } catch (IOException | RuntimeException e) {
+            dropped.increment(count);
+            logger.error("Failed to write {} audit records: {}", count, e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the file, renames it with the current time as a suffix, starts a new one and deletes the oldest
+     * rolled files beyond {@code maxHistory}.
+     */
+    private void roll() throws IOException {
+        // one millisecond after the previous roll at the earliest, and after any file already there, so that names
+        // are unique and sort in the order the files were rolled
+        long rolledAt = Math.max(System.currentTimeMillis(), lastRolledAt + 1);
+        Path rolled = rolledPath(rolledAt);
+        while (Files.exists(rolled)) {
+            rolled = rolledPath(++rolledAt);
+        }
+        lastRolledAt = rolledAt;
+        file.close();
+        try {
+            Files.move(filePath, rolled);
+        } finally {
+            // keep writing, to the same file if it could not be moved
+            file = new MappedAppendFile(filePath, regionBytes);
+        }
+        logger.info("Rolled audit file to {}", rolled);
+
+        String rolledPrefix = filePath.getFileName() + ".";
+        List<Path> rolledFiles = new ArrayList<>();
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(filePath.toAbsolutePath().getParent(),
+                sibling -> sibling.getFileName().toString().startsWith(rolledPrefix))) {
+            siblings.forEach(rolledFiles::add);
+        }
+        Collections.sort(rolledFiles);
+        for (int i = 0; i < rolledFiles.size() - maxHistory; i++) {
+            Files.deleteIfExists(rolledFiles.get(i));
+        }
+    }
+
+    private Path rolledPath(long rolledAt) {
+        return filePath.resolveSibling(filePath.getFileName() + "."
+                + ROLLED_SUFFIX.format(Instant.ofEpochMilli(rolledAt)));
+    }
+
+    private void append(AuditRecord auditRecord) {
+        line.append(Instant.ofEpochMilli(auditRecord.timestampMillis())).append('\t')
+                .append(auditRecord.event()).append('\t')
+                .append(auditRecord.outcome()).append('\t');
+        appendField(auditRecord.username());
+        line.append('\t');
+        appendField(auditRecord.clientIp());
+        line.append('\t');
+        appendField(auditRecord.reason());
+        line.append('\n');
+    }
+
+    private void appendField(String value) {
+        if (value == null || value.isEmpty()) {
+            line.append('-');
+            return;
+        }
+        int length = Math.min(value.length(), MAX_FIELD_LENGTH);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            // A username is user input: it must not be able to forge fields or lines
+            line.append(Character.isISOControl(c) ? ' ' : c);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.error("Failed to close audit file: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.mhm.bank.service.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file written through a memory-mapped region that is moved forward when full, so an append is a
+ * copy into the page cache rather than a system call. Appends survive a crash of the process once they are
+ * copied; {@link #close} forces them to disk and cuts off the unused tail of the region. A file left with such
+ * a zero-filled tail by a crash is continued after its last written byte.
+ *
+ * <p>Not thread-safe: it has a single writer.
+ */
+final class MappedAppendFile implements Closeable {
+
+    private static final int SCAN_CHUNK_BYTES = 4096;
+
+    private final FileChannel channel;
+    private final int regionBytes;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    MappedAppendFile(Path file, int regionBytes) throws IOException {
+        this.regionBytes = regionBytes;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(endOfData());
+    }
+
+    void append(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!region.hasRemaining()) {
+                map(regionStart + region.position());
+            }
+            int length = Math.min(region.remaining(), bytes.length - offset);
+            region.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    long size() {
+        return regionStart + region.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        long size = size();
+        region.force();
+        region = null;
+        channel.truncate(size);
+        channel.close();
+    }
+
+    private void map(long position) throws IOException {
+        if (region != null) {
+            region.force();
+        }
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, regionBytes);
+    }
+
+    private long endOfData() throws IOException {
+        long end = channel.size();
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK_BYTES);
+        while (end > 0) {
+            long start = Math.max(0, end - SCAN_CHUNK_BYTES);
+            chunk.clear().limit((int) (end - start));
+            while (chunk.hasRemaining() && channel.read(chunk, start + chunk.position()) >= 0) {
+                // read the whole chunk
+            }
+            for (int i = chunk.position() - 1; i >= 0; i--) {
+                if (chunk.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.mhm.bank.service.external;
 
 import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,23 +13,40 @@ import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class KafkaProducerService {
     private static final Logger logger = LoggerFactory.getLogger(KafkaProducerService.class);
+
+    static final String SEND_TIMER = "auth.kafka.producer.send";
+    static final String SEND_ERRORS = "auth.kafka.producer.errors";
+
+    /** Milliseconds to wait for the acknowledgement of a send. */
     @Value("${kafka.producer.service.timeout}")
-    private int serviceTimeout;
+    private long serviceTimeout;
     @Value("${spring.kafka.producer.topic.name}")
     private String topic;
 
     private final KafkaTemplate<String, UserRegisteredEvent> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
 
-    public KafkaProducerService(KafkaTemplate<String, UserRegisteredEvent> kafkaTemplate) {
+    public KafkaProducerService(KafkaTemplate<String, UserRegisteredEvent> kafkaTemplate, MeterRegistry meterRegistry) {
         this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
         logger.info("KafkaProducerService initialized with topic: {}", topic);
     }
 
+    /**
+     * Creates the producer and fetches the metadata of the topic, which the first send would otherwise wait for
+     * (up to max.block.ms).
+     */
+    public void warmUp() {
+        int partitions = kafkaTemplate.partitionsFor(topic).size();
+        logger.debug("Kafka producer connected, topic {} has {} partitions", topic, partitions);
+    }
+
     public CompletableFuture<SendResult<String, UserRegisteredEvent>> sendMessage(UserRegisteredEvent event) {
         logger.debug("Attempting to send message for user: {}", event != null ? event.username() : "null");
 
@@ -35,14 +55,33 @@ public class KafkaProducerService {
             throw new IllegalArgumentException("Event or userId cannot be null");
         }
 
-        logger.info("Sending message to topic {} for user: {}", topic, event.username());
-        return kafkaTemplate.send(topic, event.userId(), event)
-                .orTimeout(serviceTimeout, TimeUnit.SECONDS)
+        logger.debug("Sending message to topic {} for user: {}", topic, event.username());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<SendResult<String, UserRegisteredEvent>> sent;
+        try {
+            sent = kafkaTemplate.send(topic, event.userId(), event);
+        } catch (RuntimeException e) {
+            // send() blocks up to max.block.ms on metadata or a full buffer before failing synchronously
+            recordFailure(sample, e);
+            throw e;
+        }
+
+        return sent
+                .orTimeout(serviceTimeout, TimeUnit.MILLISECONDS)
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        sample.stop(sendTimer("success"));
+                    } else {
+                        recordFailure(sample, throwable);
+                    }
+                })
                 .thenApply(result -> {
-                    logger.info("Message sent successfully to topic: {}, partition: {}, offset: {}",
-                            topic,
-                            result.getRecordMetadata().partition(),
-                            result.getRecordMetadata().offset());
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Message sent successfully to topic: {}, partition: {}, offset: {}",
+                                topic,
+                                result.getRecordMetadata().partition(),
+                                result.getRecordMetadata().offset());
+                    }
                     return result;
                 })
                 .exceptionally(throwable -> {
@@ -53,5 +92,26 @@ public class KafkaProducerService {
                 });
     }
 
+    private void recordFailure(Timer.Sample sample, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        sample.stop(sendTimer("failure"));
+        Counter.builder(SEND_ERRORS)
+                .description("Kafka sends that did not get an acknowledgement, by failure cause")
+                .tag("topic", topic)
+                .tag("cause", cause.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private Timer sendTimer(String outcome) {
+        return Timer.builder(SEND_TIMER)
+                .description("Time from enqueueing a record in the producer until the broker acknowledges it")
+                .tag("topic", topic)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
 }
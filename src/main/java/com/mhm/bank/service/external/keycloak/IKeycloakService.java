@@ -8,11 +8,24 @@ import com.mhm.bank.exception.KeycloakException;
 
 public interface IKeycloakService {
 
-    boolean createUser(UserKCDto userDto, String authToken) throws KeycloakException;
+    /**
+     * @return the Keycloak id of the created user
+     */
+    String createUser(UserKCDto userDto, String authToken) throws KeycloakException;
 
     void deleteUser(String usernameAfterKC) throws KeycloakException;
 
-    TokensUser loginUser(LoginRequest loginRequest, String token) throws KeycloakException;
+    void deleteUserById(String userId) throws KeycloakException;
+
+    /**
+     * @return the Keycloak id of the user created by the given registration, or null if there is none
+     */
+    String findUserIdByRegistration(String username, String registrationId) throws KeycloakException;
+
+    /**
+     * Authenticates the user with a password grant; no admin token is involved.
+     */
+    TokensUser loginUser(LoginRequest loginRequest) throws KeycloakException;
 
     String getTokenAdminAppAuth () throws KeycloakException;
 
@@ -0,0 +1,143 @@
+package com.mhm.bank.service.external.keycloak;
+
+import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.KeycloakUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.ServerErrorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards every call to Keycloak with a bulkhead per kind of operation and a shared circuit breaker.
+ * A bulkhead caps how many request threads can wait on Keycloak at once, so a slow Keycloak cannot take
+ * every Tomcat thread; the circuit breaker fails fast while Keycloak is down and lets a few probe calls
+ * through once the wait in the open state is over. Rejected calls throw {@link KeycloakUnavailableException}.
+ */
+@Component
+public class KeycloakResilience {
+    private static final Logger logger = LoggerFactory.getLogger(KeycloakResilience.class);
+
+    public enum Operation {
+        ADMIN, LOGIN, REFRESH
+    }
+
+    @FunctionalInterface
+    public interface KeycloakCall<T> {
+        T execute() throws KeycloakException;
+    }
+
+    private final CircuitBreaker circuitBreaker;
+    private final Map<Operation, Bulkhead> bulkheads = new EnumMap<>(Operation.class);
+    private final long openStateRetryAfterSeconds;
+
+    public KeycloakResilience(@Value("${keycloak.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+                              @Value("${keycloak.resilience.slow-call-threshold-ms:3000}") long slowCallThresholdMs,
+                              @Value("${keycloak.resilience.sliding-window-size:20}") int slidingWindowSize,
+                              @Value("${keycloak.resilience.minimum-calls:10}") int minimumCalls,
+                              @Value("${keycloak.resilience.wait-in-open-sec:30}") long waitInOpenSeconds,
+                              @Value("${keycloak.resilience.half-open-calls:3}") int halfOpenCalls,
+                              @Value("${keycloak.resilience.bulkhead.admin:10}") int adminConcurrency,
+                              @Value("${keycloak.resilience.bulkhead.login:40}") int loginConcurrency,
+                              @Value("${keycloak.resilience.bulkhead.refresh:20}") int refreshConcurrency,
+                              @Value("${keycloak.resilience.bulkhead.max-wait-ms:50}") long bulkheadMaxWaitMs,
+                              MeterRegistry meterRegistry) {
+        this.openStateRetryAfterSeconds = waitInOpenSeconds;
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallThresholdMs))
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(Duration.ofSeconds(waitInOpenSeconds))
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .automaticTransitionFromOpenToHalfOpenEnabled(false)
+                // Rejected credentials or unknown users are answers from a healthy Keycloak, not failures
+                .recordException(KeycloakResilience::isKeycloakFailure)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("keycloak");
+        this.circuitBreaker.getEventPublisher().onStateTransition(event ->
+                logger.warn("Keycloak circuit breaker: {}", event.getStateTransition()));
+
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        Map<Operation, Integer> concurrency = Map.of(
+                Operation.ADMIN, adminConcurrency,
+                Operation.LOGIN, loginConcurrency,
+                Operation.REFRESH, refreshConcurrency);
+        for (Operation operation : Operation.values()) {
+            bulkheads.put(operation, bulkheadRegistry.bulkhead("keycloak-" + operation.name().toLowerCase(),
+                    BulkheadConfig.custom()
+                            .maxConcurrentCalls(concurrency.get(operation))
+                            .maxWaitDuration(Duration.ofMillis(bulkheadMaxWaitMs))
+                            .build()));
+        }
+
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+    }
+
+    public <T> T execute(Operation operation, KeycloakCall<T> call) throws KeycloakException {
+        Bulkhead bulkhead = bulkheads.get(operation);
+        if (!bulkhead.tryAcquirePermission()) {
+            logger.warn("Too many concurrent Keycloak {} calls, rejecting", operation);
+            throw new KeycloakUnavailableException("Keycloak is busy, please try again later", 1);
+        }
+        try {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                logger.debug("Keycloak circuit breaker is {}, rejecting {} call", circuitBreaker.getState(), operation);
+                throw new KeycloakUnavailableException("Keycloak is unavailable, please try again later",
+                        openStateRetryAfterSeconds);
+            }
+            long start = System.nanoTime();
+            try {
+                T result = call.execute();
+                circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (Throwable e) {
+                circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                throw e;
+            }
+        } finally {
+            bulkhead.onComplete();
+        }
+    }
+
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * True for errors that mean Keycloak could not answer: connection failures, timeouts and 5xx responses.
+     */
+    public static boolean isKeycloakFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ResourceAccessException
+                    || cause instanceof HttpServerErrorException
+                    || cause instanceof ProcessingException
+                    || cause instanceof ServerErrorException
+                    || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -1,12 +1,20 @@
 package com.mhm.bank.service.external.keycloak.impl;
 
+import com.mhm.bank.config.DependencyTimer;
 import com.mhm.bank.config.KeycloakProvider;
 import com.mhm.bank.config.TokenProvider;
 import com.mhm.bank.controller.dto.LoginRequest;
 import com.mhm.bank.controller.dto.TokensUser;
 import com.mhm.bank.controller.dto.UserKCDto;
 import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.KeycloakUnavailableException;
+import com.mhm.bank.exception.KeycloakUserSetupException;
+import com.mhm.bank.service.ServerTiming;
+import com.mhm.bank.service.ServerTiming.Stage;
 import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import com.mhm.bank.service.external.keycloak.KeycloakResilience;
+import com.mhm.bank.service.external.keycloak.KeycloakResilience.Operation;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Response;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.resource.RealmResource;
@@ -20,6 +28,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class KeycloakServiceImpl implements IKeycloakService {
@@ -29,22 +38,36 @@ public class KeycloakServiceImpl implements IKeycloakService {
 
     private static final int KC_USER_CREATED_SUCCESFUL = 201;
     private static final int KC_ERROR_USER_EXISTED = 409;
+    private static final String REGISTRATION_ID_ATTRIBUTE = "registration_id";
+    private static final String KEYCLOAK = "keycloak";
 
     private KeycloakProvider keycloakProvider;
     private TokenProvider tokenProvider;
+    private KeycloakResilience keycloakResilience;
+    private DependencyTimer dependencyTimer;
 
-    public KeycloakServiceImpl(KeycloakProvider keycloakProvider, TokenProvider tokenProvider) {
+    public KeycloakServiceImpl(KeycloakProvider keycloakProvider, TokenProvider tokenProvider,
+                               KeycloakResilience keycloakResilience, DependencyTimer dependencyTimer) {
         this.keycloakProvider = keycloakProvider;
         this.tokenProvider = tokenProvider;
+        this.keycloakResilience = keycloakResilience;
+        this.dependencyTimer = dependencyTimer;
         logger.info("KeycloakServiceImpl initialized");
     }
 
     @Override
-    public boolean createUser(UserKCDto userDto, String authToken) throws KeycloakException {
-        logger.info("Creating new user in Keycloak: {}", userDto.username());
+    public String createUser(UserKCDto userDto, String authToken) throws KeycloakException {
+        return dependencyTimer.record(KEYCLOAK, "admin.create_user",
+                () -> keycloakResilience.execute(Operation.ADMIN, () -> createUserInKeycloak(userDto)));
+    }
+
+    private String createUserInKeycloak(UserKCDto userDto) throws KeycloakException {
+        logger.debug("Creating new user in Keycloak: {}", userDto.username());
         UsersResource usersResource = keycloakProvider.getUserResource();
 
+        long stageStart = ServerTiming.start();
         Response response = createNewUser(userDto, usersResource);
+        ServerTiming.stop(Stage.KEYCLOAK_CREATE, stageStart);
         int status = response.getStatus();
         logger.debug("User creation response status: {}", status);
 
@@ -53,12 +76,21 @@ public class KeycloakServiceImpl implements IKeycloakService {
             String userId = path.substring(path.lastIndexOf("/") + 1);
             logger.debug("User created with ID: {}", userId);
 
-            setPasswordUser(userDto, usersResource, userId);
-            logger.debug("Password set for user: {}", userDto.username());
+            try {
+                stageStart = ServerTiming.start();
+                setPasswordUser(userDto, usersResource, userId);
+                ServerTiming.stop(Stage.PASSWORD_SET, stageStart);
+                logger.debug("Password set for user: {}", userDto.username());
 
-            assignRoleToUser(userDto, userId);
-            logger.info("User {} successfully created with roles", userDto.username());
-            return true;
+                stageStart = ServerTiming.start();
+                assignRoleToUser(userDto, userId);
+                ServerTiming.stop(Stage.ROLE_ASSIGN, stageStart);
+            } catch (Exception e) {
+                logger.error("User {} was created but could not be set up: {}", userDto.username(), e.getMessage());
+                throw new KeycloakUserSetupException("Failed to set up user: " + userDto.username(), userId, e);
+            }
+            logger.debug("User {} successfully created with roles", userDto.username());
+            return userId;
 
         } else if (status == KC_ERROR_USER_EXISTED) {
             logger.error("User already exists: {}", userDto.username());
@@ -98,7 +130,7 @@ public class KeycloakServiceImpl implements IKeycloakService {
                 .roles()
                 .realmLevel()
                 .add(roleRepresentations);
-        logger.info("Roles assigned successfully to user: {}", userDto.username());
+        logger.debug("Roles assigned successfully to user: {}", userDto.username());
     }
 
     private void validateRolesExistKeycloak (RealmResource realmResource, UserKCDto userDto){
@@ -138,12 +170,22 @@ public class KeycloakServiceImpl implements IKeycloakService {
         userRepresentation.setEmail(userDto.email());
         userRepresentation.setEmailVerified(true);
         userRepresentation.setEnabled(true);
+        if (userDto.registrationId() != null) {
+            userRepresentation.setAttributes(Map.of(REGISTRATION_ID_ATTRIBUTE, List.of(userDto.registrationId())));
+        }
 
         return usersResource.create(userRepresentation);
     }
 
     @Override
     public void deleteUser(String usernameAfterKC) throws KeycloakException {
+        dependencyTimer.record(KEYCLOAK, "admin.delete_user", () -> keycloakResilience.execute(Operation.ADMIN, () -> {
+            deleteUserByUsername(usernameAfterKC);
+            return null;
+        }));
+    }
+
+    private void deleteUserByUsername(String usernameAfterKC) throws KeycloakException {
         logger.debug("Deleting user {}", usernameAfterKC);
         try {
             UsersResource usersResource = keycloakProvider.getUserResource();
@@ -158,16 +200,52 @@ public class KeycloakServiceImpl implements IKeycloakService {
             }
         } catch (Exception e) {
             logger.error("Error deleting user {} from Keycloak: {}", usernameAfterKC, e.getMessage());
-            throw new KeycloakException("Error deleting user from Keycloak: " + e.getMessage());
+            throw new KeycloakException("Error deleting user from Keycloak: " + e.getMessage(), e);
         }
     }
 
     @Override
-    public TokensUser loginUser(LoginRequest loginRequest, String token) throws KeycloakException {
-        logger.info("Processing login request for user: {}", loginRequest.username());
+    public void deleteUserById(String userId) throws KeycloakException {
+        logger.debug("Deleting user with ID {}", userId);
+        dependencyTimer.record(KEYCLOAK, "admin.delete_user", () -> keycloakResilience.execute(Operation.ADMIN, () -> {
+            try {
+                keycloakProvider.getUserResource().get(userId).remove();
+                logger.info("User with ID {} successfully deleted from Keycloak", userId);
+            } catch (NotFoundException e) {
+                logger.warn("User with ID {} not found in Keycloak", userId);
+            } catch (Exception e) {
+                logger.error("Error deleting user with ID {} from Keycloak: {}", userId, e.getMessage());
+                throw new KeycloakException("Error deleting user from Keycloak: " + e.getMessage(), e);
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public String findUserIdByRegistration(String username, String registrationId) throws KeycloakException {
+        logger.debug("Looking up user {} created by registration {}", username, registrationId);
+        return dependencyTimer.record(KEYCLOAK, "admin.find_user", () -> keycloakResilience.execute(Operation.ADMIN, () -> {
+            try {
+                return keycloakProvider.getUserResource().searchByUsername(username, true).stream()
+                        .filter(user -> user.getAttributes() != null
+                                && List.of(registrationId).equals(user.getAttributes().get(REGISTRATION_ID_ATTRIBUTE)))
+                        .map(UserRepresentation::getId)
+                        .findFirst()
+                        .orElse(null);
+            } catch (Exception e) {
+                logger.error("Error looking up user {} in Keycloak: {}", username, e.getMessage());
+                throw new KeycloakException("Error looking up user in Keycloak: " + e.getMessage(), e);
+            }
+        }));
+    }
+
+    @Override
+    public TokensUser loginUser(LoginRequest loginRequest) throws KeycloakException {
+        logger.debug("Processing login request for user: {}", loginRequest.username());
         try {
-            TokensUser tokens = tokenProvider.getUserAccessToken(loginRequest.username(), loginRequest.password());
-            logger.info("Login successful for user: {}", loginRequest.username());
+            TokensUser tokens = keycloakResilience.execute(Operation.LOGIN,
+                    () -> tokenProvider.getUserAccessToken(loginRequest.username(), loginRequest.password()));
+            logger.debug("Login successful for user: {}", loginRequest.username());
             return tokens;
         } catch (Exception e) {
             logger.error("Login failed for user: {}. Error: {}", loginRequest.username(), e.getMessage());
@@ -179,7 +257,7 @@ public class KeycloakServiceImpl implements IKeycloakService {
     public String getTokenAdminAppAuth () throws KeycloakException {
         logger.debug("Requesting admin app authentication token");
         try {
-            String token = tokenProvider.getTokenAdminAppAuth();
+            String token = keycloakResilience.execute(Operation.ADMIN, tokenProvider::getTokenAdminAppAuth);
             logger.debug("Admin app token obtained successfully");
             return token;
         } catch (Exception e) {
@@ -192,10 +270,17 @@ public class KeycloakServiceImpl implements IKeycloakService {
     public TokensUser getNewToken(String refreshToken) {
         logger.debug("Requesting new token using refresh token");
         try {
-            TokensUser tokens = tokenProvider.getNewToken(refreshToken);
+            TokensUser tokens = keycloakResilience.execute(Operation.REFRESH, () -> tokenProvider.getNewToken(refreshToken));
             logger.debug("Token refresh successful");
             return tokens;
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
+            if (KeycloakResilience.isKeycloakFailure(e)) {
+                // Keycloak could not answer; the refresh token may still be valid, so don't report it as rejected
+                logger.error("Token refresh failed, Keycloak unavailable: {}", e.getMessage());
+                throw new KeycloakUnavailableException("Keycloak is unavailable, please try again later", 1, e);
+            }
             logger.error("Token refresh failed: {}", e.getMessage());
             return null;
         }
@@ -0,0 +1,42 @@
+package com.mhm.bank.service.session;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Session store on the heap, evicting the least recently used session once {@code maxSessions} is reached.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private final Map<String, Session> sessions;
+
+    public InMemorySessionStore(int maxSessions) {
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > maxSessions || eldest.getValue().isExpired(System.currentTimeMillis());
+            }
+        };
+    }
+
+    @Override
+    public synchronized Session get(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    @Override
+    public synchronized boolean put(String sessionId, Session session) {
+        sessions.put(sessionId, session);
+        return true;
+    }
+
+    @Override
+    public synchronized void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    synchronized int size() {
+        return sessions.size();
+    }
+
+}
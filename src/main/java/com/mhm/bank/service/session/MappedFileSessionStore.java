@@ -0,0 +1,173 @@
+package com.mhm.bank.service.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Session store kept off-heap in a memory-mapped file of fixed-size slots, so a large number of sessions costs no
+ * heap and survives a restart (as long as the vault key stays the same). Like a set-associative cache, the slots
+ * are grouped into buckets of {@code ways} slots and a session can go to any slot of the bucket picked by the hash
+ * of its id: an empty or expired one, or the one already holding it. A session is never evicted before it expires;
+ * when its bucket is full of live sessions a new one is refused, and the vault falls back to the refresh token
+ * cookie for it.
+ *
+ * <p>Slot layout: id length (short), id bytes, access token expiry (long), session expiry (long), sealed tokens
+ * length (int), sealed tokens.
+ */
+public class MappedFileSessionStore implements SessionStore {
+    private static final Logger logger = LoggerFactory.getLogger(MappedFileSessionStore.class);
+
+    private static final int MAX_ID_BYTES = 64;
+    private static final int ACCESS_EXPIRY_OFFSET = Short.BYTES + MAX_ID_BYTES;
+    private static final int EXPIRY_OFFSET = ACCESS_EXPIRY_OFFSET + Long.BYTES;
+    private static final int SEALED_LENGTH_OFFSET = EXPIRY_OFFSET + Long.BYTES;
+    private static final int SEALED_OFFSET = SEALED_LENGTH_OFFSET + Integer.BYTES;
+    private static final int LOCK_STRIPES = 64;
+
+    private final MappedByteBuffer buffer;
+    private final int buckets;
+    private final int ways;
+    private final int slotBytes;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public MappedFileSessionStore(Path file, int slots, int slotBytes, int ways) {
+        if (slotBytes <= SEALED_OFFSET || ways < 1 || slots < ways || (long) slots * slotBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid session file geometry: " + slots + " slots of " + slotBytes
+                    + " bytes in buckets of " + ways);
+        }
+        this.buckets = slots / ways;
+        this.ways = ways;
+        this.slotBytes = slotBytes;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * slotBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map session file " + file, e);
+        }
+        logger.info("Mapped session file {} with {} buckets of {} slots of {} bytes", file, buckets, ways, slotBytes);
+    }
+
+    @Override
+    public Session get(String sessionId) {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        int bucket = bucketOf(id);
+        synchronized (locks[bucket % LOCK_STRIPES]) {
+            int base = find(bucket, id);
+            if (base < 0) {
+                return null;
+            }
+            int sealedLength = buffer.getInt(base + SEALED_LENGTH_OFFSET);
+            if (sealedLength < 0 || sealedLength > slotBytes - SEALED_OFFSET) {
+                return null;
+            }
+            byte[] sealed = new byte[sealedLength];
+            buffer.get(base + SEALED_OFFSET, sealed);
+            return new Session(sealed, buffer.getLong(base + ACCESS_EXPIRY_OFFSET), buffer.getLong(base + EXPIRY_OFFSET));
+        }
+    }
+
+    @Override
+    public boolean put(String sessionId, Session session) {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] sealed = session.sealedTokens();
+        if (id.length > MAX_ID_BYTES || sealed.length > slotBytes - SEALED_OFFSET) {
+            logger.warn("Session of {} bytes does not fit into a {} byte slot", sealed.length, slotBytes);
+            return false;
+        }
+        int bucket = bucketOf(id);
+        synchronized (locks[bucket % LOCK_STRIPES]) {
+            int base = find(bucket, id);
+            if (base < 0) {
+                base = free(bucket, System.currentTimeMillis());
+            }
+            if (base < 0) {
+                logger.warn("Session bucket {} is full of live sessions, not storing a new one", bucket);
+                return false;
+            }
+            buffer.putShort(base, (short) 0);
+            buffer.put(base + Short.BYTES, id);
+            buffer.putLong(base + ACCESS_EXPIRY_OFFSET, session.accessExpiresAtMillis());
+            buffer.putLong(base + EXPIRY_OFFSET, session.expiresAtMillis());
+            buffer.putInt(base + SEALED_LENGTH_OFFSET, sealed.length);
+            buffer.put(base + SEALED_OFFSET, sealed);
+            // The id length goes last: a slot is only readable once it is complete
+            buffer.putShort(base, (short) id.length);
+        }
+        return true;
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        int bucket = bucketOf(id);
+        synchronized (locks[bucket % LOCK_STRIPES]) {
+            int base = find(bucket, id);
+            if (base >= 0) {
+                buffer.putShort(base, (short) 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the slot of the bucket holding the id, or -1.
+     */
+    private int find(int bucket, byte[] id) {
+        for (int way = 0; way < ways; way++) {
+            int base = slotBase(bucket, way);
+            if (holds(base, id)) {
+                return base;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of an empty slot of the bucket, else of the one that expired first, or -1 if all are live.
+     */
+    private int free(int bucket, long now) {
+        int expired = -1;
+        long expiredAt = Long.MAX_VALUE;
+        for (int way = 0; way < ways; way++) {
+            int base = slotBase(bucket, way);
+            if (buffer.getShort(base) == 0) {
+                return base;
+            }
+            long expiresAt = buffer.getLong(base + EXPIRY_OFFSET);
+            if (expiresAt <= now && expiresAt < expiredAt) {
+                expired = base;
+                expiredAt = expiresAt;
+            }
+        }
+        return expired;
+    }
+
+    private boolean holds(int base, byte[] id) {
+        if (buffer.getShort(base) != id.length) {
+            return false;
+        }
+        byte[] stored = new byte[id.length];
+        buffer.get(base + Short.BYTES, stored);
+        return Arrays.equals(stored, id);
+    }
+
+    private int slotBase(int bucket, int way) {
+        return (bucket * ways + way) * slotBytes;
+    }
+
+    private int bucketOf(byte[] id) {
+        return Math.floorMod(Arrays.hashCode(id), buckets);
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.mhm.bank.service.session;
+
+import com.mhm.bank.controller.dto.TokensUser;
+import com.mhm.bank.service.ServerTiming;
+import com.mhm.bank.service.audit.AuthAuditLog;
+import com.mhm.bank.service.audit.AuthAuditLog.Event;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps refresh tokens on the server when {@code session.vault.enabled} is set: the browser only gets the access
+ * token and an opaque session id, and {@code /refresh} needs nothing else. Tokens are sealed with AES-GCM, bound to
+ * their session id, before they reach the {@link SessionStore}. A refresh while the access token still has more
+ * than {@code session.vault.refresh-ahead-sec} left returns it as is; within that window it is returned as well and
+ * a new one is fetched in the background, so only a session idle past the expiry waits for Keycloak.
+ */
+@Service
+public class RefreshTokenVault {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenVault.class);
+
+    static final String REFRESHES = "auth.session.refreshes";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final int SESSION_ID_BYTES = 32;
+    private static final long DEFAULT_EXPIRES_IN_SECONDS = 300;
+
+    private final boolean enabled;
+    private final SessionStore sessionStore;
+    private final IKeycloakService keycloakService;
+    private final AuthAuditLog auditLog;
+    private final long idleTtlMs;
+    private final long refreshAheadMs;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    private final Set<String> refreshingAhead = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refreshExecutor;
+    private final Counter servedFromVault;
+    private final Counter refreshedAhead;
+    private final Counter refreshedOnDemand;
+    private final Counter refreshRejected;
+
+    /** The tokens a refresh answered with, and whether they are the session's current ones rather than new. */
+    private record Refreshed(TokensUser tokens, boolean cached) {
+    }
+
+    public RefreshTokenVault(@Value("${session.vault.enabled:false}") boolean enabled,
+                             @Value("${session.vault.key:}") String base64Key,
+                             @Value("${session.vault.idle-ttl-sec:${server.at.maximun.expiration.time-sec}}") long idleTtlSeconds,
+                             @Value("${session.vault.refresh-ahead-sec:30}") long refreshAheadSeconds,
+                             @Value("${session.vault.refresh-threads:2}") int refreshThreads,
+                             SessionStore sessionStore, IKeycloakService keycloakService, AuthAuditLog auditLog,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.sessionStore = sessionStore;
+        this.keycloakService = keycloakService;
+        this.auditLog = auditLog;
+        this.idleTtlMs = idleTtlSeconds * 1000;
+        this.refreshAheadMs = refreshAheadSeconds * 1000;
+        this.key = loadKey(base64Key);
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1000), runnable -> {
+                    Thread thread = new Thread(runnable, "session-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.servedFromVault = meterRegistry.counter(REFRESHES, "outcome", "cached");
+        this.refreshedAhead = meterRegistry.counter(REFRESHES, "outcome", "ahead");
+        this.refreshedOnDemand = meterRegistry.counter(REFRESHES, "outcome", "on_demand");
+        this.refreshRejected = meterRegistry.counter(REFRESHES, "outcome", "rejected");
+    }
+
+    private SecretKey loadKey(String base64Key) {
+        if (base64Key != null && !base64Key.isBlank()) {
+            return new SecretKeySpec(Base64.getDecoder().decode(base64Key.trim()), "AES");
+        }
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256);
+            if (enabled) {
+                logger.warn("No session.vault.key configured, sessions will not survive a restart");
+            }
+            return keyGenerator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES is not available", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stores the user's tokens and returns the id of the new session, or null if the store could not take it.
+     */
+    public String open(TokensUser tokens) {
+        byte[] idBytes = new byte[SESSION_ID_BYTES];
+        random.nextBytes(idBytes);
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(idBytes);
+        if (!store(sessionId, tokens, System.currentTimeMillis())) {
+            return null;
+        }
+        logger.debug("Opened server-side session");
+        return sessionId;
+    }
+
+    /**
+     * Returns a valid access token of the session (without its refresh token), refreshing it with Keycloak if it
+     * has expired, or null if the session is unknown, expired, or Keycloak no longer accepts its refresh token.
+     * A session answered with its still valid access token is audited as {@code CACHED}, not as a refresh.
+     */
+    public TokensUser refresh(String sessionId, String clientIp) {
+        Refreshed refreshed;
+        try {
+            refreshed = refreshSession(sessionId);
+        } catch (RuntimeException e) {
+            auditLog.failure(Event.REFRESH, null, clientIp, e.getClass().getSimpleName());
+            throw e;
+        }
+        if (refreshed == null) {
+            auditLog.failure(Event.REFRESH, null, clientIp, "rejected");
+            return null;
+        }
+        String username = AuthAuditLog.usernameOf(refreshed.tokens().getAccessToken());
+        if (refreshed.cached()) {
+            auditLog.cached(Event.REFRESH, username, clientIp);
+        } else {
+            auditLog.success(Event.REFRESH, username, clientIp);
+        }
+        return refreshed.tokens();
+    }
+
+    private Refreshed refreshSession(String sessionId) {
+        long now = System.currentTimeMillis();
+        SessionStore.Session session = sessionStore.get(sessionId);
+        if (session == null || session.isExpired(now)) {
+            logger.debug("Session is unknown or expired");
+            return null;
+        }
+        String[] tokens = unseal(sessionId, session);
+        if (tokens == null) {
+            sessionStore.remove(sessionId);
+            return null;
+        }
+
+        long remainingMs = session.accessExpiresAtMillis() - now;
+        if (remainingMs > 0) {
+            if (remainingMs <= refreshAheadMs) {
+                refreshAhead(sessionId);
+            }
+            servedFromVault.increment();
+            return new Refreshed(new TokensUser(tokens[0], null, String.valueOf(remainingMs / 1000)), true);
+        }
+
+        refreshedOnDemand.increment();
+        long stageStart = ServerTiming.start();
+        try {
+            TokensUser refreshed = refreshWithKeycloak(sessionId, tokens[1]);
+            return refreshed != null ? new Refreshed(refreshed, false) : null;
+        } finally {
+            ServerTiming.stop(ServerTiming.Stage.TOKEN_REFRESH, stageStart);
+        }
+    }
+
+    private void refreshAhead(String sessionId) {
+        if (!refreshingAhead.add(sessionId)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    SessionStore.Session session = sessionStore.get(sessionId);
+                    String[] tokens = session == null ? null : unseal(sessionId, session);
+                    if (tokens != null) {
+                        refreshWithKeycloak(sessionId, tokens[1]);
+                        refreshedAhead.increment();
+                    }
+                } catch (Exception e) {
+                    logger.warn("Background refresh of session failed: {}", e.getMessage());
+                } finally {
+                    refreshingAhead.remove(sessionId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingAhead.remove(sessionId);
+            logger.debug("Background refresh queue is full, session will refresh on demand");
+        }
+    }
+
+    /**
+     * Concurrent refreshes of the same session present the same refresh token, which {@code TokenProvider}
+     * coalesces into a single Keycloak call, so they all store the same rotated tokens.
+     */
+    private TokensUser refreshWithKeycloak(String sessionId, String refreshToken) {
+        TokensUser newTokens = keycloakService.getNewToken(refreshToken);
+        if (newTokens == null) {
+            logger.info("Keycloak rejected the refresh token of a session, closing it");
+            refreshRejected.increment();
+            sessionStore.remove(sessionId);
+            return null;
+        }
+        store(sessionId, newTokens, System.currentTimeMillis());
+        return new TokensUser(newTokens.getAccessToken(), null, newTokens.getExpiresIn());
+    }
+
+    private boolean store(String sessionId, TokensUser tokens, long now) {
+        byte[] sealed = seal(sessionId, tokens.getAccessToken() + "\n" + tokens.getRefreshToken());
+        long accessExpiresAt = now + expiresInSeconds(tokens.getExpiresIn()) * 1000;
+        return sessionStore.put(sessionId, new SessionStore.Session(sealed, accessExpiresAt, now + idleTtlMs));
+    }
+
+    private static long expiresInSeconds(String expiresIn) {
+        try {
+            return expiresIn == null ? DEFAULT_EXPIRES_IN_SECONDS : Long.parseLong(expiresIn.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_EXPIRES_IN_SECONDS;
+        }
+    }
+
+    private byte[] seal(String sessionId, String tokens) {
+        try {
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(sessionId.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher.doFinal(tokens.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.allocate(IV_BYTES + encrypted.length).put(iv).put(encrypted).array();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to seal session tokens", e);
+        }
+    }
+
+    /**
+     * Returns the access and refresh tokens, or null if the sealed tokens were not written for this session
+     * with the current key.
+     */
+    private String[] unseal(String sessionId, SessionStore.Session session) {
+        byte[] sealed = session.sealedTokens();
+        if (sealed.length <= IV_BYTES) {
+            return null;
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_BYTES));
+            cipher.updateAAD(sessionId.getBytes(StandardCharsets.UTF_8));
+            String tokens = new String(cipher.doFinal(sealed, IV_BYTES, sealed.length - IV_BYTES), StandardCharsets.UTF_8);
+            int separator = tokens.indexOf('\n');
+            return separator < 0 ? null : new String[] {tokens.substring(0, separator), tokens.substring(separator + 1)};
+        } catch (GeneralSecurityException e) {
+            logger.warn("Failed to unseal session tokens: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+}
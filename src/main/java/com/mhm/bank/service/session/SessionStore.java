@@ -0,0 +1,28 @@
+package com.mhm.bank.service.session;
+
+/**
+ * Bounded store of server-side sessions keyed by the opaque session id sent to the browser. The tokens are
+ * stored sealed by {@link RefreshTokenVault}; a store never sees them in clear text.
+ */
+public interface SessionStore {
+
+    record Session(byte[] sealedTokens, long accessExpiresAtMillis, long expiresAtMillis) {
+
+        boolean isExpired(long now) {
+            return expiresAtMillis <= now;
+        }
+    }
+
+    /**
+     * Returns the session, or null if it is unknown or was evicted.
+     */
+    Session get(String sessionId);
+
+    /**
+     * Stores the session, making room as the store allows; returns false if the session could not be stored.
+     */
+    boolean put(String sessionId, Session session);
+
+    void remove(String sessionId);
+
+}
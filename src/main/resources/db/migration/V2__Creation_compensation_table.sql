@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS registration_compensations (
+    id BIGSERIAL PRIMARY KEY,
+    keycloak_user_id VARCHAR(64) NOT NULL,
+    username VARCHAR(50) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL,
+    last_error VARCHAR(255),
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_registration_compensations_due
+    ON registration_compensations (status, next_attempt_at);
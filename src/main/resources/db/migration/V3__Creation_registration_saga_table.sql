@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS registration_sagas (
+    id VARCHAR(64) PRIMARY KEY,
+    user_id VARCHAR(30) NOT NULL,
+    username VARCHAR(50) NOT NULL,
+    state VARCHAR(30) NOT NULL,
+    keycloak_user_id VARCHAR(64),
+    last_error VARCHAR(255),
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_registration_sagas_state
+    ON registration_sagas (state, updated_at);
@@ -0,0 +1,2 @@
+ALTER TABLE registration_sagas ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE registration_sagas ADD COLUMN IF NOT EXISTS request_hash VARCHAR(64);
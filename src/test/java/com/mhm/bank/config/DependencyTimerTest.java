@@ -0,0 +1,67 @@
+package com.mhm.bank.config;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DependencyTimerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryTracing tracing = InMemoryTracing.create(meterRegistry);
+    private final DependencyTimer dependencyTimer = new DependencyTimer(tracing.observationRegistry());
+
+    @Test
+    void record_shouldTimeSuccessfulCallAndReturnItsResult() {
+        String result = dependencyTimer.record("keycloak", "token.password", () -> "token");
+
+        assertEquals("token", result);
+        Timer timer = meterRegistry.get(DependencyTimer.CALLS)
+                .tags("dependency", "keycloak", "operation", "token.password", "outcome", "success", "error", "none")
+                .timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void record_shouldTimeFailedCallAndRethrow() {
+        IOException failure = new IOException("read timed out");
+
+        IOException thrown = assertThrows(IOException.class, () -> dependencyTimer.record("keycloak", "admin.find_user",
+                () -> {
+                    throw failure;
+                }));
+
+        assertSame(failure, thrown);
+        assertEquals(1, meterRegistry.get(DependencyTimer.CALLS)
+                .tags("operation", "admin.find_user", "outcome", "failure", "error", "IOException")
+                .timer().count());
+        assertEquals(StatusCode.ERROR, tracing.span("admin.find_user").getStatus().getStatusCode());
+    }
+
+    @Test
+    void record_shouldMakeSpansOfNestedCallsChildrenOfTheOuterCall() {
+        dependencyTimer.record("keycloak", "admin.create_user",
+                () -> dependencyTimer.record("database", "UserRepository.save", () -> "saved"));
+
+        SpanData outer = tracing.span("admin.create_user");
+        SpanData inner = tracing.span("user-repository.save");
+        assertEquals(outer.getTraceId(), inner.getTraceId());
+        assertEquals(outer.getSpanId(), inner.getParentSpanId());
+    }
+
+    @Test
+    void record_shouldNotObserveCallsMadeUnobserved() {
+        DependencyTimer.unobserved(() -> assertEquals("user",
+                dependencyTimer.record("database", "UserRepository.findByUsername", () -> "user")));
+        dependencyTimer.record("database", "UserRepository.findById", () -> "user");
+
+        assertNull(meterRegistry.find(DependencyTimer.CALLS).tags("operation", "UserRepository.findByUsername").timer());
+        assertEquals(1, meterRegistry.get(DependencyTimer.CALLS).tags("operation", "UserRepository.findById").timer().count());
+    }
+
+}
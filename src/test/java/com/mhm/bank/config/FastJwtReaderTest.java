@@ -0,0 +1,93 @@
+package com.mhm.bank.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastJwtReaderTest {
+    private static final String ISSUER = "http://keycloak.test/realms/bank";
+
+    private static RSAKey signingKey;
+
+    @BeforeAll
+    static void generateKey() throws JOSEException {
+        signingKey = new RSAKeyGenerator(2048).keyID("key-1").generate();
+    }
+
+    private static String sign(JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(signingKey));
+        return jwt.serialize();
+    }
+
+    private static String base64Url(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void read_shouldReturnKeyIdIssuerExpiryAndUsernameOfSignedToken() throws JOSEException {
+        String token = sign(new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("user-id")
+                .claim("preferred_username", "testuser")
+                .expirationTime(new Date(1_700_000_000_000L))
+                .claim("realm_access", Map.of("roles", List.of("user"), "iss", "nested"))
+                .build());
+
+        FastJwtReader.Claims claims = FastJwtReader.read(token);
+
+        assertEquals(new FastJwtReader.Claims("key-1", ISSUER, 1_700_000_000L, "testuser"), claims);
+    }
+
+    @Test
+    void read_shouldHandleTokensLargerThanTheBuffer() throws JOSEException {
+        String token = sign(new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .expirationTime(new Date(1_700_000_000_000L))
+                .claim("roles", Collections.nCopies(2000, "role"))
+                .build());
+
+        assertEquals(ISSUER, FastJwtReader.read(token).issuer());
+        assertEquals(ISSUER, FastJwtReader.read(token).issuer());
+    }
+
+    @Test
+    void read_shouldReturnZeroExpiry_whenTokenHasNoExp() {
+        String token = base64Url("{\"alg\":\"RS256\"}") + "." + base64Url("{\"iss\":\"" + ISSUER + "\"}") + ".sig";
+
+        FastJwtReader.Claims claims = FastJwtReader.read(token);
+
+        assertNull(claims.kid());
+        assertEquals(0, claims.expiresAtSeconds());
+    }
+
+    @Test
+    void read_shouldReturnNull_whenTokenIsMalformed() {
+        String header = base64Url("{\"alg\":\"RS256\",\"kid\":\"key-1\"}");
+
+        assertNull(FastJwtReader.read(null));
+        assertNull(FastJwtReader.read("not-a-jwt"));
+        assertNull(FastJwtReader.read(header + "." + base64Url("{\"iss\":\"a\"}")));
+        assertNull(FastJwtReader.read(header + "." + base64Url("{\"iss\":\"a\"}") + ".sig.extra"));
+        assertNull(FastJwtReader.read(header + ".not*base64.sig"));
+        assertNull(FastJwtReader.read(header + "." + base64Url("[1,2]") + ".sig"));
+        assertNull(FastJwtReader.read(header + "." + base64Url("{\"iss\":") + ".sig"));
+    }
+
+}
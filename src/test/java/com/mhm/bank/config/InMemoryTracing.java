@@ -0,0 +1,67 @@
+package com.mhm.bank.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+import io.micrometer.tracing.otel.bridge.OtelBaggageManager;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+import java.util.List;
+
+/**
+ * Collects finished spans in memory. Use {@link #create} in unit tests to get an {@link ObservationRegistry} that
+ * records spans and meters; in a Spring Boot test, import {@link InMemoryTracingConfiguration} and wrap the
+ * application's exporter and registry with {@link #of}.
+ */
+public final class InMemoryTracing {
+
+    private final InMemorySpanExporter exporter;
+    private final ObservationRegistry observationRegistry;
+
+    private InMemoryTracing(InMemorySpanExporter exporter, ObservationRegistry observationRegistry) {
+        this.exporter = exporter;
+        this.observationRegistry = observationRegistry;
+    }
+
+    public static InMemoryTracing create(MeterRegistry meterRegistry) {
+        InMemorySpanExporter exporter = InMemorySpanExporter.create();
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+        OtelCurrentTraceContext currentTraceContext = new OtelCurrentTraceContext();
+        OtelTracer tracer = new OtelTracer(tracerProvider.get("test"), currentTraceContext, event -> { },
+                new OtelBaggageManager(currentTraceContext, List.of(), List.of()));
+
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig()
+                .observationHandler(new DefaultMeterObservationHandler(meterRegistry))
+                .observationHandler(new DefaultTracingObservationHandler(tracer));
+        return new InMemoryTracing(exporter, observationRegistry);
+    }
+
+    public static InMemoryTracing of(InMemorySpanExporter exporter, ObservationRegistry observationRegistry) {
+        return new InMemoryTracing(exporter, observationRegistry);
+    }
+
+    public ObservationRegistry observationRegistry() {
+        return observationRegistry;
+    }
+
+    public List<SpanData> finishedSpans() {
+        return exporter.getFinishedSpanItems();
+    }
+
+    public SpanData span(String name) {
+        return finishedSpans().stream()
+                .filter(span -> span.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No span named " + name + " in " + finishedSpans()));
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.mhm.bank.config;
+
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Import into a Spring Boot test to capture the spans of the whole application: Boot exports to every
+ * {@code SpanExporter} bean. Read them through {@link InMemoryTracing#of}.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class InMemoryTracingConfiguration {
+
+    @Bean
+    InMemorySpanExporter inMemorySpanExporter() {
+        return InMemorySpanExporter.create();
+    }
+
+}
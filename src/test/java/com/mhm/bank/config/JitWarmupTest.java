@@ -0,0 +1,79 @@
+package com.mhm.bank.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mhm.bank.repository.UserRepository;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JitWarmupTest {
+    private static final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final Validator validator = validatorFactory.getValidator();
+
+    @AfterAll
+    static void closeValidatorFactory() {
+        validatorFactory.close();
+    }
+
+    private JitWarmup jitWarmup(boolean enabled) {
+        return new JitWarmup(enabled, 3, 2, "http://localhost:8080/realms/test", objectMapper, validator,
+                userRepository);
+    }
+
+    @Test
+    void steps_shouldBeEmpty_whenDisabled() {
+        assertTrue(jitWarmup(false).steps().isEmpty());
+    }
+
+    @Test
+    void steps_shouldRunWithoutFailures() {
+        Map<String, Runnable> steps = jitWarmup(true).steps();
+
+        assertEquals(List.of("jwt verification", "json binding", "bean validation", "keycloak representations",
+                "user queries"), List.copyOf(steps.keySet()));
+        steps.values().forEach(step -> assertDoesNotThrow(step::run));
+    }
+
+    @Test
+    void userQueries_shouldOnlyRead() {
+        jitWarmup(true).steps().get("user queries").run();
+
+        verify(userRepository, times(2)).existsByUsername(JitWarmup.USERNAME);
+        verify(userRepository, times(2)).existsByEmail(JitWarmup.USERNAME);
+        verify(userRepository, times(2)).findByUsername(JitWarmup.USERNAME);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void steps_shouldStop_whenCancelled() {
+        JitWarmup warmup = new JitWarmup(true, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                "http://localhost:8080/realms/test", objectMapper, validator, userRepository);
+
+        Thread.currentThread().interrupt();
+        try {
+            warmup.steps().get("user queries").run();
+        } finally {
+            Thread.interrupted();
+        }
+        verifyNoInteractions(userRepository);
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.mhm.bank.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwksCacheTest {
+    private static final String JWKS_URL = "http://keycloak.test/realms/bank/protocol/openid-connect/certs";
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private volatile JWKSet published;
+    private volatile boolean keycloakDown;
+    private volatile CountDownLatch slowKeycloak;
+
+    @BeforeEach
+    void setUp() throws JOSEException {
+        published = new JWKSet(key("key-1").toPublicJWK());
+    }
+
+    private static RSAKey key(String kid) throws JOSEException {
+        return new RSAKeyGenerator(2048).keyID(kid).generate();
+    }
+
+    private JwksCache cache(long ttlSeconds, long minRefreshIntervalMs) {
+        return new JwksCache(JWKS_URL, ttlSeconds, minRefreshIntervalMs, 2000, 5000) {
+            @Override
+            JWKSet load() throws IOException {
+                loads.incrementAndGet();
+                CountDownLatch latch = slowKeycloak;
+                if (latch != null) {
+                    try {
+                        latch.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (keycloakDown) {
+                    throw new IOException("Connection refused");
+                }
+                return published;
+            }
+        };
+    }
+
+    @Test
+    void getVerifier_shouldLoadKeysOnceWithinTtl() {
+        JwksCache jwksCache = cache(300, 10000);
+
+        assertNotNull(jwksCache.getVerifier("key-1"));
+        assertNotNull(jwksCache.getVerifier("key-1"));
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getVerifier_shouldReloadKeysWhenKeycloakRotatedThem() throws JOSEException {
+        JwksCache jwksCache = cache(300, 0);
+        assertNotNull(jwksCache.getVerifier("key-1"));
+
+        published = new JWKSet(key("key-2").toPublicJWK());
+
+        assertNotNull(jwksCache.getVerifier("key-2"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getVerifier_shouldRateLimitReloadsForUnknownKeyIds() {
+        JwksCache jwksCache = cache(300, 10000);
+        assertNotNull(jwksCache.getVerifier("key-1"));
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(jwksCache.getVerifier("made-up-" + i));
+        }
+
+        assertEquals(1, loads.get());
+        assertNull(jwksCache.getVerifier(null));
+    }
+
+    @Test
+    void getVerifier_shouldKeepCachedKeysWhenReloadFails() throws InterruptedException {
+        JwksCache jwksCache = cache(0, 0);
+        assertNotNull(jwksCache.getVerifier("key-1"));
+
+        keycloakDown = true;
+        Thread.sleep(5);
+
+        assertNotNull(jwksCache.getVerifier("key-1"));
+        awaitLoads(2);
+        assertNotNull(jwksCache.getVerifier("key-1"));
+        jwksCache.shutdown();
+    }
+
+    @Test
+    void getVerifier_shouldServeCachedKeysWhileReloadingInBackground() throws Exception {
+        JwksCache jwksCache = cache(0, 0);
+        assertNotNull(jwksCache.getVerifier("key-1"));
+        slowKeycloak = new CountDownLatch(1);
+        published = new JWKSet(List.of(published.getKeys().get(0), key("key-2").toPublicJWK()));
+        Thread.sleep(5);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(jwksCache.getVerifier("key-1"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        awaitLoads(2);
+        assertEquals(2, loads.get());
+
+        slowKeycloak.countDown();
+        slowKeycloak = null;
+        assertNotNull(jwksCache.getVerifier("key-2"));
+        jwksCache.shutdown();
+    }
+
+    private void awaitLoads(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (loads.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(loads.get() >= expected, "loads: " + loads.get());
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.mhm.bank.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeycloakEndpointPoolTest {
+    private static final String NODE_A = "http://keycloak-a:8080";
+    private static final String NODE_B = "http://keycloak-b:8080";
+
+    private SimpleMeterRegistry meterRegistry;
+    private KeycloakEndpointPool endpointPool;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        endpointPool = new KeycloakEndpointPool(NODE_A + ", " + NODE_B, 2, 60000, 300000, 1000, meterRegistry);
+    }
+
+    private void fail(String node) {
+        assertThrows(ResourceAccessException.class, () -> endpointPool.execute(node, () -> {
+            throw new ResourceAccessException("Connection refused");
+        }));
+    }
+
+    @Test
+    void choose_shouldPreferNodeWithFewerOutstandingRequests() throws Exception {
+        CountDownLatch inCall = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> endpointPool.execute(NODE_A, () -> {
+                inCall.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            }));
+            inCall.await();
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals(NODE_B, endpointPool.choose());
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void execute_shouldEjectNodeAfterConsecutiveFailures() {
+        fail(NODE_A);
+        fail(NODE_A);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(NODE_B, endpointPool.choose());
+        }
+        assertEquals(1.0, meterRegistry.counter(KeycloakEndpointPool.EJECTIONS, "node", NODE_A).count());
+    }
+
+    @Test
+    void execute_shouldNotEjectNodeForClientErrors() {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpClientErrorException.class, () -> endpointPool.execute(NODE_A, () -> {
+                throw new HttpClientErrorException(HttpStatus.UNAUTHORIZED);
+            }));
+        }
+
+        assertEquals(0.0, meterRegistry.counter(KeycloakEndpointPool.EJECTIONS, "node", NODE_A).count());
+    }
+
+    @Test
+    void execute_shouldCountFailedResultsAndResetOnSuccess() {
+        endpointPool.execute(NODE_A, () -> 503, status -> status >= 500);
+        endpointPool.execute(NODE_A, () -> 200, status -> status >= 500);
+        endpointPool.execute(NODE_A, () -> 503, status -> status >= 500);
+
+        assertEquals(0.0, meterRegistry.counter(KeycloakEndpointPool.EJECTIONS, "node", NODE_A).count());
+    }
+
+    @Test
+    void choose_shouldFailOpenWhenEveryNodeIsEjected() {
+        fail(NODE_A);
+        fail(NODE_A);
+        fail(NODE_B);
+        fail(NODE_B);
+
+        // Node A was ejected first, so its ejection ends first
+        assertEquals(NODE_A, endpointPool.choose());
+        assertEquals(NODE_B, endpointPool.chooseOther(NODE_A));
+    }
+
+    @Test
+    void execute_shouldKeepGrowingEjection_whenNodeFailsAgainSoonAfterASuccess() throws Exception {
+        KeycloakEndpointPool pool = new KeycloakEndpointPool(NODE_A + ", " + NODE_B, 2, 50, 100, 1000, meterRegistry);
+        Runnable failTwice = () -> {
+            for (int i = 0; i < 2; i++) {
+                assertThrows(ResourceAccessException.class, () -> pool.execute(NODE_A, () -> {
+                    throw new ResourceAccessException("Connection refused");
+                }));
+            }
+        };
+
+        failTwice.run();
+        pool.execute(NODE_A, () -> "ok");
+        failTwice.run();
+        assertTrue(pool.ejectedUntilMillis(NODE_A) - System.currentTimeMillis() > 50);
+
+        // Healthy for longer than the longest ejection: the next one starts from the base duration again
+        Thread.sleep(250);
+        pool.execute(NODE_A, () -> "ok");
+        failTwice.run();
+        assertTrue(pool.ejectedUntilMillis(NODE_A) - System.currentTimeMillis() <= 50);
+    }
+
+}
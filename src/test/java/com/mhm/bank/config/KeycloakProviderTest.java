@@ -0,0 +1,53 @@
+package com.mhm.bank.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.ws.rs.ProcessingException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeycloakProviderTest {
+
+    private KeycloakProvider keycloakProvider;
+
+    @AfterEach
+    void closeClients() {
+        keycloakProvider.close();
+    }
+
+    @Test
+    void getUserResource_shouldSendAdminCallsThroughThePooledEngine() throws IOException {
+        String node = "http://localhost:" + unusedPort();
+        KeycloakEndpointPool endpointPool = new KeycloakEndpointPool(node, 1, 60000, 300000, 1000,
+                new SimpleMeterRegistry());
+        keycloakProvider = new KeycloakProvider(endpointPool, ObservationRegistry.NOOP);
+        ReflectionTestUtils.setField(keycloakProvider, "realmName", "test-realm");
+        ReflectionTestUtils.setField(keycloakProvider, "realmMaster", "master");
+        ReflectionTestUtils.setField(keycloakProvider, "adminCli", "admin-cli");
+        ReflectionTestUtils.setField(keycloakProvider, "userConsole", "admin");
+        ReflectionTestUtils.setField(keycloakProvider, "passwordConsole", "admin");
+        ReflectionTestUtils.setField(keycloakProvider, "connectTimeoutMs", 500L);
+        ReflectionTestUtils.setField(keycloakProvider, "readTimeoutMs", 500L);
+
+        ProcessingException exception = assertThrows(ProcessingException.class,
+                () -> keycloakProvider.getUserResource().count());
+
+        // The call reached the network, and the pool saw it fail
+        assertInstanceOf(ConnectException.class, exception.getCause());
+        assertTrue(endpointPool.ejectedUntilMillis(node) > System.currentTimeMillis());
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import com.mhm.bank.service.dto.TokenResponse;
+import org.jboss.resteasy.client.jaxrs.internal.proxy.ResteasyClientProxy;
+import org.jboss.resteasy.plugins.providers.jackson.ResteasyJackson2Provider;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.resource.RoleScopeResource;
+import org.keycloak.admin.client.resource.UsersResource;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    NativeRuntimeHintsTest() {
+        new NativeRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void registerHints_shouldRegisterKeycloakResourceProxies() {
+        assertTrue(RuntimeHintsPredicates.proxies().forInterfaces(UsersResource.class, ResteasyClientProxy.class)
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(RoleScopeResource.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS).test(hints));
+    }
+
+    @Test
+    void registerHints_shouldRegisterResteasyProvidersFromServiceFiles() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource("META-INF/services/jakarta.ws.rs.ext.Providers")
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(ResteasyJackson2Provider.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS).test(hints));
+    }
+
+    @Test
+    void registerHints_shouldRegisterJsonBindingOfPayloads() {
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(UserRepresentation.class, "getUsername").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(TokenResponse.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(UserRegisteredEvent.class).test(hints));
+    }
+
+}
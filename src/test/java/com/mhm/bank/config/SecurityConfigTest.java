@@ -0,0 +1,54 @@
+package com.mhm.bank.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecurityConfigTest {
+
+    @Test
+    void introspectionClients_shouldAuthenticateConfiguredClient() {
+        AuthenticationManager clients = SecurityConfig.introspectionClients(List.of(
+                "resource-api:{noop}s3cret", "other-api:{bcrypt}" + new BCryptPasswordEncoder().encode("other")));
+
+        Authentication authentication = clients.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("resource-api", "s3cret"));
+
+        assertTrue(authentication.isAuthenticated());
+        assertTrue(authentication.getAuthorities().stream()
+                .anyMatch(authority -> authority.getAuthority().equals("ROLE_INTROSPECTION_CLIENT")));
+        assertTrue(clients.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("other-api", "other"))
+                .isAuthenticated());
+    }
+
+    @Test
+    void introspectionClients_shouldRejectWrongSecretAndUnknownClient() {
+        AuthenticationManager clients = SecurityConfig.introspectionClients(List.of("resource-api:{noop}s3cret"));
+
+        assertThrows(BadCredentialsException.class, () -> clients.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("resource-api", "wrong")));
+        assertThrows(BadCredentialsException.class, () -> clients.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("someone", "s3cret")));
+    }
+
+    @Test
+    void introspectionClients_shouldRefuseEveryone_whenNoneConfigured() {
+        AuthenticationManager clients = SecurityConfig.introspectionClients(List.of());
+
+        assertThrows(BadCredentialsException.class, () -> clients.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("resource-api", "s3cret")));
+    }
+
+    @Test
+    void introspectionClients_shouldRejectEntryWithoutSecret() {
+        assertThrows(IllegalArgumentException.class, () -> SecurityConfig.introspectionClients(List.of("resource-api")));
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.service.external.KafkaProducerService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.DefaultApplicationArguments;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StartupWarmupTest {
+
+    @Mock
+    private KeycloakProvider keycloakProvider;
+    @Mock
+    private TokenProvider tokenProvider;
+    @Mock
+    private JwksCache jwksCache;
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+    @Mock
+    private JitWarmup jitWarmup;
+
+    private StartupWarmup startupWarmup(boolean enabled, long timeoutMs) {
+        return new StartupWarmup(enabled, timeoutMs, keycloakProvider, tokenProvider, jwksCache, kafkaProducerService,
+                jitWarmup);
+    }
+
+    @Test
+    void run_shouldWarmUpKeycloakAndKafkaClients() throws Exception {
+        when(jwksCache.preload()).thenReturn(true);
+
+        startupWarmup(true, 5000).run(new DefaultApplicationArguments());
+
+        verify(keycloakProvider).warmUp();
+        verify(tokenProvider).getAccessToken();
+        verify(jwksCache).preload();
+        verify(kafkaProducerService).warmUp();
+    }
+
+    @Test
+    void run_shouldRunJitWarmupSteps() throws Exception {
+        Runnable jitStep = mock(Runnable.class);
+        when(jitWarmup.steps()).thenReturn(Map.of("json binding", jitStep));
+        when(jwksCache.preload()).thenReturn(true);
+
+        startupWarmup(true, 5000).run(new DefaultApplicationArguments());
+
+        verify(jitStep).run();
+    }
+
+    @Test
+    void run_shouldNotHoldUpStartup_whenDependencyFailsOrHangs() {
+        CountDownLatch never = new CountDownLatch(1);
+        doThrow(new IllegalStateException("broker unavailable")).when(kafkaProducerService).warmUp();
+        doAnswer(invocation -> {
+            never.await();
+            return null;
+        }).when(keycloakProvider).warmUp();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> startupWarmup(true, 200).run(new DefaultApplicationArguments()));
+        verify(jwksCache).preload();
+    }
+
+    @Test
+    void run_shouldDoNothing_whenDisabled() throws Exception {
+        startupWarmup(false, 5000).run(new DefaultApplicationArguments());
+
+        verifyNoInteractions(keycloakProvider, tokenProvider, jwksCache, kafkaProducerService);
+    }
+
+}
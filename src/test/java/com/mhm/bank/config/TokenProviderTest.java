@@ -0,0 +1,284 @@
+package com.mhm.bank.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.mhm.bank.controller.dto.TokensUser;
+import com.mhm.bank.exception.KeycloakException;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withBadRequest;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withUnauthorizedRequest;
+
+class TokenProviderTest {
+    private static final String TOKEN_URL = "http://keycloak.test/realms/bank/protocol/openid-connect/token";
+    private static final String REFRESHED_TOKENS =
+            "{\"access_token\":\"new-access\",\"refresh_token\":\"new-refresh\",\"expires_in\":\"300\"}";
+
+    private static final String ISSUER = "http://keycloak.test/realms/bank";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TokenRequestHedger tokenRequestHedger;
+    private TokenProvider tokenProvider;
+    private MockRestServiceServer keycloak;
+    private RSAKey signingKey;
+
+    @BeforeEach
+    void setUp() throws JOSEException {
+        signingKey = new RSAKeyGenerator(2048).keyID("key-1").generate();
+        JwksCache jwksCache = new JwksCache(ISSUER + "/protocol/openid-connect/certs", 300, 10000, 2000, 5000) {
+            @Override
+            JWKSet load() {
+                return new JWKSet(signingKey.toPublicJWK());
+            }
+        };
+        KeycloakEndpointPool endpointPool =
+                new KeycloakEndpointPool("http://keycloak.test", 3, 10000, 300000, 3000, new SimpleMeterRegistry());
+        tokenRequestHedger = spy(new TokenRequestHedger(false, endpointPool, 0.95, 20, 0.05, 10, 4,
+                new SimpleMeterRegistry()));
+        tokenProvider = new TokenProvider(new RestTemplateBuilder(), endpointPool, tokenRequestHedger, jwksCache, new DependencyTimer(InMemoryTracing.create(meterRegistry).observationRegistry()), 2000, 5000);
+        ReflectionTestUtils.setField(tokenProvider, "realm", "bank");
+        ReflectionTestUtils.setField(tokenProvider, "clientId", "auth-service");
+        ReflectionTestUtils.setField(tokenProvider, "clientSecret", "secret");
+        ReflectionTestUtils.setField(tokenProvider, "refreshGraceMs", 5000L);
+        ReflectionTestUtils.setField(tokenProvider, "issuer", ISSUER);
+        ReflectionTestUtils.setField(tokenProvider, "adminAppName", "admin.app");
+        ReflectionTestUtils.setField(tokenProvider, "adminAppPassword", "admin-password");
+
+        RestTemplate restTemplate = (RestTemplate) ReflectionTestUtils.getField(tokenProvider, "restTemplate");
+        keycloak = MockRestServiceServer.bindTo(restTemplate).build();
+    }
+
+    @Test
+    void getUserAccessToken_shouldNotHedgePasswordGrant() {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andExpect(content().formDataContains(Map.of("grant_type", "password", "username", "user")))
+                .andRespond(withUnauthorizedRequest());
+
+        assertThrows(KeycloakException.class, () -> tokenProvider.getUserAccessToken("user", "wrong"));
+        verify(tokenRequestHedger, never()).execute(any(), any());
+        keycloak.verify();
+    }
+
+    @Test
+    void getTokenAdminAppAuth_shouldGoThroughHedger() throws KeycloakException {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andExpect(content().formDataContains(Map.of("grant_type", "password", "username", "admin.app")))
+                .andRespond(withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON));
+
+        assertEquals("new-access", tokenProvider.getTokenAdminAppAuth());
+        verify(tokenRequestHedger).execute(any(), any());
+        keycloak.verify();
+    }
+
+    @Test
+    void getNewToken_shouldShareOneKeycloakCallBetweenConcurrentCallers() throws Exception {
+        int callers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andExpect(content().formDataContains(Map.of("grant_type", "refresh_token", "refresh_token", "old-refresh")))
+                .andRespond(request -> {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<TokensUser>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return tokenProvider.getNewToken("old-refresh");
+                }));
+            }
+            start.countDown();
+            for (Future<TokensUser> result : results) {
+                assertEquals("new-refresh", result.get().getRefreshToken());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        keycloak.verify();
+    }
+
+    @Test
+    void getNewToken_shouldReuseResultWithinGraceWindow() {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON));
+
+        TokensUser first = tokenProvider.getNewToken("old-refresh");
+        TokensUser second = tokenProvider.getNewToken("old-refresh");
+
+        assertEquals("new-access", first.getAccessToken());
+        assertSame(first, second);
+        keycloak.verify();
+    }
+
+    @Test
+    void getNewToken_shouldNotKeepRefreshTokenInMemory() {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON));
+
+        tokenProvider.getNewToken("old-refresh");
+
+        Cache<?, ?> refreshFlights = (Cache<?, ?>) ReflectionTestUtils.getField(tokenProvider, "refreshFlights");
+        assertEquals(1, refreshFlights.asMap().size());
+        assertFalse(refreshFlights.asMap().containsKey("old-refresh"));
+        assertTrue(refreshFlights.asMap().keySet().iterator().next().toString().matches("[0-9a-f]{64}"));
+    }
+
+    @Test
+    void getNewToken_shouldTimeOnlyCallsThatReachKeycloak() {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON));
+
+        tokenProvider.getNewToken("old-refresh");
+        tokenProvider.getNewToken("old-refresh");
+
+        assertEquals(1, meterRegistry.get(DependencyTimer.CALLS)
+                .tags("dependency", "keycloak", "operation", "token.refresh", "outcome", "success")
+                .timer().count());
+    }
+
+    @Test
+    void getNewToken_shouldCallKeycloakAgainAfterGraceWindow() {
+        ReflectionTestUtils.setField(tokenProvider, "refreshGraceMs", -1L);
+        keycloak.expect(ExpectedCount.twice(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON));
+
+        tokenProvider.getNewToken("old-refresh");
+        tokenProvider.getNewToken("old-refresh");
+
+        keycloak.verify();
+    }
+
+    @Test
+    void getNewToken_shouldReturnNullWhenKeycloakRejectsRefreshToken() {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL)).andRespond(withBadRequest());
+
+        assertNull(tokenProvider.getNewToken("old-refresh"));
+        keycloak.verify();
+    }
+
+    @Test
+    void getNewToken_shouldNotCacheFailures() {
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL)).andRespond(withServerError());
+        keycloak.expect(ExpectedCount.once(), requestTo(TOKEN_URL))
+                .andRespond(withSuccess(REFRESHED_TOKENS, MediaType.APPLICATION_JSON));
+
+        assertThrows(HttpServerErrorException.class, () -> tokenProvider.getNewToken("old-refresh"));
+        assertNotNull(tokenProvider.getNewToken("old-refresh"));
+        keycloak.verify();
+    }
+
+    private String sign(RSAKey key, String issuer, long expiresInSeconds) throws JOSEException {
+        return sign(key, new JWTClaimsSet.Builder()
+                .subject("user-id")
+                .issuer(issuer)
+                .claim("typ", "Bearer")
+                .claim("azp", "auth-service")
+                .expirationTime(new Date(System.currentTimeMillis() + expiresInSeconds * 1000))
+                .build());
+    }
+
+    private String sign(RSAKey key, JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    @Test
+    void verifyToken_shouldReturnClaimsOfValidToken() throws JOSEException {
+        JWTClaimsSet claims = tokenProvider.verifyToken(sign(signingKey, ISSUER, 300));
+
+        assertNotNull(claims);
+        assertEquals("user-id", claims.getSubject());
+        assertTrue(tokenProvider.validateToken(sign(signingKey, ISSUER, 300)));
+    }
+
+    @Test
+    void verifyToken_shouldRejectExpiredToken() throws JOSEException {
+        assertNull(tokenProvider.verifyToken(sign(signingKey, ISSUER, -60)));
+    }
+
+    @Test
+    void verifyToken_shouldRejectTokenOfOtherIssuer() throws JOSEException {
+        assertNull(tokenProvider.verifyToken(sign(signingKey, "http://evil.test/realms/bank", 300)));
+    }
+
+    @Test
+    void verifyToken_shouldRejectTokenSignedWithOtherKey() throws JOSEException {
+        RSAKey otherKey = new RSAKeyGenerator(2048).keyID("key-1").generate();
+
+        assertNull(tokenProvider.verifyToken(sign(otherKey, ISSUER, 300)));
+        assertNull(tokenProvider.verifyToken("not-a-jwt"));
+    }
+
+    @Test
+    void verifyToken_shouldRejectIdToken() throws JOSEException {
+        JWTClaimsSet idToken = new JWTClaimsSet.Builder()
+                .subject("user-id")
+                .issuer(ISSUER)
+                .claim("typ", "ID")
+                .claim("azp", "auth-service")
+                .audience("auth-service")
+                .expirationTime(new Date(System.currentTimeMillis() + 300_000))
+                .build();
+
+        assertNull(tokenProvider.verifyToken(sign(signingKey, idToken)));
+    }
+
+    @Test
+    void verifyToken_shouldRejectAccessTokenOfOtherClient() throws JOSEException {
+        JWTClaimsSet.Builder otherClient = new JWTClaimsSet.Builder()
+                .subject("user-id")
+                .issuer(ISSUER)
+                .claim("typ", "Bearer")
+                .claim("azp", "other-client")
+                .expirationTime(new Date(System.currentTimeMillis() + 300_000));
+
+        assertNull(tokenProvider.verifyToken(sign(signingKey, otherClient.audience("account").build())));
+        assertNotNull(tokenProvider.verifyToken(sign(signingKey,
+                otherClient.audience(List.of("account", "auth-service")).build())));
+    }
+
+}
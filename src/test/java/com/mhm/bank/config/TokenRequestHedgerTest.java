@@ -0,0 +1,148 @@
+package com.mhm.bank.config;
+
+import com.mhm.bank.service.dto.TokenResponse;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenRequestHedgerTest {
+    private static final long SLOW_NODE_DELAY_MS = 1500;
+
+    private HttpServer slowNode;
+    private HttpServer fastNode;
+    private final AtomicInteger slowNodeRequests = new AtomicInteger();
+    private final AtomicInteger fastNodeRequests = new AtomicInteger();
+    private SimpleMeterRegistry meterRegistry;
+    private TokenRequestHedger tokenRequestHedger;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        slowNode = stubKeycloak("slow", SLOW_NODE_DELAY_MS, slowNodeRequests);
+        fastNode = stubKeycloak("fast", 0, fastNodeRequests);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (tokenRequestHedger != null) {
+            tokenRequestHedger.shutdown();
+        }
+        slowNode.stop(0);
+        fastNode.stop(0);
+    }
+
+    /** Token endpoint stub that answers after the given delay with an access token naming the node. */
+    private static HttpServer stubKeycloak(String name, long delayMs, AtomicInteger requests) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/realms/bank/protocol/openid-connect/token", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"access_token\":\"" + name + "\",\"refresh_token\":\"refresh\",\"expires_in\":\"300\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private TokenRequestHedger hedger(int maxBurst) {
+        KeycloakEndpointPool endpointPool = new KeycloakEndpointPool(url(slowNode) + "," + url(fastNode),
+                3, 10000, 300000, 3000, meterRegistry);
+        return new TokenRequestHedger(true, endpointPool, 0.95, 50, 0, maxBurst, 8, meterRegistry);
+    }
+
+    /** Password grant against the given node, sent the way {@link TokenProvider} sends it. */
+    private static TokenResponse passwordGrant(String node) {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "password");
+        form.add("username", "testuser");
+        form.add("password", "password");
+        return new RestTemplate().postForObject(node + "/realms/bank/protocol/openid-connect/token", form, TokenResponse.class);
+    }
+
+    @Test
+    void execute_shouldTakeAnswerOfHedgeWhenPrimaryIsSlow() {
+        tokenRequestHedger = hedger(1);
+
+        long start = System.nanoTime();
+        TokenResponse tokens = tokenRequestHedger.execute(url(slowNode), TokenRequestHedgerTest::passwordGrant);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("fast", tokens.getAccessToken());
+        assertTrue(elapsedMs < SLOW_NODE_DELAY_MS, "Login took " + elapsedMs + " ms");
+        assertEquals(1, fastNodeRequests.get());
+        assertEquals(1.0, meterRegistry.counter(TokenRequestHedger.HEDGES, "outcome", "won").count());
+    }
+
+    @Test
+    void execute_shouldWaitForPrimaryWhenHedgeBudgetIsExhausted() {
+        tokenRequestHedger = hedger(0);
+
+        TokenResponse tokens = tokenRequestHedger.execute(url(slowNode), TokenRequestHedgerTest::passwordGrant);
+
+        assertEquals("slow", tokens.getAccessToken());
+        assertEquals(0, fastNodeRequests.get());
+        assertEquals(1.0, meterRegistry.counter(TokenRequestHedger.HEDGES, "outcome", "budget_exhausted").count());
+    }
+
+    @Test
+    void execute_shouldRunRequestsWithCallersObservationCurrent() {
+        tokenRequestHedger = hedger(1);
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(context -> true);
+        Observation login = Observation.start("login", observationRegistry);
+
+        Observation current;
+        try (Observation.Scope scope = login.openScope()) {
+            current = tokenRequestHedger.execute(url(fastNode), node -> observationRegistry.getCurrentObservation());
+        } finally {
+            login.stop();
+        }
+
+        assertSame(login, current);
+    }
+
+    @Test
+    void recordLatency_shouldDelayHedgesToConfiguredPercentile() {
+        tokenRequestHedger = new TokenRequestHedger(true,
+                new KeycloakEndpointPool(url(fastNode), 3, 10000, 300000, 3000, meterRegistry),
+                0.95, 20, 0.05, 10, 2, meterRegistry);
+        for (long latency = 1; latency <= 100; latency++) {
+            tokenRequestHedger.recordLatency(latency);
+        }
+
+        // 96 samples recorded when the delay was last recomputed; their 95th percentile is 92 ms
+        assertEquals(92, tokenRequestHedger.getHedgeDelayMs());
+    }
+
+}
@@ -4,22 +4,32 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.mhm.bank.controller.dto.*;
+import com.mhm.bank.exception.IdempotencyKeyReusedException;
 import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.RegistrationInProgressException;
 import com.mhm.bank.exception.UserAlreadyExistsException;
 import com.mhm.bank.service.AuthService;
+import com.mhm.bank.service.RegistrationFingerprint;
+import com.mhm.bank.service.TokenIntrospectionService;
 import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import com.mhm.bank.service.session.RefreshTokenVault;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.KafkaException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -32,6 +42,12 @@ class AuthControllerTest {
     private AuthService authService;
     @Mock
     private IKeycloakService keycloakService;
+    @Mock
+    private TokenIntrospectionService tokenIntrospectionService;
+    @Spy
+    private TokenCookieWriter tokenCookieWriter = new TokenCookieWriter(false, 3600, "Lax");
+    @Mock
+    private RefreshTokenVault refreshTokenVault;
 
     @InjectMocks
     private AuthController authController;
@@ -60,14 +76,14 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenReturn("User with ID 12345678 has been added");
 
-        ResponseEntity<String> response = authController.registerUser(userInfo);
+        ResponseEntity<String> response = authController.registerUser(userInfo, null);
 
         assertEquals(HttpStatus.CREATED, response.getStatusCode());
         assertEquals("User with ID 12345678 has been added", response.getBody());
-        verify(authService).registerUser(userInfo);
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -85,11 +101,11 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new UserAlreadyExistsException("User already exists"));
 
-        assertThrows(UserAlreadyExistsException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(UserAlreadyExistsException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -107,11 +123,11 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new IllegalArgumentException("Invalid email format"));
 
-        assertThrows(IllegalArgumentException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(IllegalArgumentException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -129,11 +145,11 @@ class AuthControllerTest {
                 , null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new IllegalArgumentException("User must be at least 18 years old"));
 
-        assertThrows(IllegalArgumentException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(IllegalArgumentException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -151,11 +167,11 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new UserAlreadyExistsException("User ID already registered"));
 
-        assertThrows(UserAlreadyExistsException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(UserAlreadyExistsException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -173,11 +189,11 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new UserAlreadyExistsException("Username already taken"));
 
-        assertThrows(UserAlreadyExistsException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(UserAlreadyExistsException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -195,11 +211,11 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new KafkaException("Failed to process message"));
 
-        assertThrows(KafkaException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(KafkaException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -217,11 +233,11 @@ class AuthControllerTest {
                 null
         );
 
-        when(authService.registerUser(any(UserInformation.class)))
+        when(authService.registerUser(any(UserInformation.class), any()))
                 .thenThrow(new KeycloakException("Failed to create user in Keycloak"));
 
-        assertThrows(KeycloakException.class, () -> authController.registerUser(userInfo));
-        verify(authService).registerUser(userInfo);
+        assertThrows(KeycloakException.class, () -> authController.registerUser(userInfo, null));
+        verify(authService).registerUser(userInfo, null);
     }
 
     @Test
@@ -230,13 +246,14 @@ class AuthControllerTest {
         TokensUser expectedTokens = new TokensUser("access-token-123", "refresh-token-456", "3600");
         HttpServletResponse httpResponse = mock(HttpServletResponse.class);
 
-        when(authService.loginUser(loginRequest)).thenReturn(expectedTokens);
+        when(authService.loginUser(loginRequest, "127.0.0.1")).thenReturn(expectedTokens);
 
-        ResponseEntity<Void> response = authController.loginUser(loginRequest, httpResponse);
+        ResponseEntity<Void> response = authController.loginUser(loginRequest, new MockHttpServletRequest(), httpResponse);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(authService).loginUser(loginRequest);
-        verify(httpResponse, times(2)).addCookie(any());
+        verify(authService).loginUser(loginRequest, "127.0.0.1");
+        verify(httpResponse).addHeader("Set-Cookie", "accessToken=access-token-123; Max-Age=3600; Path=/; HttpOnly; SameSite=Lax");
+        verify(httpResponse).addHeader("Set-Cookie", "refreshToken=refresh-token-456; Max-Age=3600; Path=/; HttpOnly; SameSite=Lax");
     }
 
     @Test
@@ -244,13 +261,13 @@ class AuthControllerTest {
         LoginRequest loginRequest = new LoginRequest("testuser", "wrongpassword");
         HttpServletResponse httpResponse = mock(HttpServletResponse.class);
 
-        when(authService.loginUser(loginRequest)).thenReturn(null);
+        when(authService.loginUser(loginRequest, "127.0.0.1")).thenReturn(null);
 
-        ResponseEntity<Void> response = authController.loginUser(loginRequest, httpResponse);
+        ResponseEntity<Void> response = authController.loginUser(loginRequest, new MockHttpServletRequest(), httpResponse);
 
         assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
-        verify(authService).loginUser(loginRequest);
-        verify(httpResponse, never()).addCookie(any());
+        verify(authService).loginUser(loginRequest, "127.0.0.1");
+        verify(httpResponse, never()).addHeader(eq("Set-Cookie"), any());
     }
 
     @Test
@@ -258,11 +275,11 @@ class AuthControllerTest {
         LoginRequest loginRequest = new LoginRequest("testuser", "password123");
         HttpServletResponse response = mock(HttpServletResponse.class);
 
-        when(authService.loginUser(loginRequest))
+        when(authService.loginUser(loginRequest, "127.0.0.1"))
                 .thenThrow(new KeycloakException("Authentication failed"));
 
-        assertThrows(KeycloakException.class, () -> authController.loginUser(loginRequest, response));
-        verify(authService).loginUser(loginRequest);
+        assertThrows(KeycloakException.class, () -> authController.loginUser(loginRequest, new MockHttpServletRequest(), response));
+        verify(authService).loginUser(loginRequest, "127.0.0.1");
     }
 
 
@@ -299,14 +316,14 @@ class AuthControllerTest {
         HttpServletResponse response = mock(HttpServletResponse.class);
 
         when(keycloakService.validateToken(request.accessToken())).thenReturn(false);
-        when(authService.refreshToken(request.refreshToken())).thenReturn(newTokens);
+        when(authService.refreshToken(request.refreshToken(), "127.0.0.1")).thenReturn(newTokens);
 
-        ResponseEntity<Void> result = authController.refreshTokenResponse(request, response);
+        ResponseEntity<Void> result = authController.refreshTokenResponse(request, null, new MockHttpServletRequest(), response);
 
         assertEquals(HttpStatus.OK, result.getStatusCode());
         verify(keycloakService).validateToken(request.accessToken());
-        verify(authService).refreshToken(request.refreshToken());
-        verify(response).addCookie(any());
+        verify(authService).refreshToken(request.refreshToken(), "127.0.0.1");
+        verify(response).addHeader(eq("Set-Cookie"), startsWith("accessToken=new-access-token;"));
     }
 
     @Test
@@ -315,13 +332,13 @@ class AuthControllerTest {
         HttpServletResponse response = mock(HttpServletResponse.class);
 
         when(keycloakService.validateToken(request.accessToken())).thenReturn(false);
-        when(authService.refreshToken(request.refreshToken())).thenReturn(null);
+        when(authService.refreshToken(request.refreshToken(), "127.0.0.1")).thenReturn(null);
 
-        ResponseEntity<Void> result = authController.refreshTokenResponse(request, response);
+        ResponseEntity<Void> result = authController.refreshTokenResponse(request, null, new MockHttpServletRequest(), response);
 
         assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
         verify(keycloakService).validateToken(request.accessToken());
-        verify(authService).refreshToken(request.refreshToken());
+        verify(authService).refreshToken(request.refreshToken(), "127.0.0.1");
     }
 
     @Test
@@ -331,11 +348,11 @@ class AuthControllerTest {
 
         when(keycloakService.validateToken(request.accessToken())).thenReturn(true);
 
-        ResponseEntity<Void> result = authController.refreshTokenResponse(request, response);
+        ResponseEntity<Void> result = authController.refreshTokenResponse(request, null, new MockHttpServletRequest(), response);
 
         assertNull(result);
         verify(keycloakService).validateToken(request.accessToken());
-        verify(authService, never()).refreshToken(any());
+        verify(authService, never()).refreshToken(any(), any());
     }
 
     @Test
@@ -344,12 +361,12 @@ class AuthControllerTest {
         HttpServletResponse response = mock(HttpServletResponse.class);
 
         when(keycloakService.validateToken(request.accessToken())).thenReturn(false);
-        when(authService.refreshToken(request.refreshToken())).thenThrow(new KeycloakException("Refresh token failed"));
+        when(authService.refreshToken(request.refreshToken(), "127.0.0.1")).thenThrow(new KeycloakException("Refresh token failed"));
 
         assertThrows(KeycloakException.class,
-                () -> authController.refreshTokenResponse(request, response));
+                () -> authController.refreshTokenResponse(request, null, new MockHttpServletRequest(), response));
         verify(keycloakService).validateToken(request.accessToken());
-        verify(authService).refreshToken(request.refreshToken());
+        verify(authService).refreshToken(request.refreshToken(), "127.0.0.1");
     }
 
     @Test
@@ -357,14 +374,242 @@ class AuthControllerTest {
         LoginRequest loginRequest = new LoginRequest("", "");
         HttpServletResponse httpResponse = mock(HttpServletResponse.class);
 
-        when(authService.loginUser(loginRequest))
+        when(authService.loginUser(loginRequest, "127.0.0.1"))
                 .thenThrow(new IllegalArgumentException("Invalid input format"));
 
         assertThrows(IllegalArgumentException.class,
-                () -> authController.loginUser(loginRequest, httpResponse));
-        verify(authService).loginUser(loginRequest);
-        verify(httpResponse, never()).addCookie(any());
+                () -> authController.loginUser(loginRequest, new MockHttpServletRequest(), httpResponse));
+        verify(authService).loginUser(loginRequest, "127.0.0.1");
+        verify(httpResponse, never()).addHeader(eq("Set-Cookie"), any());
+    }
+
+    private UserInformation idempotentUser() {
+        return new UserInformation(
+                "12345678",
+                "testuser",
+                "Password123!",
+                "John",
+                "Doe",
+                "123 Main St",
+                "john@example.com",
+                LocalDate.of(1990, 1, 1),
+                "123456789",
+                null
+        );
+    }
+
+    @Test
+    void registerUser_shouldReplayOutcome_whenIdempotencyKeyIsRepeated() throws Exception, KeycloakException {
+        AuthController controller = new AuthController(authService, keycloakService, new IdempotencyStore(100, 60),
+                tokenIntrospectionService, tokenCookieWriter, refreshTokenVault);
+        UserInformation userInfo = idempotentUser();
+        when(authService.registerUser(userInfo, "key-1")).thenReturn("User testuser with ID 12345678 has been added");
+
+        ResponseEntity<String> first = controller.registerUser(userInfo, "key-1");
+        ResponseEntity<String> second = controller.registerUser(userInfo, "key-1");
+
+        assertEquals(HttpStatus.CREATED, second.getStatusCode());
+        assertEquals(first.getBody(), second.getBody());
+        verify(authService, times(1)).registerUser(userInfo, "key-1");
+    }
+
+    @Test
+    void registerUser_shouldReplayConflict_whenIdempotencyKeyIsRepeated() throws Exception, KeycloakException {
+        AuthController controller = new AuthController(authService, keycloakService, new IdempotencyStore(100, 60),
+                tokenIntrospectionService, tokenCookieWriter, refreshTokenVault);
+        UserInformation userInfo = idempotentUser();
+        when(authService.registerUser(userInfo, "key-1")).thenThrow(new UserAlreadyExistsException("User already exists"));
+
+        assertThrows(UserAlreadyExistsException.class, () -> controller.registerUser(userInfo, "key-1"));
+        assertThrows(UserAlreadyExistsException.class, () -> controller.registerUser(userInfo, "key-1"));
+        verify(authService, times(1)).registerUser(userInfo, "key-1");
+    }
+
+    @Test
+    void registerUser_shouldRetry_whenPreviousAttemptFailedTransiently() throws Exception, KeycloakException {
+        AuthController controller = new AuthController(authService, keycloakService, new IdempotencyStore(100, 60),
+                tokenIntrospectionService, tokenCookieWriter, refreshTokenVault);
+        UserInformation userInfo = idempotentUser();
+        when(authService.registerUser(userInfo, "key-1"))
+                .thenThrow(new KeycloakException("Keycloak unavailable"))
+                .thenReturn("User testuser with ID 12345678 has been added");
+
+        assertThrows(KeycloakException.class, () -> controller.registerUser(userInfo, "key-1"));
+        ResponseEntity<String> response = controller.registerUser(userInfo, "key-1");
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        verify(authService, times(2)).registerUser(userInfo, "key-1");
     }
 
+    @Test
+    void registerUser_shouldReportInProgress_whenOriginalRequestIsStillRunning() throws Exception, KeycloakException {
+        IdempotencyStore idempotencyStore = new IdempotencyStore(100, 60);
+        AuthController controller = new AuthController(authService, keycloakService, idempotencyStore,
+                tokenIntrospectionService, tokenCookieWriter, refreshTokenVault);
+        UserInformation userInfo = idempotentUser();
+        idempotencyStore.putIfAbsent("key-1", RegistrationFingerprint.of(userInfo), new CompletableFuture<>());
+
+        assertThrows(RegistrationInProgressException.class, () -> controller.registerUser(userInfo, "key-1"));
+        verify(authService, never()).registerUser(any(), any());
+    }
+
+    @Test
+    void registerUser_shouldForgetOutcome_whenOriginalRequestFailedWithError() throws Exception, KeycloakException {
+        AuthController controller = new AuthController(authService, keycloakService, new IdempotencyStore(100, 60),
+                tokenIntrospectionService, tokenCookieWriter, refreshTokenVault);
+        UserInformation userInfo = idempotentUser();
+        when(authService.registerUser(userInfo, "key-1"))
+                .thenThrow(new OutOfMemoryError("Java heap space"))
+                .thenReturn("User testuser with ID 12345678 has been added");
+
+        assertThrows(OutOfMemoryError.class, () -> controller.registerUser(userInfo, "key-1"));
+        ResponseEntity<String> response = controller.registerUser(userInfo, "key-1");
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+    }
+
+    @Test
+    void registerUser_shouldReject_whenIdempotencyKeyIsReusedForDifferentRequest() throws Exception, KeycloakException {
+        AuthController controller = new AuthController(authService, keycloakService, new IdempotencyStore(100, 60),
+                tokenIntrospectionService, tokenCookieWriter, refreshTokenVault);
+        UserInformation userInfo = idempotentUser();
+        when(authService.registerUser(userInfo, "key-1")).thenReturn("User testuser with ID 12345678 has been added");
+        controller.registerUser(userInfo, "key-1");
+
+        UserInformation otherUser = new UserInformation("87654321", "other", "Password123!", "Jane", "Smith",
+                "456 Oak St", "jane@example.com", LocalDate.of(1992, 1, 1), "987654321", null);
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> controller.registerUser(otherUser, "key-1"));
+        verify(authService, never()).registerUser(eq(otherUser), any());
+    }
+
+    @Test
+    void registerUser_shouldReturnBadRequest_whenIdempotencyKeyIsMalformed() throws Exception, KeycloakException {
+        UserInformation userInfo = idempotentUser();
+
+        assertEquals(HttpStatus.BAD_REQUEST, authController.registerUser(userInfo, "k".repeat(65)).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, authController.registerUser(userInfo, "key 1").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, authController.registerUser(userInfo, "key/../1").getStatusCode());
+        verifyNoInteractions(authService);
+    }
+
+    @Test
+    void checkAvailability_shouldReturnAvailabilityFromService() {
+        AvailabilityResponse availability = new AvailabilityResponse(true, false);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        when(authService.checkAvailability("testuser", "john@example.com", "10.0.0.1")).thenReturn(availability);
+
+        ResponseEntity<AvailabilityResponse> response = authController.checkAvailability("testuser", "john@example.com",
+                request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(availability, response.getBody());
+    }
+
+    @Test
+    void checkAvailability_shouldReturnBadRequest_whenNothingToCheck() {
+        ResponseEntity<AvailabilityResponse> response = authController.checkAvailability(null, null,
+                new MockHttpServletRequest());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(authService);
+    }
+
+    @Test
+    void introspectToken_shouldReturnClaimsFromService() {
+        TokenIntrospection introspection = new TokenIntrospection(true, "user-id", "testuser", List.of("user"), 1700000000L);
+        when(tokenIntrospectionService.introspect("access-token")).thenReturn(introspection);
+
+        ResponseEntity<TokenIntrospection> response = authController.introspectToken(new IntrospectionRequest("access-token"));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(introspection, response.getBody());
+    }
+
+    @Test
+    void introspectToken_shouldReturnBadRequest_whenTokenIsMissing() {
+        ResponseEntity<TokenIntrospection> response = authController.introspectToken(new IntrospectionRequest(null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(tokenIntrospectionService);
+    }
+
+    @Test
+    void introspectTokens_shouldReturnResultsInOrder() {
+        ReflectionTestUtils.setField(authController, "maxIntrospectionBatchSize", 100);
+        List<String> tokens = List.of("valid-token", "expired-token");
+        List<TokenIntrospection> introspections = List.of(
+                new TokenIntrospection(true, "user-id", "testuser", List.of("user"), 1700000000L),
+                TokenIntrospection.inactive());
+        when(tokenIntrospectionService.introspect(tokens)).thenReturn(introspections);
+
+        ResponseEntity<List<TokenIntrospection>> response =
+                authController.introspectTokens(new BatchIntrospectionRequest(tokens));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(introspections, response.getBody());
+    }
+
+    @Test
+    void introspectTokens_shouldReturnBadRequest_whenBatchIsTooLarge() {
+        ReflectionTestUtils.setField(authController, "maxIntrospectionBatchSize", 2);
+
+        ResponseEntity<List<TokenIntrospection>> response =
+                authController.introspectTokens(new BatchIntrospectionRequest(List.of("a", "b", "c")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(tokenIntrospectionService);
+    }
+
+    @Test
+    void loginUser_shouldKeepRefreshTokenServerSide_whenVaultIsEnabled() throws KeycloakException {
+        LoginRequest loginRequest = new LoginRequest("testuser", "password123");
+        TokensUser tokens = new TokensUser("access-token-123", "refresh-token-456", "300");
+        HttpServletResponse httpResponse = mock(HttpServletResponse.class);
+        when(authService.loginUser(loginRequest, "127.0.0.1")).thenReturn(tokens);
+        when(refreshTokenVault.isEnabled()).thenReturn(true);
+        when(refreshTokenVault.open(tokens)).thenReturn("session-1");
+
+        ResponseEntity<Void> response = authController.loginUser(loginRequest, new MockHttpServletRequest(), httpResponse);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(httpResponse).addHeader("Set-Cookie", "accessToken=access-token-123; Max-Age=300; Path=/; HttpOnly; SameSite=Lax");
+        verify(httpResponse).addHeader("Set-Cookie", "sessionId=session-1; Max-Age=3600; Path=/; HttpOnly; SameSite=Lax");
+        verify(httpResponse, never()).addHeader(eq("Set-Cookie"), startsWith("refreshToken="));
+    }
+
+    @Test
+    void refreshToken_shouldRefreshFromSession_whenSessionCookieIsSent() throws KeycloakException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(refreshTokenVault.isEnabled()).thenReturn(true);
+        when(refreshTokenVault.refresh("session-1", "127.0.0.1")).thenReturn(new TokensUser("new-access-token", null, "300"));
+
+        ResponseEntity<Void> result = authController.refreshTokenResponse(null, "session-1", new MockHttpServletRequest(), response);
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        verify(response).addHeader("Set-Cookie", "accessToken=new-access-token; Max-Age=300; Path=/; HttpOnly; SameSite=Lax");
+        verifyNoInteractions(authService, keycloakService);
+    }
+
+    @Test
+    void refreshToken_shouldReturnUnauthorized_whenSessionIsUnknown() throws KeycloakException {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(refreshTokenVault.isEnabled()).thenReturn(true);
+        when(refreshTokenVault.refresh("expired-session", "127.0.0.1")).thenReturn(null);
+
+        ResponseEntity<Void> result = authController.refreshTokenResponse(null, "expired-session", new MockHttpServletRequest(), response);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
+        verify(response, never()).addHeader(any(), any());
+    }
+
+    @Test
+    void refreshToken_shouldReturnBadRequest_whenNeitherTokensNorSessionAreSent() throws KeycloakException {
+        ResponseEntity<Void> result = authController.refreshTokenResponse(null, null, new MockHttpServletRequest(),
+                mock(HttpServletResponse.class));
+
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+    }
 
-}
\ No newline at end of file
+}
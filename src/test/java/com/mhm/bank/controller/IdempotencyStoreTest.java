@@ -0,0 +1,58 @@
+package com.mhm.bank.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+
+    @Test
+    void putIfAbsent_shouldReturnExistingEntryForKnownKey() {
+        IdempotencyStore store = new IdempotencyStore(10, 60);
+        CompletableFuture<ResponseEntity<String>> first = new CompletableFuture<>();
+
+        assertNull(store.putIfAbsent("key", "1", first));
+        IdempotencyStore.Entry existing = store.putIfAbsent("key", "1", new CompletableFuture<>());
+
+        assertNotNull(existing);
+        assertSame(first, existing.outcome());
+    }
+
+    @Test
+    void putIfAbsent_shouldEvictOldestEntriesBeyondCapacity() {
+        IdempotencyStore store = new IdempotencyStore(2, 60);
+
+        store.putIfAbsent("key-1", "1", new CompletableFuture<>());
+        store.putIfAbsent("key-2", "2", new CompletableFuture<>());
+        store.putIfAbsent("key-3", "3", new CompletableFuture<>());
+
+        assertEquals(2, store.size());
+        assertNull(store.putIfAbsent("key-1", "1", new CompletableFuture<>()));
+    }
+
+    @Test
+    void putIfAbsent_shouldIgnoreExpiredEntries() {
+        IdempotencyStore store = new IdempotencyStore(10, 0);
+
+        store.putIfAbsent("key", "1", new CompletableFuture<>());
+
+        assertNull(store.putIfAbsent("key", "1", new CompletableFuture<>()));
+    }
+
+    @Test
+    void remove_shouldOnlyForgetMatchingOutcome() {
+        IdempotencyStore store = new IdempotencyStore(10, 60);
+        CompletableFuture<ResponseEntity<String>> outcome = new CompletableFuture<>();
+        store.putIfAbsent("key", "1", outcome);
+
+        store.remove("key", new CompletableFuture<>());
+        assertNotNull(store.putIfAbsent("key", "1", new CompletableFuture<>()));
+
+        store.remove("key", outcome);
+        assertNull(store.putIfAbsent("key", "1", new CompletableFuture<>()));
+    }
+
+}
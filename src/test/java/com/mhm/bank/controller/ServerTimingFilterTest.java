@@ -0,0 +1,60 @@
+package com.mhm.bank.controller;
+
+import com.mhm.bank.service.ServerTiming;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingFilterTest {
+
+    private final ServerTimingFilter filter = new ServerTimingFilter();
+
+    @Test
+    void doFilter_shouldAddHeaderBeforeBodyIsWritten() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/register");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp)
+                    throws IOException {
+                ServerTiming.stop(ServerTiming.Stage.DB_INSERT, ServerTiming.start());
+                resp.getWriter().write("User added");
+                resp.flushBuffer();
+            }
+        }));
+
+        assertTrue(response.getHeader(ServerTiming.HEADER).startsWith("db-insert;dur="));
+        assertEquals("User added", response.getContentAsString());
+    }
+
+    @Test
+    void doFilter_shouldAddHeaderToResponseWithoutBody() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertTrue(response.getHeader(ServerTiming.HEADER).startsWith("total;dur="));
+    }
+
+    @Test
+    void doFilter_shouldSkipOtherEndpoints() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/auth/me");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertNull(response.getHeader(ServerTiming.HEADER));
+        assertEquals(0, ServerTiming.start());
+    }
+
+}
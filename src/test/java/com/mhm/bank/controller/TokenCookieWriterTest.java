@@ -0,0 +1,41 @@
+package com.mhm.bank.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.*;
+
+class TokenCookieWriterTest {
+
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+
+    @Test
+    void writeAccessToken_shouldUseExpiresInAsMaxAge() {
+        new TokenCookieWriter(true, 3600, "Strict").writeAccessToken(response, "header.payload.signature", "300");
+
+        verify(response).addHeader("Set-Cookie",
+                "accessToken=header.payload.signature; Max-Age=300; Path=/; HttpOnly; Secure; SameSite=Strict");
+    }
+
+    @Test
+    void writeAccessToken_shouldFallBackToConfiguredMaxAge() {
+        TokenCookieWriter tokenCookieWriter = new TokenCookieWriter(false, 3600, "");
+
+        tokenCookieWriter.writeAccessToken(response, "a", null);
+        tokenCookieWriter.writeAccessToken(response, "b", "not-a-number");
+        tokenCookieWriter.writeAccessToken(response, "c", "86400");
+
+        verify(response).addHeader("Set-Cookie", "accessToken=a; Max-Age=3600; Path=/; HttpOnly");
+        verify(response).addHeader("Set-Cookie", "accessToken=b; Max-Age=3600; Path=/; HttpOnly");
+        verify(response).addHeader("Set-Cookie", "accessToken=c; Max-Age=3600; Path=/; HttpOnly");
+    }
+
+    @Test
+    void writeRefreshToken_shouldUseConfiguredMaxAge() {
+        new TokenCookieWriter(false, 3600, "Lax").writeRefreshToken(response, "refresh");
+
+        verify(response).addHeader("Set-Cookie", "refreshToken=refresh; Max-Age=3600; Path=/; HttpOnly; SameSite=Lax");
+        verifyNoMoreInteractions(response);
+    }
+
+}
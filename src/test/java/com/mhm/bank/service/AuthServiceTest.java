@@ -2,10 +2,18 @@ package com.mhm.bank.service;
 
 import com.mhm.bank.config.TokenProvider;
 import com.mhm.bank.controller.dto.*;
+import com.mhm.bank.exception.AvailabilityRateLimitedException;
 import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.KeycloakUnavailableException;
+import com.mhm.bank.exception.LoginRateLimitedException;
+import com.mhm.bank.exception.KeycloakUserSetupException;
 import com.mhm.bank.exception.UserAlreadyExistsException;
 import com.mhm.bank.repository.UserRepository;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity.SagaState;
 import com.mhm.bank.repository.entity.UserEntity;
+import com.mhm.bank.service.audit.AuthAuditLog;
+import com.mhm.bank.service.audit.AuthAuditLog.Event;
 import com.mhm.bank.service.external.KafkaProducerService;
 import com.mhm.bank.service.external.keycloak.IKeycloakService;
 import org.apache.kafka.common.KafkaException;
@@ -18,7 +26,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Base64;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -48,10 +58,19 @@ class AuthServiceTest {
     private TokenService tokenService;
     @Mock
     private UserDataAccessService userDataAccessService;
+    @Mock
+    private RegistrationSagaService registrationSagaService;
+    @Mock
+    private LoginAttemptGuard loginAttemptGuard;
+    @Mock
+    private AvailabilityCheckGuard availabilityCheckGuard;
+    @Mock
+    private AuthAuditLog auditLog;
     @InjectMocks
     private AuthService authService;
     private UserInformation userInformation;
     private UserEntity userEntity;
+    private RegistrationSagaEntity saga;
 
     @BeforeEach
     void setUp() {
@@ -79,8 +98,13 @@ class AuthServiceTest {
         userEntity.setBirthDate(userInformation.birthdate());
 
         //For Keycloak
-        ReflectionTestUtils.setField(authService, "authTimeout", 30);
+        ReflectionTestUtils.setField(authService, "authTimeout", 30000);
         ReflectionTestUtils.setField(authService, "kcUserRole", "user");
+
+        saga = new RegistrationSagaEntity();
+        saga.setId("saga-id");
+        saga.setState(SagaState.STARTED);
+        lenient().when(registrationSagaService.begin(any(), any())).thenReturn(saga);
     }
 
     private SendResult<String, UserRegisteredEvent> mockSendResult() {
@@ -106,26 +130,63 @@ class AuthServiceTest {
     void loginUserSuccessfully() throws KeycloakException {
         LoginRequest loginRequest = new LoginRequest("testuser", "password123");
         TokensUser expectedTokens = new TokensUser("access-token", "refresh-token", "3600");
-        String adminToken = "admin-token";
 
-        when(keycloakService.getTokenAdminAppAuth()).thenReturn(adminToken);
-        when(keycloakService.loginUser(loginRequest, adminToken)).thenReturn(expectedTokens);
+        when(keycloakService.loginUser(loginRequest)).thenReturn(expectedTokens);
 
-        TokensUser result = authService.loginUser(loginRequest);
+        TokensUser result = authService.loginUser(loginRequest, "127.0.0.1");
 
         assertEquals(expectedTokens, result);
-        verify(keycloakService).getTokenAdminAppAuth();
-        verify(keycloakService).loginUser(loginRequest, adminToken);
+        verify(keycloakService).loginUser(loginRequest);
+        verify(keycloakService, never()).getTokenAdminAppAuth();
+        verify(auditLog).success(Event.LOGIN, "testuser", "127.0.0.1");
     }
 
     @Test
     void loginUserFailsWithInvalidCredentials() throws KeycloakException {
         LoginRequest loginRequest = new LoginRequest("testuser", "wrongpass");
-        when(keycloakService.getTokenAdminAppAuth())
-                .thenThrow(new KeycloakException("Invalid credentials"));
+        when(keycloakService.loginUser(loginRequest))
+                .thenThrow(new KeycloakException("Invalid user credentials", "401 UNAUTHORIZED", null));
+
+        assertThrows(KeycloakException.class, () ->
+                authService.loginUser(loginRequest, "127.0.0.1"));
+        verify(loginAttemptGuard).recordFailure("testuser");
+        verify(auditLog).failure(Event.LOGIN, "testuser", "127.0.0.1", "401 UNAUTHORIZED");
+    }
+
+    @Test
+    void loginUserDoesNotCountKeycloakOutageAsFailedAttempt() throws KeycloakException {
+        LoginRequest loginRequest = new LoginRequest("testuser", "password123");
+        when(keycloakService.loginUser(loginRequest))
+                .thenThrow(new KeycloakException("No token response body received from Keycloak"));
 
         assertThrows(KeycloakException.class, () ->
-                authService.loginUser(loginRequest));
+                authService.loginUser(loginRequest, "127.0.0.1"));
+        verify(loginAttemptGuard, never()).recordFailure(any());
+        verify(auditLog).failure(Event.LOGIN, "testuser", "127.0.0.1", "keycloak_unavailable");
+    }
+
+    @Test
+    void loginUserAuditsCircuitBreakerRejectionWithoutCountingIt() throws KeycloakException {
+        LoginRequest loginRequest = new LoginRequest("testuser", "password123");
+        when(keycloakService.loginUser(loginRequest))
+                .thenThrow(new KeycloakUnavailableException("Keycloak is unavailable", 30));
+
+        assertThrows(KeycloakUnavailableException.class, () ->
+                authService.loginUser(loginRequest, "127.0.0.1"));
+        verify(loginAttemptGuard, never()).recordFailure(any());
+        verify(auditLog).failure(Event.LOGIN, "testuser", "127.0.0.1", "KeycloakUnavailableException");
+    }
+
+    @Test
+    void loginUserRejectedByGuardNeverCallsKeycloak() {
+        LoginRequest loginRequest = new LoginRequest("testuser", "password123");
+        doThrow(new LoginRateLimitedException("Too many login attempts", 60))
+                .when(loginAttemptGuard).checkAllowed("testuser", "127.0.0.1");
+
+        assertThrows(LoginRateLimitedException.class, () ->
+                authService.loginUser(loginRequest, "127.0.0.1"));
+        verifyNoInteractions(keycloakService);
+        verify(auditLog).failure(Event.LOGIN, "testuser", "127.0.0.1", "rate_limited");
     }
 
     @Test
@@ -154,16 +215,19 @@ class AuthServiceTest {
     @Test
     void shouldRefreshTokenSuccessfully() throws KeycloakException {
         String refreshToken = "refresh-token-123";
-        TokensUser expectedTokens = new TokensUser("new-access-token", "new-refresh-token", "3600");
+        String accessToken = "eyJhbGciOiJSUzI1NiJ9." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"preferred_username\":\"testuser\"}".getBytes(StandardCharsets.UTF_8)) + ".signature";
+        TokensUser expectedTokens = new TokensUser(accessToken, "new-refresh-token", "3600");
 
         when(keycloakService.getNewToken(refreshToken)).thenReturn(expectedTokens);
 
-        TokensUser result = authService.refreshToken(refreshToken);
+        TokensUser result = authService.refreshToken(refreshToken, "10.0.0.1");
 
         assertNotNull(result);
         assertEquals(expectedTokens.getAccessToken(), result.getAccessToken());
         assertEquals(expectedTokens.getRefreshToken(), result.getRefreshToken());
         verify(keycloakService).getNewToken(refreshToken);
+        verify(auditLog).success(Event.REFRESH, "testuser", "10.0.0.1");
     }
 
     @Test
@@ -175,11 +239,20 @@ class AuthServiceTest {
                 });
 
         KeycloakException exception = assertThrows(KeycloakException.class, () ->
-                authService.refreshToken(refreshToken));
+                authService.refreshToken(refreshToken, "10.0.0.1"));
 
         assertEquals("Invalid refresh token", exception.getMessage());
         verify(keycloakService).getNewToken(refreshToken);
     }
+
+    @Test
+    void shouldAuditClientIpWhenRefreshTokenIsRejected() throws KeycloakException {
+        when(keycloakService.getNewToken("expired-refresh-token")).thenReturn(null);
+
+        assertNull(authService.refreshToken("expired-refresh-token", "10.0.0.1"));
+
+        verify(auditLog).failure(Event.REFRESH, null, "10.0.0.1", "rejected");
+    }
     @Test
     void registerUserFailsWhenUserExists() throws UserAlreadyExistsException, KeycloakException {
         doThrow(new UserAlreadyExistsException("User already exists"))
@@ -194,16 +267,31 @@ class AuthServiceTest {
         verify(keycloakService, never()).createUser(any(), any());
         verify(userDataAccessService, never()).sendUserToDataBase(any());
         verify(kafkaProducerService, never()).sendMessage(any());
+        verify(registrationSagaService).compensate(argThat(s -> s.getKeycloakUserId() == null), any());
+        verify(auditLog).failure(Event.REGISTER, "testuser", null, "UserAlreadyExistsException");
+    }
+
+    @Test
+    void registerUserCompensatesPartiallyCreatedKeycloakUser() throws KeycloakException, UserAlreadyExistsException {
+        when(keycloakService.getTokenAdminAppAuth()).thenReturn("admin-token");
+        when(keycloakService.createUser(any(), any()))
+                .thenThrow(new KeycloakUserSetupException("Failed to set up user", "kc-user-id", new RuntimeException()));
+
+        assertThrows(KeycloakUserSetupException.class, () ->
+                authService.registerUser(userInformation));
+        verify(registrationSagaService).compensate(argThat(s -> "kc-user-id".equals(s.getKeycloakUserId())), any());
+        verify(userDataAccessService, never()).sendUserToDataBase(any());
     }
 
     @Test
     void registerUserFailsWhenKeycloakCreateFails() throws  KeycloakException {
         String token = "admin-token";
         when(keycloakService.getTokenAdminAppAuth()).thenReturn(token);
-        when(keycloakService.createUser(any(), any())).thenReturn(false);
+        when(keycloakService.createUser(any(), any())).thenReturn(null);
 
         assertThrows(KeycloakException.class, () ->
                 authService.registerUser(userInformation));
+        verify(registrationSagaService).compensate(argThat(s -> s.getKeycloakUserId() == null), any());
     }
 
     @Test
@@ -217,16 +305,17 @@ class AuthServiceTest {
     }
 
     @Test
-    void registerUserRollbackWhenDatabaseFails() throws KeycloakException {
+    void registerUserRollbackWhenDatabaseFails() throws KeycloakException, UserAlreadyExistsException {
         String token = "admin-token";
         when(keycloakService.getTokenAdminAppAuth()).thenReturn(token);
-        when(keycloakService.createUser(any(), any())).thenReturn(true);
+        when(keycloakService.createUser(any(), any())).thenReturn("kc-user-id");
         when(userDataAccessService.sendUserToDataBase(userInformation))
                 .thenThrow(new RuntimeException("Database error"));
 
         assertThrows(RuntimeException.class, () ->
                 authService.registerUser(userInformation));
-        verify(keycloakService).deleteUser(userInformation.username());
+        verify(registrationSagaService).compensate(argThat(s -> "kc-user-id".equals(s.getKeycloakUserId())), any());
+        verify(keycloakService, never()).deleteUser(any());
     }
 
     @Test
@@ -235,7 +324,7 @@ class AuthServiceTest {
         String expectedMessage = String.format("User %s with ID %s has been added", userInformation.username(), userInformation.idCard());
 
         when(keycloakService.getTokenAdminAppAuth()).thenReturn(token);
-        when(keycloakService.createUser(any(), eq("Bearer " + token))).thenReturn(true);
+        when(keycloakService.createUser(any(), eq("Bearer " + token))).thenReturn("kc-user-id");
         when(userDataAccessService.sendUserToDataBase(userInformation)).thenReturn(userEntity);
 
         UserRegisteredEvent event = new UserRegisteredEvent(
@@ -268,23 +357,46 @@ class AuthServiceTest {
 
         assertEquals(expectedMessage, result);
         verify(userDataAccessService).doesUserExistInDataBase(userInformation);
-        verify(keycloakService).createUser(any(), eq("Bearer " + token));
+        verify(keycloakService).createUser(argThat(userKCDto -> "saga-id".equals(userKCDto.registrationId())),
+                eq("Bearer " + token));
         verify(userDataAccessService).sendUserToDataBase(userInformation);
         verify(kafkaProducerService).sendMessage(any());
+        verify(registrationSagaService).advance(saga, SagaState.KEYCLOAK_USER_CREATED);
+        verify(registrationSagaService).advance(saga, SagaState.USER_STORED);
+        verify(registrationSagaService).advance(saga, SagaState.COMPLETED);
+        verify(registrationSagaService, never()).compensate(any(), any());
+        verify(auditLog).success(Event.REGISTER, "testuser", null);
+    }
+
+    @Test
+    void registerUserReturnsCompletedSagaWithoutRepeatingSteps() throws Exception {
+        RegistrationSagaEntity completed = new RegistrationSagaEntity();
+        completed.setId("idempotency-key");
+        completed.setUserId(userInformation.idCard());
+        completed.setUsername(userInformation.username());
+        completed.setState(SagaState.COMPLETED);
+        when(registrationSagaService.begin("idempotency-key", userInformation)).thenReturn(completed);
+
+        String result = authService.registerUser(userInformation, "idempotency-key");
+
+        assertEquals(String.format("User %s with ID %s has been added", userInformation.username(), userInformation.idCard()), result);
+        verifyNoInteractions(keycloakService, kafkaProducerService);
+        verify(userDataAccessService, never()).sendUserToDataBase(any());
     }
 
     @Test
-    void registerUserFailsWithKafkaError() throws  KeycloakException {
+    void registerUserFailsWithKafkaError() throws KeycloakException, UserAlreadyExistsException {
         String token = "admin-token";
         when(keycloakService.getTokenAdminAppAuth()).thenReturn(token);
-        when(keycloakService.createUser(any(), any())).thenReturn(true);
+        when(keycloakService.createUser(any(), any())).thenReturn("kc-user-id");
         when(userDataAccessService.sendUserToDataBase(userInformation)).thenReturn(userEntity);
         when(kafkaProducerService.sendMessage(any()))
                 .thenThrow(new KafkaException("Kafka timeout"));
 
         assertThrows(KafkaException.class, () ->
                 authService.registerUser(userInformation));
-        verify(keycloakService).deleteUser(userInformation.username());
+        verify(registrationSagaService).compensate(argThat(s -> "kc-user-id".equals(s.getKeycloakUserId())), any());
+        verify(keycloakService, never()).deleteUser(any());
     }
 
     @Test
@@ -308,7 +420,7 @@ class AuthServiceTest {
                 userWithRoles.username(), userWithRoles.idCard());
 
         when(keycloakService.getTokenAdminAppAuth()).thenReturn(token);
-        when(keycloakService.createUser(any(), eq("Bearer " + token))).thenReturn(true);
+        when(keycloakService.createUser(any(), eq("Bearer " + token))).thenReturn("kc-user-id");
         when(userDataAccessService.sendUserToDataBase(userWithRoles)).thenReturn(userEntity);
         when(kafkaProducerService.sendMessage(any()))
                 .thenReturn(CompletableFuture.completedFuture(mockSendResult()));
@@ -319,4 +431,14 @@ class AuthServiceTest {
         verify(keycloakService).createUser(argThat(userKCDto ->
                 userKCDto.roles().contains("custom-role")), eq("Bearer " + token));
     }
-}
\ No newline at end of file
+
+    @Test
+    void checkAvailability_shouldNotQueryDatabase_whenClientIsOverLimit() {
+        doThrow(new AvailabilityRateLimitedException("Too many availability checks", 60))
+                .when(availabilityCheckGuard).checkAllowed("10.0.0.1");
+
+        assertThrows(AvailabilityRateLimitedException.class,
+                () -> authService.checkAvailability("testuser", null, "10.0.0.1"));
+        verifyNoInteractions(userDataAccessService);
+    }
+}
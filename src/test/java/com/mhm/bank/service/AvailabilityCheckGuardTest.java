@@ -0,0 +1,36 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.exception.AvailabilityRateLimitedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AvailabilityCheckGuardTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void checkAllowed_shouldRejectClientIpOverLimit() {
+        AvailabilityCheckGuard guard = new AvailabilityCheckGuard(true, 1024, 3, 60, meterRegistry);
+        for (int i = 0; i < 3; i++) {
+            guard.checkAllowed("10.0.0.1");
+        }
+
+        AvailabilityRateLimitedException exception = assertThrows(AvailabilityRateLimitedException.class,
+                () -> guard.checkAllowed("10.0.0.1"));
+        assertEquals(60, exception.getRetryAfterSeconds());
+        assertDoesNotThrow(() -> guard.checkAllowed("10.0.0.2"));
+        assertEquals(1.0, meterRegistry.counter(AvailabilityCheckGuard.REJECTIONS).count());
+    }
+
+    @Test
+    void checkAllowed_shouldAllowEverythingWhenDisabled() {
+        AvailabilityCheckGuard guard = new AvailabilityCheckGuard(false, 1024, 1, 60, meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            assertDoesNotThrow(() -> guard.checkAllowed("10.0.0.1"));
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.repository.CompensationRepository;
+import com.mhm.bank.repository.entity.CompensationEntity;
+import com.mhm.bank.repository.entity.CompensationEntity.CompensationStatus;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CompensationServiceTest {
+
+    @Mock
+    private CompensationRepository compensationRepository;
+    @Mock
+    private IKeycloakService keycloakService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CompensationService compensationService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        compensationService = new CompensationService(compensationRepository, keycloakService, transactionManager);
+        ReflectionTestUtils.setField(compensationService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(compensationService, "initialBackoffMs", 1000L);
+        ReflectionTestUtils.setField(compensationService, "maxBackoffMs", 5000L);
+        ReflectionTestUtils.setField(compensationService, "batchSize", 50);
+    }
+
+    private CompensationEntity pendingCompensation(int attempts) {
+        CompensationEntity compensation = new CompensationEntity();
+        compensation.setKeycloakUserId("kc-user-id");
+        compensation.setUsername("testuser");
+        compensation.setStatus(CompensationStatus.PENDING);
+        compensation.setAttempts(attempts);
+        compensation.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        compensation.setCreatedAt(LocalDateTime.now().minusMinutes(1));
+        return compensation;
+    }
+
+    @Test
+    void scheduleKeycloakUserRemoval_shouldPersistPendingCompensation() {
+        compensationService.scheduleKeycloakUserRemoval("kc-user-id", "testuser");
+
+        ArgumentCaptor<CompensationEntity> captor = ArgumentCaptor.forClass(CompensationEntity.class);
+        verify(compensationRepository).save(captor.capture());
+        assertEquals("kc-user-id", captor.getValue().getKeycloakUserId());
+        assertEquals(CompensationStatus.PENDING, captor.getValue().getStatus());
+        verifyNoInteractions(keycloakService);
+    }
+
+    @Test
+    void runDueCompensations_shouldDeleteByIdAndRemoveRecord() throws KeycloakException {
+        CompensationEntity compensation = pendingCompensation(0);
+        when(compensationRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                eq(CompensationStatus.PENDING), any(), any())).thenReturn(List.of(compensation));
+
+        compensationService.runDueCompensations();
+
+        verify(keycloakService).deleteUserById("kc-user-id");
+        verify(compensationRepository).delete(compensation);
+    }
+
+    @Test
+    void runDueCompensations_shouldBackOffWhenKeycloakFails() throws KeycloakException {
+        CompensationEntity compensation = pendingCompensation(0);
+        when(compensationRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                eq(CompensationStatus.PENDING), any(), any())).thenReturn(List.of(compensation));
+        doThrow(new KeycloakException("Keycloak unavailable")).when(keycloakService).deleteUserById("kc-user-id");
+
+        compensationService.runDueCompensations();
+
+        assertEquals(1, compensation.getAttempts());
+        assertEquals(CompensationStatus.PENDING, compensation.getStatus());
+        assertTrue(compensation.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertEquals("Keycloak unavailable", compensation.getLastError());
+        verify(compensationRepository).save(compensation);
+        verify(compensationRepository, never()).delete(any());
+    }
+
+    @Test
+    void runDueCompensations_shouldGiveUpAfterMaxAttempts() throws KeycloakException {
+        CompensationEntity compensation = pendingCompensation(2);
+        when(compensationRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                eq(CompensationStatus.PENDING), any(), any())).thenReturn(List.of(compensation));
+        doThrow(new KeycloakException("Keycloak unavailable")).when(keycloakService).deleteUserById("kc-user-id");
+
+        compensationService.runDueCompensations();
+
+        assertEquals(CompensationStatus.FAILED, compensation.getStatus());
+        verify(compensationRepository).save(compensation);
+    }
+
+    @Test
+    void scheduleKeycloakUserRemoval_shouldFallBackToMemoryWhenDatabaseIsDown() throws KeycloakException {
+        when(compensationRepository.save(any())).thenThrow(new DataAccessResourceFailureException("Database down"));
+        when(compensationRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                eq(CompensationStatus.PENDING), any(), any())).thenThrow(new DataAccessResourceFailureException("Database down"));
+
+        compensationService.scheduleKeycloakUserRemoval("kc-user-id", "testuser");
+        compensationService.runDueCompensations();
+
+        verify(keycloakService).deleteUserById("kc-user-id");
+    }
+
+    @Test
+    void backoff_shouldGrowExponentiallyUpToMaximum() {
+        assertEquals(Duration.ofMillis(1000), compensationService.backoff(1));
+        assertEquals(Duration.ofMillis(2000), compensationService.backoff(2));
+        assertEquals(Duration.ofMillis(4000), compensationService.backoff(3));
+        assertEquals(Duration.ofMillis(5000), compensationService.backoff(4));
+    }
+
+}
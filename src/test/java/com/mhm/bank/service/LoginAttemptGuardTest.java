@@ -0,0 +1,105 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.exception.LoginRateLimitedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginAttemptGuardTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private LoginAttemptGuard loginAttemptGuard;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        loginAttemptGuard = new LoginAttemptGuard(true, 1024, 3, 60, 2, 900, 1000, meterRegistry);
+    }
+
+    @Test
+    void checkAllowed_shouldRejectClientIpOverLimit() {
+        for (int i = 0; i < 3; i++) {
+            loginAttemptGuard.checkAllowed("user" + i, "10.0.0.1");
+        }
+
+        LoginRateLimitedException exception = assertThrows(LoginRateLimitedException.class,
+                () -> loginAttemptGuard.checkAllowed("user4", "10.0.0.1"));
+        assertEquals(60, exception.getRetryAfterSeconds());
+        assertDoesNotThrow(() -> loginAttemptGuard.checkAllowed("user4", "10.0.0.2"));
+        assertEquals(1.0, meterRegistry.counter(LoginAttemptGuard.REJECTIONS, "key", "ip").count());
+    }
+
+    @Test
+    void checkAllowed_shouldRejectUsernameAfterFailuresRegardlessOfCase() {
+        loginAttemptGuard.recordFailure("TestUser");
+        loginAttemptGuard.checkAllowed("testuser", "10.0.0.1");
+        loginAttemptGuard.recordFailure("testuser ");
+
+        assertThrows(LoginRateLimitedException.class, () -> loginAttemptGuard.checkAllowed("testuser", "10.0.0.2"));
+        assertDoesNotThrow(() -> loginAttemptGuard.checkAllowed("otheruser", "10.0.0.2"));
+        assertEquals(1.0, meterRegistry.counter(LoginAttemptGuard.REJECTIONS, "key", "username").count());
+    }
+
+    @Test
+    void checkAllowed_shouldNotLockOutOtherUsernames_whenManyUsernamesFail() {
+        for (int i = 0; i < 5000; i++) {
+            loginAttemptGuard.recordFailure("user" + i);
+        }
+
+        assertDoesNotThrow(() -> loginAttemptGuard.checkAllowed("innocent", "10.0.0.1"));
+        assertEquals(0, loginAttemptGuard.failures("innocent", System.currentTimeMillis()));
+    }
+
+    @Test
+    void failures_shouldOnlyCountFailuresWithinTheWindow() {
+        long now = 1_000_000_000L;
+        loginAttemptGuard.recordFailure("testuser", now);
+        loginAttemptGuard.recordFailure("testuser", now + 600_000);
+
+        assertEquals(2, loginAttemptGuard.failures("testuser", now + 899_000));
+        assertEquals(1, loginAttemptGuard.failures("testuser", now + 900_000));
+        assertEquals(0, loginAttemptGuard.failures("testuser", now + 1_500_000));
+    }
+
+    @Test
+    void checkAllowed_shouldAllowEverythingWhenDisabled() {
+        LoginAttemptGuard disabled = new LoginAttemptGuard(false, 1024, 1, 60, 1, 900, 1000, meterRegistry);
+        disabled.recordFailure("testuser");
+
+        for (int i = 0; i < 5; i++) {
+            assertDoesNotThrow(() -> disabled.checkAllowed("testuser", "10.0.0.1"));
+        }
+    }
+
+    @Test
+    void slidingWindowCounter_shouldDecayPreviousWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofSeconds(60));
+        long windowStart = 60_000L * 1000;
+        for (int i = 0; i < 10; i++) {
+            counter.increment("key", windowStart + 1_000);
+        }
+
+        assertEquals(10, counter.estimate("key", windowStart + 59_000));
+        assertEquals(7, counter.estimate("key", windowStart + 60_000 + 18_000));
+        assertEquals(0, counter.estimate("key", windowStart + 120_000 + 1));
+        assertEquals(0, counter.estimate("other", windowStart + 59_000));
+    }
+
+    @Test
+    void slidingWindowCounter_shouldCountEachEventOnce_whenTableHasTwoCells() {
+        // with two cells, half of the keys used to hash both indices to the same cell and be counted twice
+        for (int key = 0; key < 100; key++) {
+            SlidingWindowCounter counter = new SlidingWindowCounter(2, Duration.ofSeconds(60));
+            long now = 60_000L * 1000;
+
+            assertEquals(1, counter.increment("10.0.0." + key, now));
+            assertEquals(2, counter.increment("10.0.0." + key, now));
+            assertEquals(2, counter.estimate("10.0.0." + key, now));
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.config.DependencyTimer;
+import com.mhm.bank.config.JwksCache;
+import com.mhm.bank.config.KeycloakEndpointPool;
+import com.mhm.bank.config.KeycloakProvider;
+import com.mhm.bank.config.TokenProvider;
+import com.mhm.bank.config.TokenRequestHedger;
+import com.mhm.bank.controller.dto.LoginRequest;
+import com.mhm.bank.controller.dto.TokensUser;
+import com.mhm.bank.service.audit.AuthAuditLog;
+import com.mhm.bank.service.external.KafkaProducerService;
+import com.mhm.bank.service.external.keycloak.KeycloakResilience;
+import com.mhm.bank.service.external.keycloak.impl.KeycloakServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Drives many concurrent logins through the real {@link AuthService}, {@link KeycloakServiceImpl} and
+ * {@link TokenProvider} against a stubbed token endpoint, and counts the round trips made to Keycloak.
+ */
+@ExtendWith(MockitoExtension.class)
+class LoginLoadTest {
+    private static final String TOKEN_URL = "http://keycloak.test/realms/bank/protocol/openid-connect/token";
+    private static final int LOGINS = 200;
+    private static final int THREADS = 8;
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+    @Mock
+    private UserDataAccessService userDataAccessService;
+    @Mock
+    private RegistrationSagaService registrationSagaService;
+    @Mock
+    private KeycloakProvider keycloakProvider;
+    @Mock
+    private LoginAttemptGuard loginAttemptGuard;
+    @Mock
+    private AuthAuditLog auditLog;
+
+    private MockRestServiceServer keycloak;
+    private AuthService authService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeycloakEndpointPool endpointPool =
+                new KeycloakEndpointPool("http://keycloak.test", 3, 10000, 300000, 3000, new SimpleMeterRegistry());
+        TokenProvider tokenProvider = new TokenProvider(new RestTemplateBuilder(), endpointPool,
+                new TokenRequestHedger(false, endpointPool, 0.95, 20, 0.05, 10, 4, new SimpleMeterRegistry()),
+                new JwksCache("http://keycloak.test/realms/bank/protocol/openid-connect/certs", 300, 10000, 2000, 5000),
+                new DependencyTimer(ObservationRegistry.NOOP), 2000, 5000);
+        ReflectionTestUtils.setField(tokenProvider, "realm", "bank");
+        ReflectionTestUtils.setField(tokenProvider, "clientId", "auth-service");
+        ReflectionTestUtils.setField(tokenProvider, "clientSecret", "secret");
+        ReflectionTestUtils.setField(tokenProvider, "adminAppName", "admin-app");
+        ReflectionTestUtils.setField(tokenProvider, "adminAppPassword", "admin-password");
+
+        RestTemplate restTemplate = (RestTemplate) ReflectionTestUtils.getField(tokenProvider, "restTemplate");
+        keycloak = MockRestServiceServer.bindTo(restTemplate).build();
+
+        authService = new AuthService(kafkaProducerService, new KeycloakServiceImpl(keycloakProvider, tokenProvider,
+                new KeycloakResilience(50, 3000, 20, 10, 30, 3, 10, THREADS, 20, 50, new SimpleMeterRegistry()),
+                new DependencyTimer(ObservationRegistry.NOOP)),
+                userDataAccessService, registrationSagaService, loginAttemptGuard, null, auditLog);
+    }
+
+    @Test
+    void login_shouldMakeOneKeycloakCallPerLogin() throws Exception {
+        AtomicInteger adminGrants = new AtomicInteger();
+        keycloak.expect(ExpectedCount.times(LOGINS), requestTo(TOKEN_URL))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(content().formDataContains(Map.of("grant_type", "password", "scope", "openid")))
+                .andExpect(request -> {
+                    if (((MockClientHttpRequest) request).getBodyAsString().contains("username=admin-app")) {
+                        adminGrants.incrementAndGet();
+                    }
+                })
+                .andRespond(withSuccess(
+                        "{\"access_token\":\"access\",\"refresh_token\":\"refresh\",\"expires_in\":\"300\"}",
+                        MediaType.APPLICATION_JSON));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<TokensUser>> results = new ArrayList<>();
+            for (int i = 0; i < LOGINS; i++) {
+                LoginRequest loginRequest = new LoginRequest("user" + i, "password" + i);
+                results.add(executor.submit(() -> authService.loginUser(loginRequest, "127.0.0.1")));
+            }
+            for (Future<TokensUser> result : results) {
+                assertEquals("access", result.get().getAccessToken());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Fails with "Too many requests" if any login makes a second round trip
+        keycloak.verify();
+        assertEquals(0, adminGrants.get());
+        verifyNoInteractions(keycloakProvider);
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.controller.dto.UserInformation;
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import com.mhm.bank.exception.IdempotencyKeyReusedException;
+import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.RegistrationInProgressException;
+import com.mhm.bank.repository.RegistrationSagaRepository;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity;
+import com.mhm.bank.repository.entity.RegistrationSagaEntity.SagaState;
+import com.mhm.bank.repository.entity.UserEntity;
+import com.mhm.bank.service.external.KafkaProducerService;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.ConstraintViolationException.ConstraintKind;
+import org.hibernate.exception.DataException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RegistrationSagaServiceTest {
+
+    @Mock
+    private RegistrationSagaRepository registrationSagaRepository;
+    @Mock
+    private UserDataAccessService userDataAccessService;
+    @Mock
+    private CompensationService compensationService;
+    @Mock
+    private IKeycloakService keycloakService;
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+    @InjectMocks
+    private RegistrationSagaService registrationSagaService;
+
+    private UserInformation userInformation;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(registrationSagaService, "staleAfterSeconds", 120);
+        ReflectionTestUtils.setField(registrationSagaService, "authTimeout", 5000L);
+        lenient().when(registrationSagaRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        userInformation = new UserInformation(
+                "test-id-1",
+                "testuser",
+                "password123",
+                "John",
+                "Doe",
+                "123 Test St",
+                "test@example.com",
+                LocalDate.of(1990, 1, 1),
+                "1234567890",
+                null
+        );
+    }
+
+    private RegistrationSagaEntity saga(SagaState state, LocalDateTime updatedAt) {
+        RegistrationSagaEntity saga = new RegistrationSagaEntity();
+        saga.setId("saga-id");
+        saga.setUserId(userInformation.idCard());
+        saga.setUsername(userInformation.username());
+        saga.setState(state);
+        saga.setCreatedAt(updatedAt);
+        saga.setUpdatedAt(updatedAt);
+        return saga;
+    }
+
+    @Test
+    void begin_shouldPersistNewSagaInStartedState() {
+        when(registrationSagaRepository.saveAndFlush(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        RegistrationSagaEntity saga = registrationSagaService.begin(null, userInformation);
+
+        assertNotNull(saga.getId());
+        assertEquals(SagaState.STARTED, saga.getState());
+        assertEquals(userInformation.idCard(), saga.getUserId());
+        assertEquals(RegistrationFingerprint.of(userInformation), saga.getRequestHash());
+    }
+
+    @Test
+    void begin_shouldRejectKey_whenConcurrentRequestInsertedItFirst() {
+        when(registrationSagaRepository.findById("saga-id")).thenReturn(Optional.empty());
+        when(registrationSagaRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key value violates unique constraint",
+                        new ConstraintViolationException("duplicate key", new SQLException("duplicate key", "23505"),
+                                ConstraintKind.UNIQUE, "registration_sagas_pkey")));
+
+        assertThrows(RegistrationInProgressException.class,
+                () -> registrationSagaService.begin("saga-id", userInformation));
+    }
+
+    @Test
+    void begin_shouldRethrowOtherIntegrityViolations() {
+        DataIntegrityViolationException tooLong = new DataIntegrityViolationException("value too long",
+                new DataException("value too long", new SQLException("value too long", "22001")));
+        when(registrationSagaRepository.findById("saga-id")).thenReturn(Optional.empty());
+        when(registrationSagaRepository.saveAndFlush(any())).thenThrow(tooLong);
+
+        assertSame(tooLong, assertThrows(DataIntegrityViolationException.class,
+                () -> registrationSagaService.begin("saga-id", userInformation)));
+    }
+
+    @Test
+    void begin_shouldRejectKeyUsedForDifferentRequest() {
+        RegistrationSagaEntity completed = saga(SagaState.COMPLETED, LocalDateTime.now());
+        completed.setRequestHash(RegistrationFingerprint.of(userInformation));
+        when(registrationSagaRepository.findById("saga-id")).thenReturn(Optional.of(completed));
+        UserInformation otherRequest = new UserInformation("test-id-2", "otheruser", "password123", "Jane", "Doe",
+                "123 Test St", "other@example.com", LocalDate.of(1990, 1, 1), "1234567890", null);
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> registrationSagaService.begin("saga-id", otherRequest));
+    }
+
+    @Test
+    void begin_shouldCompensateInterruptedSagaBeforeStartingOver() {
+        RegistrationSagaEntity interrupted = saga(SagaState.KEYCLOAK_USER_CREATED, LocalDateTime.now().minusHours(1));
+        interrupted.setKeycloakUserId("kc-user-id");
+        when(registrationSagaRepository.findById("saga-id")).thenReturn(Optional.of(interrupted));
+        when(userDataAccessService.findUserById(userInformation.idCard())).thenReturn(Optional.empty());
+
+        RegistrationSagaEntity saga = registrationSagaService.begin("saga-id", userInformation);
+
+        verify(compensationService).scheduleKeycloakUserRemoval("kc-user-id", userInformation.username());
+        assertSame(interrupted, saga);
+        assertEquals(SagaState.STARTED, saga.getState());
+        assertNull(saga.getKeycloakUserId());
+        verify(registrationSagaRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void begin_shouldRejectInterruptedSaga_whenSomeoneElseClaimedIt() {
+        when(registrationSagaRepository.findById("saga-id"))
+                .thenReturn(Optional.of(saga(SagaState.USER_STORED, LocalDateTime.now().minusHours(1))));
+        when(registrationSagaRepository.save(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(RegistrationSagaEntity.class, "saga-id"));
+
+        assertThrows(RegistrationInProgressException.class,
+                () -> registrationSagaService.begin("saga-id", userInformation));
+        verifyNoInteractions(kafkaProducerService, compensationService);
+    }
+
+    @Test
+    void begin_shouldReturnCompletedSagaForReusedKey() {
+        RegistrationSagaEntity completed = saga(SagaState.COMPLETED, LocalDateTime.now());
+        when(registrationSagaRepository.findById("saga-id")).thenReturn(Optional.of(completed));
+
+        assertSame(completed, registrationSagaService.begin("saga-id", userInformation));
+        verify(registrationSagaRepository, never()).save(any());
+    }
+
+    @Test
+    void begin_shouldRejectKeyOfRunningRegistration() {
+        when(registrationSagaRepository.findById("saga-id"))
+                .thenReturn(Optional.of(saga(SagaState.KEYCLOAK_USER_CREATED, LocalDateTime.now())));
+
+        assertThrows(RegistrationInProgressException.class,
+                () -> registrationSagaService.begin("saga-id", userInformation));
+    }
+
+    @Test
+    void compensate_shouldUndoDatabaseRowAndKeycloakUser() {
+        RegistrationSagaEntity saga = saga(SagaState.USER_STORED, LocalDateTime.now());
+        saga.setKeycloakUserId("kc-user-id");
+
+        registrationSagaService.compensate(saga, new RuntimeException("Kafka timeout"));
+
+        verify(userDataAccessService).removeUserFromDataBase(userInformation.idCard());
+        verify(compensationService).scheduleKeycloakUserRemoval("kc-user-id", userInformation.username());
+        assertEquals(SagaState.COMPENSATED, saga.getState());
+        assertEquals("Kafka timeout", saga.getLastError());
+    }
+
+    @Test
+    void compensate_shouldOnlyMarkFailedWhenNothingWasCreated() {
+        RegistrationSagaEntity saga = saga(SagaState.STARTED, LocalDateTime.now());
+
+        registrationSagaService.compensate(saga, new RuntimeException("User already exists"));
+
+        verifyNoInteractions(compensationService);
+        verify(userDataAccessService, never()).removeUserFromDataBase(any());
+        assertEquals(SagaState.FAILED, saga.getState());
+    }
+
+    @Test
+    void recoverInterruptedSagas_shouldCompensateKeycloakUserOfStartedSaga() throws KeycloakException {
+        RegistrationSagaEntity saga = saga(SagaState.STARTED, LocalDateTime.now().minusHours(1));
+        when(registrationSagaRepository.findByStateInAndUpdatedAtBefore(any(), any())).thenReturn(List.of(saga));
+        when(keycloakService.findUserIdByRegistration(userInformation.username(), "saga-id")).thenReturn("kc-user-id");
+
+        registrationSagaService.recoverInterruptedSagas();
+
+        verify(compensationService).scheduleKeycloakUserRemoval("kc-user-id", userInformation.username());
+        assertEquals(SagaState.COMPENSATED, saga.getState());
+    }
+
+    @Test
+    void recoverInterruptedSagas_shouldSkipSagaClaimedByAnotherReplica() {
+        RegistrationSagaEntity saga = saga(SagaState.USER_STORED, LocalDateTime.now().minusHours(1));
+        when(registrationSagaRepository.findByStateInAndUpdatedAtBefore(any(), any())).thenReturn(List.of(saga));
+        when(registrationSagaRepository.save(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(RegistrationSagaEntity.class, "saga-id"));
+
+        registrationSagaService.recoverInterruptedSagas();
+
+        verifyNoInteractions(kafkaProducerService, compensationService, userDataAccessService);
+    }
+
+    @Test
+    void staleAfter_shouldOutlastTheLongestStepOfALiveRequest() {
+        ReflectionTestUtils.setField(registrationSagaService, "staleAfterSeconds", 10);
+        ReflectionTestUtils.setField(registrationSagaService, "kafkaMaxBlockMs", 4000L);
+        ReflectionTestUtils.setField(registrationSagaService, "keycloakConnectTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(registrationSagaService, "keycloakReadTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(registrationSagaService, "databaseConnectionTimeoutMs", 5000L);
+
+        // 6 Keycloak calls of up to 7 s, plus 5 s for a database connection, twice over
+        assertEquals(Duration.ofSeconds(94), registrationSagaService.staleAfter());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void recoverInterruptedSagas_shouldResumeEventPublicationOfStoredUser() {
+        RegistrationSagaEntity saga = saga(SagaState.USER_STORED, LocalDateTime.now().minusHours(1));
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(userInformation.idCard());
+        userEntity.setUsername(userInformation.username());
+        userEntity.setBirthDate(userInformation.birthdate());
+        when(registrationSagaRepository.findByStateInAndUpdatedAtBefore(any(), any())).thenReturn(List.of(saga));
+        when(userDataAccessService.findUserById(userInformation.idCard())).thenReturn(Optional.of(userEntity));
+        when(kafkaProducerService.sendMessage(any()))
+                .thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+
+        registrationSagaService.recoverInterruptedSagas();
+
+        verify(kafkaProducerService).sendMessage(argThat((UserRegisteredEvent event) ->
+                event.userId().equals(userInformation.idCard()) && event.birthDate().equals("1990-01-01")));
+        assertEquals(SagaState.COMPLETED, saga.getState());
+        verifyNoInteractions(compensationService);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.service.ServerTiming.Stage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingTest {
+
+    @AfterEach
+    void tearDown() {
+        ServerTiming.finish();
+    }
+
+    @Test
+    void start_shouldReturnZeroWhenNotRecording() {
+        assertEquals(0, ServerTiming.start());
+        ServerTiming.stop(Stage.KAFKA_ACK, 0);
+        assertNull(ServerTiming.finish());
+    }
+
+    @Test
+    void finish_shouldListRecordedStagesInOrderFollowedByTotal() throws InterruptedException {
+        ServerTiming.begin();
+        long start = ServerTiming.start();
+        Thread.sleep(2);
+        ServerTiming.stop(Stage.KAFKA_ACK, start);
+        start = ServerTiming.start();
+        ServerTiming.stop(Stage.ADMIN_TOKEN, start);
+
+        String header = ServerTiming.finish();
+
+        assertTrue(header.matches("admin-token;dur=\\d+\\.\\d{3}, kafka-ack;dur=\\d+\\.\\d{3}, total;dur=\\d+\\.\\d{3}"),
+                header);
+        double kafkaAckMillis = Double.parseDouble(header.replaceAll(".*kafka-ack;dur=([0-9.]+),.*", "$1"));
+        assertTrue(kafkaAckMillis >= 2, header);
+    }
+
+    @Test
+    void begin_shouldResetStagesOfPreviousRequest() {
+        ServerTiming.begin();
+        ServerTiming.stop(Stage.DB_INSERT, ServerTiming.start() - 1_000_000);
+        ServerTiming.finish();
+
+        ServerTiming.begin();
+        String header = ServerTiming.finish();
+
+        assertTrue(header.startsWith("total;dur="), header);
+        assertNull(ServerTiming.finish());
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.config.TokenProvider;
+import com.mhm.bank.controller.dto.TokenIntrospection;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenIntrospectionServiceTest {
+
+    @Mock
+    private TokenProvider tokenProvider;
+
+    @InjectMocks
+    private TokenIntrospectionService tokenIntrospectionService;
+
+    private static JWTClaimsSet claims() {
+        return new JWTClaimsSet.Builder()
+                .subject("user-id")
+                .claim("preferred_username", "testuser")
+                .claim("realm_access", Map.of("roles", List.of("user", "offline_access")))
+                .expirationTime(new Date(1_700_000_000_000L))
+                .build();
+    }
+
+    @Test
+    void introspect_shouldReturnSubjectRolesAndExpiryOfValidToken() {
+        when(tokenProvider.verifyToken("valid-token")).thenReturn(claims());
+
+        TokenIntrospection introspection = tokenIntrospectionService.introspect("valid-token");
+
+        assertTrue(introspection.active());
+        assertEquals("user-id", introspection.sub());
+        assertEquals("testuser", introspection.username());
+        assertEquals(List.of("user", "offline_access"), introspection.roles());
+        assertEquals(1_700_000_000L, introspection.exp());
+    }
+
+    @Test
+    void introspect_shouldReturnInactive_whenTokenIsNotValid() {
+        when(tokenProvider.verifyToken("expired-token")).thenReturn(null);
+
+        assertEquals(TokenIntrospection.inactive(), tokenIntrospectionService.introspect("expired-token"));
+        assertFalse(tokenIntrospectionService.introspect(" ").active());
+        verify(tokenProvider, never()).verifyToken(" ");
+    }
+
+    @Test
+    void introspect_shouldVerifyRepeatedTokensOfBatchOnce() {
+        when(tokenProvider.verifyToken("valid-token")).thenReturn(claims());
+        when(tokenProvider.verifyToken("expired-token")).thenReturn(null);
+
+        List<TokenIntrospection> results = tokenIntrospectionService.introspect(
+                Arrays.asList("valid-token", "expired-token", "valid-token", null));
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).active());
+        assertFalse(results.get(1).active());
+        assertTrue(results.get(2).active());
+        assertFalse(results.get(3).active());
+        verify(tokenProvider, times(1)).verifyToken("valid-token");
+    }
+
+}
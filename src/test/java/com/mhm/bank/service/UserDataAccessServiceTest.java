@@ -0,0 +1,116 @@
+package com.mhm.bank.service;
+
+import com.mhm.bank.controller.dto.UserInformation;
+import com.mhm.bank.exception.UserAlreadyExistsException;
+import com.mhm.bank.repository.UserRepository;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.ConstraintViolationException.ConstraintKind;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserDataAccessServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private UserExistenceFilter userExistenceFilter;
+    @InjectMocks
+    private UserDataAccessService userDataAccessService;
+
+    private UserInformation userInformation;
+
+    @BeforeEach
+    void setUp() {
+        userInformation = new UserInformation(
+                "test-id-1",
+                "testuser",
+                "password123",
+                "John",
+                "Doe",
+                "123 Test St",
+                "test@example.com",
+                LocalDate.of(1990, 1, 1),
+                "1234567890",
+                null
+        );
+    }
+
+    @Test
+    void doesUserExistInDataBase_shouldSkipQueriesForDefiniteNegatives() {
+        when(userExistenceFilter.mightContainId(userInformation.idCard())).thenReturn(false);
+        when(userExistenceFilter.mightContainUsername(userInformation.username())).thenReturn(false);
+        when(userExistenceFilter.mightContainEmail(userInformation.email())).thenReturn(false);
+
+        assertDoesNotThrow(() -> userDataAccessService.doesUserExistInDataBase(userInformation));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void doesUserExistInDataBase_shouldConfirmPositivesWithDatabase() {
+        when(userExistenceFilter.mightContainId(userInformation.idCard())).thenReturn(false);
+        when(userExistenceFilter.mightContainUsername(userInformation.username())).thenReturn(true);
+        when(userRepository.existsByUsername(userInformation.username())).thenReturn(true);
+
+        UserAlreadyExistsException exception = assertThrows(UserAlreadyExistsException.class,
+                () -> userDataAccessService.doesUserExistInDataBase(userInformation));
+
+        assertEquals("Username testuser is already taken", exception.getMessage());
+        verify(userRepository, never()).existsById(any());
+    }
+
+    @Test
+    void isEmailAvailable_shouldAskDatabaseEvenForDefiniteNegatives() {
+        when(userRepository.existsByEmail("test@example.com")).thenReturn(true);
+
+        assertFalse(userDataAccessService.isEmailAvailable("test@example.com"));
+        verifyNoInteractions(userExistenceFilter);
+    }
+
+    @Test
+    void sendUserToDataBase_shouldAddUserToFilter() throws UserAlreadyExistsException {
+        userDataAccessService.sendUserToDataBase(userInformation);
+
+        verify(userRepository).saveAndFlush(any());
+        verify(userExistenceFilter).add("test-id-1", "testuser", "test@example.com");
+    }
+
+    @Test
+    void sendUserToDataBase_shouldReportExistingUser_whenUniqueConstraintIsViolated() {
+        when(userRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate key",
+                new ConstraintViolationException("duplicate key", new SQLException("duplicate key", "23505"),
+                        ConstraintKind.UNIQUE, "users_username_key")));
+
+        assertThrows(UserAlreadyExistsException.class, () -> userDataAccessService.sendUserToDataBase(userInformation));
+        verify(userExistenceFilter).add("test-id-1", "testuser", "test@example.com");
+    }
+
+    @Test
+    void sendUserToDataBase_shouldRethrowOtherIntegrityViolations() {
+        DataIntegrityViolationException notNull = new DataIntegrityViolationException("null value",
+                new ConstraintViolationException("null value", new SQLException("null value", "23502"),
+                        ConstraintKind.OTHER, "address"));
+        when(userRepository.saveAndFlush(any())).thenThrow(notNull);
+
+        assertSame(notNull, assertThrows(DataIntegrityViolationException.class,
+                () -> userDataAccessService.sendUserToDataBase(userInformation)));
+        verifyNoInteractions(userExistenceFilter);
+    }
+
+    @Test
+    void getUserEntity_shouldBeNew_soThatSavingNeverOverwritesAnExistingUser() {
+        assertTrue(userDataAccessService.getUserEntity(userInformation).isNew());
+    }
+
+}
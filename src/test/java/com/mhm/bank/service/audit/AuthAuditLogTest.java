@@ -0,0 +1,171 @@
+package com.mhm.bank.service.audit;
+
+import com.mhm.bank.service.audit.AuthAuditLog.Event;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuthAuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AuthAuditLog auditLog(double successSampleRate, int queueCapacity) {
+        return auditLog(successSampleRate, queueCapacity, 104857600, 10);
+    }
+
+    private AuthAuditLog auditLog(double successSampleRate, int queueCapacity, long maxFileBytes, int maxHistory) {
+        return new AuthAuditLog(true, directory.resolve("audit.log").toString(), 4096, maxFileBytes, maxHistory,
+                queueCapacity, successSampleRate, 60000, meterRegistry);
+    }
+
+    private List<String> lines() throws IOException {
+        return Files.readAllLines(directory.resolve("audit.log"));
+    }
+
+    @Test
+    void shutdown_shouldWriteOneLinePerEvent() throws IOException {
+        AuthAuditLog auditLog = auditLog(1.0, 100);
+
+        auditLog.success(Event.LOGIN, "testuser", "10.0.0.1");
+        auditLog.failure(Event.REGISTER, "otheruser", null, "KeycloakException");
+        auditLog.shutdown();
+
+        List<String> lines = lines();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith("\tLOGIN\tSUCCESS\ttestuser\t10.0.0.1\t-"), lines.get(0));
+        assertTrue(lines.get(1).endsWith("\tREGISTER\tFAILURE\totheruser\t-\tKeycloakException"), lines.get(1));
+        assertEquals(2, meterRegistry.get(AuthAuditLog.RECORDS).tag("outcome", "written").counter().count());
+    }
+
+    @Test
+    void cached_shouldWriteItsOwnOutcome() throws IOException {
+        AuthAuditLog auditLog = auditLog(1.0, 100);
+
+        auditLog.cached(Event.REFRESH, "testuser", "10.0.0.1");
+        auditLog.shutdown();
+
+        List<String> lines = lines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("\tREFRESH\tCACHED\ttestuser\t10.0.0.1\t-"), lines.get(0));
+    }
+
+    @Test
+    void flush_shouldRollFileAndKeepOnlyMaxHistory_whenItWouldGrowPastMaxBytes() throws IOException {
+        AuthAuditLog auditLog = auditLog(1.0, 100, 100, 2);
+
+        for (int i = 0; i < 5; i++) {
+            auditLog.failure(Event.LOGIN, "testuser" + i, "10.0.0.1", "invalid_grant");
+            auditLog.flush();
+        }
+        auditLog.shutdown();
+
+        List<String> lines = lines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\ttestuser4\t"), lines.get(0));
+        List<Path> rolled;
+        try (Stream<Path> files = Files.list(directory)) {
+            rolled = files.filter(file -> file.getFileName().toString().startsWith("audit.log.")).sorted().toList();
+        }
+        assertEquals(2, rolled.size());
+        assertTrue(Files.readString(rolled.get(1)).contains("\ttestuser3\t"));
+        assertEquals(5, meterRegistry.get(AuthAuditLog.RECORDS).tag("outcome", "written").counter().count());
+    }
+
+    @Test
+    void flush_shouldGiveEachRollItsOwnFile_whenRollsFallInTheSameMillisecond() throws IOException {
+        AuthAuditLog auditLog = auditLog(1.0, 100, 100, 100);
+
+        for (int i = 0; i < 50; i++) {
+            auditLog.failure(Event.LOGIN, "testuser" + i, "10.0.0.1", "invalid_grant");
+            auditLog.flush();
+        }
+        auditLog.shutdown();
+
+        List<Path> rolled;
+        try (Stream<Path> files = Files.list(directory)) {
+            rolled = files.filter(file -> file.getFileName().toString().startsWith("audit.log.")).sorted().toList();
+        }
+        assertEquals(49, rolled.size());
+        for (int i = 0; i < rolled.size(); i++) {
+            List<String> rolledLines = Files.readAllLines(rolled.get(i));
+            assertEquals(1, rolledLines.size());
+            assertTrue(rolledLines.get(0).contains("\ttestuser" + i + "\t"), rolledLines.get(0));
+        }
+        assertEquals(1, lines().size());
+    }
+
+    @Test
+    void usernameOf_shouldReadPreferredUsername() {
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "{\"preferred_username\":\"testuser\"}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("testuser", AuthAuditLog.usernameOf("eyJhbGciOiJSUzI1NiJ9." + payload + ".signature"));
+        assertNull(AuthAuditLog.usernameOf("not-a-jwt"));
+        assertNull(AuthAuditLog.usernameOf(null));
+    }
+
+    @Test
+    void success_shouldBeSampledWhileFailuresAreAlwaysKept() throws IOException {
+        AuthAuditLog auditLog = auditLog(0.0, 100);
+
+        auditLog.success(Event.LOGIN, "testuser", "10.0.0.1");
+        auditLog.failure(Event.LOGIN, "testuser", "10.0.0.1", "invalid_grant");
+        auditLog.shutdown();
+
+        List<String> lines = lines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\tFAILURE\t"));
+    }
+
+    @Test
+    void failure_shouldDropRecordsWhenQueueIsFull() throws IOException {
+        AuthAuditLog auditLog = auditLog(1.0, 2);
+
+        for (int i = 0; i < 5; i++) {
+            auditLog.failure(Event.LOGIN, "testuser", "10.0.0.1", "invalid_grant");
+        }
+        auditLog.flush();
+        auditLog.failure(Event.LOGIN, "testuser", "10.0.0.1", "invalid_grant");
+        auditLog.shutdown();
+
+        assertEquals(3, lines().size());
+        assertEquals(3, meterRegistry.get(AuthAuditLog.RECORDS).tag("outcome", "dropped").counter().count());
+    }
+
+    @Test
+    void failure_shouldNotLetUsernameForgeFieldsOrLines() throws IOException {
+        AuthAuditLog auditLog = auditLog(1.0, 100);
+
+        auditLog.failure(Event.LOGIN, "evil\tSUCCESS\nuser", "10.0.0.1", "invalid_grant");
+        auditLog.shutdown();
+
+        List<String> lines = lines();
+        assertEquals(1, lines.size());
+        assertEquals(6, lines.get(0).split("\t").length);
+    }
+
+    @Test
+    void success_shouldDoNothingWhenDisabled() {
+        AuthAuditLog auditLog = new AuthAuditLog(false, directory.resolve("audit.log").toString(), 4096, 104857600,
+                10, 100, 1.0, 60000, meterRegistry);
+
+        auditLog.success(Event.LOGIN, "testuser", "10.0.0.1");
+        auditLog.shutdown();
+
+        assertFalse(Files.exists(directory.resolve("audit.log")));
+    }
+
+}
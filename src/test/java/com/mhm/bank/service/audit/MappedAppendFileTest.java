@@ -0,0 +1,44 @@
+package com.mhm.bank.service.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedAppendFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void append_shouldContinueInNextRegionWhenRegionIsFull() throws IOException {
+        Path path = directory.resolve("audit.log");
+        MappedAppendFile file = new MappedAppendFile(path, 8);
+
+        file.append("0123456789abcdef01\n".getBytes(StandardCharsets.UTF_8));
+        file.close();
+
+        assertEquals("0123456789abcdef01\n", Files.readString(path));
+    }
+
+    @Test
+    void open_shouldAppendAfterLastWrittenByte_whenFileWasNotClosed() throws IOException {
+        Path path = directory.resolve("audit.log");
+        // Not closed, as after a crash: the mapped region leaves a zero-filled tail
+        new MappedAppendFile(path, 4096).append("first\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(4096, Files.size(path));
+
+        MappedAppendFile reopened = new MappedAppendFile(path, 4096);
+        assertEquals(6, reopened.size());
+        reopened.append("second\n".getBytes(StandardCharsets.UTF_8));
+        reopened.close();
+
+        assertEquals("first\nsecond\n", Files.readString(path));
+    }
+
+}
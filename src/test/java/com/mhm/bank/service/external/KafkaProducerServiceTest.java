@@ -1,10 +1,10 @@
 package com.mhm.bank.service.external;
 
 import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.KafkaException;
@@ -29,12 +29,14 @@ class KafkaProducerServiceTest {
     @Mock
     private SendResult<String, UserRegisteredEvent> sendResult;
 
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
     private KafkaProducerService kafkaProducerService;
 
     @BeforeEach
     void setUp() {
-        ReflectionTestUtils.setField(kafkaProducerService, "serviceTimeout", 5);
+        meterRegistry = new SimpleMeterRegistry();
+        kafkaProducerService = new KafkaProducerService(kafkaTemplate, meterRegistry);
+        ReflectionTestUtils.setField(kafkaProducerService, "serviceTimeout", 5000L);
     }
 
     private UserRegisteredEvent createDataUserRegisteredEvent (boolean isNullUserId) {
@@ -115,6 +117,23 @@ class KafkaProducerServiceTest {
         verify(kafkaTemplate).send(topic, event.userId(), event);
     }
 
+    @Test
+    void sendMessage_RecordsLatencyAndFailureCause() {
+        String topic = "test-topic";
+        UserRegisteredEvent event = createDataUserRegisteredEvent(false);
+        ReflectionTestUtils.setField(kafkaProducerService, "topic", topic);
+
+        when(kafkaTemplate.send(topic, event.userId(), event))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Buffer exhausted")));
 
+        CompletableFuture<SendResult<String, UserRegisteredEvent>> future =
+                kafkaProducerService.sendMessage(event);
+
+        assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.get(KafkaProducerService.SEND_TIMER)
+                .tag("topic", topic).tag("outcome", "failure").timer().count());
+        assertEquals(1.0, meterRegistry.get(KafkaProducerService.SEND_ERRORS)
+                .tag("topic", topic).tag("cause", "IllegalStateException").counter().count());
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.mhm.bank.service.external;
+
+import com.mhm.bank.config.InMemoryTracing;
+import com.mhm.bank.config.InMemoryTracingConfiguration;
+import com.mhm.bank.controller.dto.UserRegisteredEvent;
+import io.micrometer.observation.ObservationRegistry;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.observation.ObservationAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.opentelemetry.OpenTelemetryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.tracing.MicrometerTracingAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.tracing.OpenTelemetryTracingAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends a {@link UserRegisteredEvent} through the application's Kafka and tracing configuration to an embedded
+ * broker, and checks that the record carries the W3C trace context of the send span.
+ */
+@SpringBootTest(classes = KafkaProducerService.class, properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.properties.bootstrap.servers=${spring.embedded.kafka.brokers}"
+})
+@ImportAutoConfiguration({KafkaAutoConfiguration.class, MetricsAutoConfiguration.class,
+        CompositeMeterRegistryAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class,
+        ObservationAutoConfiguration.class, MicrometerTracingAutoConfiguration.class,
+        OpenTelemetryAutoConfiguration.class, OpenTelemetryTracingAutoConfiguration.class})
+@Import(InMemoryTracingConfiguration.class)
+@AutoConfigureObservability(metrics = false)
+@EmbeddedKafka(partitions = 1, topics = "user-registered")
+class KafkaTracePropagationTest {
+    private static final String TOPIC = "user-registered";
+
+    @Autowired
+    private KafkaProducerService kafkaProducerService;
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+    @Autowired
+    private SdkTracerProvider tracerProvider;
+    @Autowired
+    private InMemorySpanExporter exporter;
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Test
+    void sendMessage_shouldWriteTraceparentHeaderOfSendSpan() throws Exception {
+        UserRegisteredEvent event = new UserRegisteredEvent("123", "testUser", "John", "Doe", "test@email.com",
+                "123 Main St", "1234567890", "1990-01-01");
+
+        kafkaProducerService.sendMessage(event).get(10, TimeUnit.SECONDS);
+
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("trace-propagation", "false", broker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(consumerProps,
+                new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            broker.consumeFromAnEmbeddedTopic(consumer, TOPIC);
+            ConsumerRecord<String, String> record = KafkaTestUtils.getSingleRecord(consumer, TOPIC,
+                    Duration.ofSeconds(10));
+
+            Header traceparent = record.headers().lastHeader("traceparent");
+            assertNotNull(traceparent, "record has no traceparent header");
+            String[] parts = new String(traceparent.value(), StandardCharsets.UTF_8).split("-");
+            assertEquals(4, parts.length);
+
+            tracerProvider.forceFlush().join(10, TimeUnit.SECONDS);
+            SpanData send = InMemoryTracing.of(exporter, observationRegistry).span(TOPIC + " send");
+            assertEquals(send.getTraceId(), parts[1]);
+            assertEquals(send.getSpanId(), parts[2]);
+        }
+    }
+
+}
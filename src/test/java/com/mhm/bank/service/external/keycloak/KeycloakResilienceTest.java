@@ -0,0 +1,96 @@
+package com.mhm.bank.service.external.keycloak;
+
+import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.KeycloakUnavailableException;
+import com.mhm.bank.service.external.keycloak.KeycloakResilience.Operation;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeycloakResilienceTest {
+
+    private KeycloakResilience keycloakResilience;
+
+    @BeforeEach
+    void setUp() {
+        keycloakResilience = new KeycloakResilience(50, 3000, 4, 4, 1, 1, 1, 1, 1, 0, new SimpleMeterRegistry());
+    }
+
+    private void failWithTimeout() {
+        assertThrows(ResourceAccessException.class, () -> keycloakResilience.execute(Operation.LOGIN, () -> {
+            throw new ResourceAccessException("Read timed out");
+        }));
+    }
+
+    @Test
+    void execute_shouldOpenCircuitAndFailFastWhenKeycloakTimesOut() {
+        for (int i = 0; i < 4; i++) {
+            failWithTimeout();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, keycloakResilience.getState());
+        KeycloakUnavailableException exception = assertThrows(KeycloakUnavailableException.class,
+                () -> keycloakResilience.execute(Operation.ADMIN, () -> fail("Keycloak must not be called")));
+        assertEquals(1, exception.getRetryAfterSeconds());
+    }
+
+    @Test
+    void execute_shouldNotCountRejectedCredentialsAsFailures() {
+        for (int i = 0; i < 10; i++) {
+            assertThrows(KeycloakException.class, () -> keycloakResilience.execute(Operation.LOGIN, () -> {
+                throw new KeycloakException("Invalid user credentials", "401 UNAUTHORIZED", null);
+            }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, keycloakResilience.getState());
+    }
+
+    @Test
+    void execute_shouldCloseCircuitAgainAfterSuccessfulProbe() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            failWithTimeout();
+        }
+        Thread.sleep(1100);
+
+        assertEquals("ok", keycloakResilience.execute(Operation.LOGIN, () -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, keycloakResilience.getState());
+    }
+
+    @Test
+    void execute_shouldRejectCallsOverBulkheadWithoutBlockingOtherOperations() throws Exception {
+        CountDownLatch inCall = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slowLogin = executor.submit(() -> keycloakResilience.execute(Operation.LOGIN, () -> {
+                inCall.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            }));
+            inCall.await();
+
+            assertThrows(KeycloakUnavailableException.class,
+                    () -> keycloakResilience.execute(Operation.LOGIN, () -> "second login"));
+            assertEquals("refreshed", keycloakResilience.execute(Operation.REFRESH, () -> "refreshed"));
+
+            release.countDown();
+            assertEquals("slow", slowLogin.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
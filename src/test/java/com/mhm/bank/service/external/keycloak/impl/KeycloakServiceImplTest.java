@@ -1,11 +1,18 @@
 package com.mhm.bank.service.external.keycloak.impl;
 
+import com.mhm.bank.config.DependencyTimer;
+import com.mhm.bank.config.InMemoryTracing;
 import com.mhm.bank.config.KeycloakProvider;
 import com.mhm.bank.config.TokenProvider;
 import com.mhm.bank.controller.dto.LoginRequest;
 import com.mhm.bank.controller.dto.TokensUser;
 import com.mhm.bank.controller.dto.UserKCDto;
 import com.mhm.bank.exception.KeycloakException;
+import com.mhm.bank.exception.KeycloakUnavailableException;
+import com.mhm.bank.exception.KeycloakUserSetupException;
+import com.mhm.bank.service.external.keycloak.KeycloakResilience;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Response;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,11 +23,14 @@ import org.keycloak.representations.idm.UserRepresentation;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
 
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -48,12 +58,15 @@ class KeycloakServiceImplTest {
     private RoleScopeResource roleScopeResource;
 
     private KeycloakServiceImpl keycloakService;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
     @Mock
     private TokenProvider tokenProvider;
 
     @BeforeEach
     void setUp() {
-        keycloakService = new KeycloakServiceImpl(keycloakProvider, tokenProvider);
+        keycloakService = new KeycloakServiceImpl(keycloakProvider, tokenProvider,
+                new KeycloakResilience(50, 3000, 20, 10, 30, 3, 10, 40, 20, 50, new SimpleMeterRegistry()),
+                new DependencyTimer(InMemoryTracing.create(meterRegistry).observationRegistry()));
         ReflectionTestUtils.setField(keycloakService, "kcUserRole", "user");
     }
 
@@ -67,9 +80,9 @@ class KeycloakServiceImplTest {
 
         setupMocksForSuccessfulUserCreation(location);
 
-        boolean result = keycloakService.createUser(userDto, authToken);
+        String result = keycloakService.createUser(userDto, authToken);
 
-        assertTrue(result);
+        assertEquals(userId, result);
         verify(usersResource).create(any(UserRepresentation.class));
     }
 
@@ -82,6 +95,9 @@ class KeycloakServiceImplTest {
         when(usersResource.create(any(UserRepresentation.class))).thenReturn(Response.status(409).build());
 
         assertThrows(KeycloakException.class, () -> keycloakService.createUser(userDto, authToken));
+        assertEquals(1, meterRegistry.get("auth.dependency.calls")
+                .tags("operation", "admin.create_user", "outcome", "failure", "error", "KeycloakException")
+                .timer().count());
     }
 
     @Test
@@ -109,10 +125,59 @@ class KeycloakServiceImplTest {
         assertDoesNotThrow(() -> keycloakService.deleteUser(username));
     }
 
+    @Test
+    void createUser_ShouldThrowSetupException_WhenRoleAssignmentFails() throws Exception {
+        UserKCDto userDto = new UserKCDto("testUser", "password", "fname", "lname", "test@email.com", null);
+        URI location = new URI("/users/test-user-id");
+
+        setupMocksForSuccessfulUserCreation(location);
+        doThrow(new RuntimeException("Keycloak error")).when(roleScopeResource).add(any());
+
+        KeycloakUserSetupException exception = assertThrows(KeycloakUserSetupException.class,
+                () -> keycloakService.createUser(userDto, "test-token"));
+
+        assertEquals("test-user-id", exception.getUserId());
+    }
+
+    @Test
+    void deleteUserById_ShouldRemoveUserWithoutSearching() throws KeycloakException {
+        when(keycloakProvider.getUserResource()).thenReturn(usersResource);
+        when(usersResource.get("userId")).thenReturn(userResource);
+
+        keycloakService.deleteUserById("userId");
+
+        verify(userResource).remove();
+        verify(usersResource, never()).searchByUsername(anyString(), anyBoolean());
+    }
+
+    @Test
+    void deleteUserById_ShouldIgnoreMissingUser() {
+        when(keycloakProvider.getUserResource()).thenReturn(usersResource);
+        when(usersResource.get("userId")).thenReturn(userResource);
+        doThrow(new NotFoundException()).when(userResource).remove();
+
+        assertDoesNotThrow(() -> keycloakService.deleteUserById("userId"));
+    }
+
+    @Test
+    void findUserIdByRegistration_ShouldOnlyMatchUserTaggedWithRegistration() throws KeycloakException {
+        UserRepresentation otherRegistration = new UserRepresentation();
+        otherRegistration.setId("other-id");
+        otherRegistration.setAttributes(Map.of("registration_id", List.of("other-saga")));
+        UserRepresentation ownRegistration = new UserRepresentation();
+        ownRegistration.setId("own-id");
+        ownRegistration.setAttributes(Map.of("registration_id", List.of("saga-id")));
+
+        when(keycloakProvider.getUserResource()).thenReturn(usersResource);
+        when(usersResource.searchByUsername("testUser", true)).thenReturn(List.of(otherRegistration, ownRegistration));
+
+        assertEquals("own-id", keycloakService.findUserIdByRegistration("testUser", "saga-id"));
+        assertNull(keycloakService.findUserIdByRegistration("testUser", "unknown-saga"));
+    }
+
     @Test
     void loginUser_ShouldReturnTokensSuccessfully() throws KeycloakException {
         LoginRequest loginRequest = new LoginRequest("testUser", "password");
-        String token = "test-token";
         TokensUser expectedTokens = new TokensUser("access-token-123", "refresh-token-456", "3600");
 
         when(tokenProvider.getUserAccessToken(
@@ -120,7 +185,7 @@ class KeycloakServiceImplTest {
                 loginRequest.password()
         )).thenReturn(expectedTokens);
 
-        TokensUser result = keycloakService.loginUser(loginRequest, token);
+        TokensUser result = keycloakService.loginUser(loginRequest);
 
         assertNotNull(result);
         assertEquals(expectedTokens.getAccessToken(), result.getAccessToken());
@@ -136,7 +201,6 @@ class KeycloakServiceImplTest {
     @Test
     void loginUser_ShouldThrowException_WhenKeycloakFails() throws KeycloakException {
         LoginRequest loginRequest = new LoginRequest("testUser", "password");
-        String token = "test-token";
         String errorMessage = "Authentication failed";
 
         when(tokenProvider.getUserAccessToken(
@@ -145,7 +209,7 @@ class KeycloakServiceImplTest {
         )).thenThrow(new KeycloakException(errorMessage));
 
         KeycloakException exception = assertThrows(KeycloakException.class,
-                () -> keycloakService.loginUser(loginRequest, token));
+                () -> keycloakService.loginUser(loginRequest));
 
         assertEquals(errorMessage, exception.getMessage());
         verify(tokenProvider).getUserAccessToken(loginRequest.username(), loginRequest.password());
@@ -165,9 +229,9 @@ class KeycloakServiceImplTest {
         defaultRole.setName("user");
         when(rolesResource.get("user").toRepresentation()).thenReturn(defaultRole);
 
-        boolean result = keycloakService.createUser(userDto, authToken);
+        String result = keycloakService.createUser(userDto, authToken);
 
-        assertTrue(result);
+        assertEquals("test-user-id", result);
         verify(roleScopeResource).add(argThat(roles ->
                 roles.size() == 1 && roles.get(0).getName().equals("user")));
     }
@@ -241,6 +305,14 @@ class KeycloakServiceImplTest {
         verify(tokenProvider).getNewToken(refreshToken);
     }
 
+    @Test
+    void getNewToken_ShouldReportKeycloakUnavailable_WhenRequestTimesOut() {
+        String refreshToken = "refresh-token-123";
+        when(tokenProvider.getNewToken(refreshToken)).thenThrow(new ResourceAccessException("Read timed out"));
+
+        assertThrows(KeycloakUnavailableException.class, () -> keycloakService.getNewToken(refreshToken));
+    }
+
     @Test
     void validateToken_ShouldReturnTrue_WhenTokenIsValid() {
         String token = "valid-token";
@@ -0,0 +1,28 @@
+package com.mhm.bank.service.session;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemorySessionStoreTest {
+
+    private static SessionStore.Session session() {
+        return new SessionStore.Session(new byte[] {1}, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedSession_whenFull() {
+        InMemorySessionStore store = new InMemorySessionStore(2);
+        store.put("session-1", session());
+        store.put("session-2", session());
+        store.get("session-1");
+
+        store.put("session-3", session());
+
+        assertNotNull(store.get("session-1"));
+        assertNull(store.get("session-2"));
+        assertNotNull(store.get("session-3"));
+        assertEquals(2, store.size());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.mhm.bank.service.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileSessionStoreTest {
+
+    private static final long LIVE = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void put_shouldStoreSessionOffHeapAcrossReopen() {
+        Path file = directory.resolve("sessions.bin");
+        SessionStore.Session session = new SessionStore.Session(new byte[] {1, 2, 3}, 1000L, 2000L);
+
+        assertTrue(new MappedFileSessionStore(file, 64, 512, 4).put("session-1", session));
+        SessionStore.Session stored = new MappedFileSessionStore(file, 64, 512, 4).get("session-1");
+
+        assertArrayEquals(new byte[] {1, 2, 3}, stored.sealedTokens());
+        assertEquals(1000L, stored.accessExpiresAtMillis());
+        assertEquals(2000L, stored.expiresAtMillis());
+    }
+
+    @Test
+    void remove_shouldForgetOnlyTheGivenSession() {
+        MappedFileSessionStore store = new MappedFileSessionStore(directory.resolve("sessions.bin"), 1, 512, 1);
+        store.put("session-1", new SessionStore.Session(new byte[] {1}, 1000L, 2000L));
+
+        store.remove("session-2");
+        assertNotNull(store.get("session-1"));
+
+        store.remove("session-1");
+        assertNull(store.get("session-1"));
+    }
+
+    @Test
+    void put_shouldKeepCollidingSessionsInOtherWaysOfTheBucket() {
+        MappedFileSessionStore store = new MappedFileSessionStore(directory.resolve("sessions.bin"), 2, 512, 2);
+        store.put("session-1", new SessionStore.Session(new byte[] {1}, 1000L, LIVE));
+        store.put("session-2", new SessionStore.Session(new byte[] {2}, 1000L, LIVE));
+
+        assertArrayEquals(new byte[] {1}, store.get("session-1").sealedTokens());
+        assertArrayEquals(new byte[] {2}, store.get("session-2").sealedTokens());
+    }
+
+    @Test
+    void put_shouldRefuseNewSession_whenBucketIsFullOfLiveSessions() {
+        MappedFileSessionStore store = new MappedFileSessionStore(directory.resolve("sessions.bin"), 2, 512, 2);
+        store.put("session-1", new SessionStore.Session(new byte[] {1}, 1000L, LIVE));
+        store.put("session-2", new SessionStore.Session(new byte[] {2}, 1000L, LIVE));
+
+        assertFalse(store.put("session-3", new SessionStore.Session(new byte[] {3}, 1000L, LIVE)));
+        assertNull(store.get("session-3"));
+        assertNotNull(store.get("session-1"));
+        assertTrue(store.put("session-1", new SessionStore.Session(new byte[] {4}, 1000L, LIVE)));
+        assertArrayEquals(new byte[] {4}, store.get("session-1").sealedTokens());
+    }
+
+    @Test
+    void put_shouldReuseSlotOfExpiredSession() {
+        MappedFileSessionStore store = new MappedFileSessionStore(directory.resolve("sessions.bin"), 2, 512, 2);
+        store.put("session-1", new SessionStore.Session(new byte[] {1}, 1000L, 2000L));
+        store.put("session-2", new SessionStore.Session(new byte[] {2}, 1000L, LIVE));
+
+        assertTrue(store.put("session-3", new SessionStore.Session(new byte[] {3}, 1000L, LIVE)));
+        assertNull(store.get("session-1"));
+        assertNotNull(store.get("session-2"));
+        assertArrayEquals(new byte[] {3}, store.get("session-3").sealedTokens());
+    }
+
+    @Test
+    void put_shouldRefuseSessionLargerThanSlot() {
+        MappedFileSessionStore store = new MappedFileSessionStore(directory.resolve("sessions.bin"), 4, 128, 2);
+
+        assertFalse(store.put("session-1", new SessionStore.Session(new byte[1024], 1000L, 2000L)));
+        assertNull(store.get("session-1"));
+    }
+
+}
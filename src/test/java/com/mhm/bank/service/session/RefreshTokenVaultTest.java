@@ -0,0 +1,134 @@
+package com.mhm.bank.service.session;
+
+import com.mhm.bank.controller.dto.TokensUser;
+import com.mhm.bank.service.audit.AuthAuditLog;
+import com.mhm.bank.service.audit.AuthAuditLog.Event;
+import com.mhm.bank.service.external.keycloak.IKeycloakService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenVaultTest {
+    private static final String KEY = Base64.getEncoder().encodeToString(new byte[32]);
+    private static final String CLIENT_IP = "10.0.0.1";
+
+    @Mock
+    private IKeycloakService keycloakService;
+    @Mock
+    private AuthAuditLog auditLog;
+
+    private InMemorySessionStore sessionStore;
+    private RefreshTokenVault refreshTokenVault;
+
+    @BeforeEach
+    void setUp() {
+        sessionStore = new InMemorySessionStore(100);
+        refreshTokenVault = vault(KEY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        refreshTokenVault.shutdown();
+    }
+
+    private RefreshTokenVault vault(String key) {
+        return new RefreshTokenVault(true, key, 3600, 30, 1, sessionStore, keycloakService, auditLog, new SimpleMeterRegistry());
+    }
+
+    private static String accessToken(String username) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"preferred_username\":\"" + username + "\"}")
+                .getBytes(StandardCharsets.UTF_8)) + ".signature";
+    }
+
+    @Test
+    void refresh_shouldReturnStoredAccessToken_whileItIsValid() {
+        String accessToken = accessToken("testuser");
+        String sessionId = refreshTokenVault.open(new TokensUser(accessToken, "refresh", "300"));
+
+        TokensUser tokens = refreshTokenVault.refresh(sessionId, CLIENT_IP);
+
+        assertEquals(accessToken, tokens.getAccessToken());
+        assertNull(tokens.getRefreshToken());
+        verifyNoInteractions(keycloakService);
+        verify(auditLog).cached(Event.REFRESH, "testuser", CLIENT_IP);
+        verify(auditLog, never()).success(any(), any(), any());
+    }
+
+    @Test
+    void refresh_shouldUseStoredRefreshToken_whenAccessTokenHasExpired() {
+        String sessionId = refreshTokenVault.open(new TokensUser("access", "refresh", "0"));
+        String newAccessToken = accessToken("testuser");
+        when(keycloakService.getNewToken("refresh")).thenReturn(new TokensUser(newAccessToken, "new-refresh", "300"));
+
+        TokensUser tokens = refreshTokenVault.refresh(sessionId, CLIENT_IP);
+
+        assertEquals(newAccessToken, tokens.getAccessToken());
+        assertNull(tokens.getRefreshToken());
+        verify(auditLog).success(Event.REFRESH, "testuser", CLIENT_IP);
+        assertEquals(newAccessToken, refreshTokenVault.refresh(sessionId, CLIENT_IP).getAccessToken());
+        verify(keycloakService, times(1)).getNewToken(any());
+        verify(auditLog).cached(Event.REFRESH, "testuser", CLIENT_IP);
+    }
+
+    @Test
+    void refresh_shouldRefreshInBackground_whenAccessTokenIsAboutToExpire() {
+        String sessionId = refreshTokenVault.open(new TokensUser("access", "refresh", "10"));
+        when(keycloakService.getNewToken("refresh")).thenReturn(new TokensUser("new-access", "new-refresh", "300"));
+
+        assertEquals("access", refreshTokenVault.refresh(sessionId, CLIENT_IP).getAccessToken());
+
+        verify(keycloakService, timeout(2000)).getNewToken("refresh");
+    }
+
+    @Test
+    void refresh_shouldCloseSession_whenKeycloakRejectsRefreshToken() {
+        String sessionId = refreshTokenVault.open(new TokensUser("access", "refresh", "0"));
+        when(keycloakService.getNewToken("refresh")).thenReturn(null);
+
+        assertNull(refreshTokenVault.refresh(sessionId, CLIENT_IP));
+        assertNull(sessionStore.get(sessionId));
+        assertNull(refreshTokenVault.refresh("unknown-session", CLIENT_IP));
+        verify(auditLog, times(2)).failure(Event.REFRESH, null, CLIENT_IP, "rejected");
+    }
+
+    @Test
+    void open_shouldStoreTokensEncryptedAndBoundToSession() {
+        String sessionId = refreshTokenVault.open(new TokensUser("access", "refresh-token-value", "300"));
+        SessionStore.Session session = sessionStore.get(sessionId);
+
+        assertFalse(new String(session.sealedTokens(), StandardCharsets.ISO_8859_1).contains("refresh-token-value"));
+
+        sessionStore.put("other-session", session);
+        assertNull(refreshTokenVault.refresh("other-session", CLIENT_IP));
+    }
+
+    @Test
+    void refresh_shouldReadSessionsSealedBeforeRestart_whenKeyIsConfigured() {
+        String sessionId = refreshTokenVault.open(new TokensUser("access", "refresh", "300"));
+
+        RefreshTokenVault restarted = vault(KEY);
+        RefreshTokenVault otherKey = vault(null);
+        try {
+            assertEquals("access", restarted.refresh(sessionId, CLIENT_IP).getAccessToken());
+            assertNull(otherKey.refresh(sessionId, CLIENT_IP));
+        } finally {
+            restarted.shutdown();
+            otherKey.shutdown();
+        }
+    }
+
+}